@@ -0,0 +1,25 @@
+package com.jacandre.benchmark;
+
+import com.jacandre.core.SimulationConfig;
+
+// Settings every benchmark shares, so results from different runs are measured the same way
+final class BenchmarkDefaults {
+    // Per-tick INFO logging would be most of what a benchmark measured
+    static final String QUIET_LOGGING = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn";
+
+    static final long SEED = 42L;
+
+    private BenchmarkDefaults() {
+    }
+
+    // Fixed seed and a vision radius that stays well inside the smaller grids
+    static SimulationConfig config(int gridSize, int numAgents) {
+        return SimulationConfig.builder()
+                .gridSize(gridSize)
+                .numAgents(numAgents)
+                .visionRadius(10)
+                .maxFoodSources(Math.max(100, numAgents / 2))
+                .seed(SEED)
+                .build();
+    }
+}
@@ -0,0 +1,56 @@
+package com.jacandre.benchmark;
+
+import com.jacandre.core.GridBackend;
+import com.jacandre.core.Simulation;
+import com.jacandre.export.MetricsCSVExporter;
+import com.jacandre.export.SnapshotCSVExporter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The two CSV exporters writing the history of one recorded run to a temporary file, plain or gzipped.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = BenchmarkDefaults.QUIET_LOGGING)
+@State(Scope.Benchmark)
+public class ExportBenchmark {
+    @Param({"100", "500"})
+    int ticks;
+
+    @Param({".csv", ".csv.gz"})
+    String extension;
+
+    private Simulation simulation;
+    private Path output;
+
+    @Setup(Level.Trial)
+    public void recordRun() throws IOException {
+        simulation = new Simulation(BenchmarkDefaults.config(50, 200), GridBackend.LOCKING);
+        for (int i = 0; i < ticks; i++) {
+            simulation.stepSimulation();
+        }
+        output = Files.createTempFile("export-benchmark", extension);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteOutput() throws IOException {
+        Files.deleteIfExists(output);
+    }
+
+    @Benchmark
+    public void metricsCsv() {
+        MetricsCSVExporter.exportMetricsToCSV(output.toString(), simulation.getMetricsHistory());
+    }
+
+    @Benchmark
+    public void snapshotCsv() {
+        SnapshotCSVExporter.exportGridSnapshots(output.toString(), simulation.getTimeline());
+    }
+}
@@ -0,0 +1,64 @@
+package com.jacandre.benchmark;
+
+import com.jacandre.core.GridBackend;
+import com.jacandre.core.GridManager;
+import com.jacandre.core.SimulationConfig;
+import com.jacandre.models.Agent;
+import com.jacandre.models.Food;
+import com.jacandre.strategy.SelfishStrategy;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GridManager.tryConsumeFood with one to four agents next to the food, the strongest of them asking. Food has to
+ * be put back before it can be eaten again, so each invocation is a placeEntity followed by a won contest.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = BenchmarkDefaults.QUIET_LOGGING)
+@State(Scope.Benchmark)
+public class FoodContestBenchmark {
+    private static final int GRID_SIZE = 64;
+    private static final int[][] SIDES = {{-1, 0}, {1, 0}, {0, -1}, {0, 1}};
+
+    @Param({"1", "4"})
+    int contenders;
+
+    @Param({"LOCKING", "ATOMIC"})
+    GridBackend backend;
+
+    private GridManager grid;
+    private SimulationConfig config;
+    private Agent strongest;
+    private int foodCell;
+    private int clock;
+    private int eaten;
+
+    @Setup(Level.Trial)
+    public void surroundFood() {
+        // Food lives for one tick, so advancing the clock now and then empties the expiry wheel
+        config = BenchmarkDefaults.config(GRID_SIZE, 0).toBuilder().foodLifespan(1).build();
+        grid = new GridManager(config, backend);
+        foodCell = grid.cellOf(GRID_SIZE / 2, GRID_SIZE / 2);
+        SelfishStrategy strategy = new SelfishStrategy();
+        for (int i = 0; i < contenders; i++) {
+            Agent agent = new Agent(strategy, config);
+            agent.setEnergy(i == 0 ? 1e9 : 50.0);
+            grid.placeEntity(agent, grid.cellOf(GRID_SIZE / 2 + SIDES[i][0], GRID_SIZE / 2 + SIDES[i][1]));
+            if (i == 0) strongest = agent;
+        }
+    }
+
+    @Benchmark
+    public boolean placeAndConsume() {
+        grid.placeEntity(new Food(config), foodCell);
+        boolean won = grid.tryConsumeFood(foodCell, strongest);
+        if ((++eaten & 1023) == 0) {
+            grid.expireFood(++clock);
+        }
+        return won;
+    }
+}
@@ -0,0 +1,71 @@
+package com.jacandre.benchmark;
+
+import com.jacandre.core.GridBackend;
+import com.jacandre.core.GridManager;
+import com.jacandre.core.SimulationConfig;
+import com.jacandre.models.Agent;
+import com.jacandre.models.Food;
+import com.jacandre.strategy.SelfishStrategy;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.Point;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GridManager.getEntitiesOfType over a fixed random world. Radius and density are parameters because the
+ * spatial index makes the cost follow the number of matches, not the window area.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = BenchmarkDefaults.QUIET_LOGGING)
+@State(Scope.Benchmark)
+public class GridQueryBenchmark {
+    private static final int GRID_SIZE = 200;
+    private static final int CENTRES = 1024; // a power of two, cycled through
+
+    @Param({"1", "5", "20"})
+    int radius;
+
+    @Param({"0.05", "0.3", "0.8"})
+    double density;
+
+    private GridManager grid;
+    private Point[] centres;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void populate() {
+        SimulationConfig config = BenchmarkDefaults.config(GRID_SIZE, 0);
+        grid = new GridManager(config, GridBackend.LOCKING);
+        Random random = new Random(BenchmarkDefaults.SEED);
+        SelfishStrategy strategy = new SelfishStrategy();
+        for (int cell = 0; cell < GRID_SIZE * GRID_SIZE; cell++) {
+            if (random.nextDouble() < density) {
+                grid.placeEntity(random.nextBoolean() ? new Agent(strategy, config) : new Food(config), cell);
+            }
+        }
+
+        centres = new Point[CENTRES];
+        for (int i = 0; i < CENTRES; i++) {
+            centres[i] = new Point(random.nextInt(GRID_SIZE), random.nextInt(GRID_SIZE));
+        }
+    }
+
+    @Benchmark
+    public List<Point> agentsInRadius() {
+        return grid.getEntitiesOfType(nextCentre(), radius, Agent.class);
+    }
+
+    @Benchmark
+    public List<Point> foodInRadius() {
+        return grid.getEntitiesOfType(nextCentre(), radius, Food.class);
+    }
+
+    private Point nextCentre() {
+        return centres[next++ & (CENTRES - 1)];
+    }
+}
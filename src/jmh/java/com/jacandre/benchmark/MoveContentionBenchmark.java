@@ -0,0 +1,69 @@
+package com.jacandre.benchmark;
+
+import com.jacandre.core.GridBackend;
+import com.jacandre.core.GridManager;
+import com.jacandre.core.SimulationConfig;
+import com.jacandre.models.Agent;
+import com.jacandre.strategy.SelfishStrategy;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * GridManager.moveEntity from four threads at once. Each thread shuttles its own agent between two cells of its
+ * own, so every move succeeds and the only contention is inside the grid: with layout "shared" all the cells sit
+ * in one chunk, behind one lock for GridBackend.LOCKING, and with "separate" each thread has a chunk to itself.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = BenchmarkDefaults.QUIET_LOGGING)
+@Threads(MoveContentionBenchmark.THREADS)
+@State(Scope.Benchmark)
+public class MoveContentionBenchmark {
+    static final int THREADS = 4;
+    private static final int GRID_SIZE = 256;
+
+    @Param({"LOCKING", "ATOMIC"})
+    GridBackend backend;
+
+    @Param({"shared", "separate"})
+    String layout;
+
+    private GridManager grid;
+    private SimulationConfig config;
+    private final AtomicInteger threadIds = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void createGrid() {
+        config = BenchmarkDefaults.config(GRID_SIZE, 0);
+        grid = new GridManager(config, backend);
+    }
+
+    @State(Scope.Thread)
+    public static class Mover {
+        Agent agent;
+        int home;
+        int away;
+
+        @Setup(Level.Trial)
+        public void place(MoveContentionBenchmark benchmark) {
+            int id = benchmark.threadIds.getAndIncrement();
+            int x = benchmark.layout.equals("shared") ? id : id * 64; // chunks are 32 rows tall
+            home = benchmark.grid.cellOf(x, 0);
+            away = benchmark.grid.cellOf(x, 1);
+            agent = new Agent(new SelfishStrategy(), benchmark.config);
+            if (!benchmark.grid.placeEntity(agent, home)) {
+                throw new IllegalStateException("Cell " + home + " is already taken");
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean moveBackAndForth(Mover mover) {
+        int target = grid.getCellOf(mover.agent) == mover.home ? mover.away : mover.home;
+        return grid.moveEntity(mover.agent, target);
+    }
+}
@@ -0,0 +1,51 @@
+package com.jacandre.benchmark;
+
+import com.jacandre.core.GridBackend;
+import com.jacandre.core.Simulation;
+import com.jacandre.core.UpdateMode;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole ticks of Simulation.stepSimulation. The grid grows with the population to keep the density of the
+ * default 200 agents on 50x50. Every iteration starts a new run from the same seed and times its first
+ * TICKS_PER_ITERATION ticks, so iterations and runs step through exactly the same ticks.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, batchSize = StepSimulationBenchmark.TICKS_PER_ITERATION)
+@Measurement(iterations = 10, batchSize = StepSimulationBenchmark.TICKS_PER_ITERATION)
+@Fork(value = 2, jvmArgsAppend = BenchmarkDefaults.QUIET_LOGGING)
+@State(Scope.Benchmark)
+public class StepSimulationBenchmark {
+    static final int TICKS_PER_ITERATION = 20;
+
+    @Param({"200", "2000", "20000"})
+    int agents;
+
+    @Param({"SEQUENTIAL", "SYNCHRONOUS"})
+    UpdateMode mode;
+
+    private Simulation simulation;
+
+    @Setup(Level.Iteration)
+    public void createRun() {
+        int gridSize = (int) Math.round(50 * Math.sqrt(agents / 200.0));
+        simulation = new Simulation(BenchmarkDefaults.config(gridSize, agents).toBuilder().maxTicks(Integer.MAX_VALUE).build(),
+                GridBackend.LOCKING);
+        simulation.setUpdateMode(mode);
+        simulation.setKeepHistory(false);
+    }
+
+    @TearDown(Level.Iteration)
+    public void stopPool() {
+        simulation.setThreads(1);
+    }
+
+    @Benchmark
+    public int step() {
+        simulation.stepSimulation();
+        return simulation.getTick();
+    }
+}
@@ -0,0 +1,71 @@
+package com.jacandre.benchmark;
+
+import com.jacandre.core.GridBackend;
+import com.jacandre.core.GridManager;
+import com.jacandre.core.RandomStreams;
+import com.jacandre.core.Simulation;
+import com.jacandre.core.SimulationConfig;
+import com.jacandre.core.SimulationContext;
+import com.jacandre.models.Agent;
+import com.jacandre.models.Food;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One pass of AgentStrategy.execute over every agent of one strategy in a freshly initialised world, as the
+ * SEQUENTIAL update would run it without births and deaths. Eaten food and spent energy are restored between
+ * invocations and the world is rebuilt every iteration, so every run measures the same passes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = BenchmarkDefaults.QUIET_LOGGING)
+@State(Scope.Benchmark)
+public class StrategyBenchmark {
+    private static final int GRID_SIZE = 100;
+    private static final int AGENTS = 1000;
+
+    @Param({"selfish", "helper"})
+    String strategy;
+
+    private GridManager grid;
+    private SimulationConfig config;
+    private List<Agent> agents;
+    private int food;
+    private SimulationContext context;
+
+    @Setup(Level.Iteration)
+    public void createWorld() {
+        config = BenchmarkDefaults.config(GRID_SIZE, AGENTS);
+        Simulation simulation = new Simulation(config, GridBackend.LOCKING);
+        grid = simulation.getGridManager();
+        agents = simulation.getLivingAgents().stream()
+                .filter(agent -> strategy.equals("helper") ? agent.isHelper() : agent.isSelfish())
+                .toList();
+        food = config.getMaxFoodSources();
+        context = new SimulationContext(0, new RandomStreams(BenchmarkDefaults.SEED).forTick(0));
+        restore();
+    }
+
+    @Setup(Level.Invocation)
+    public void restore() {
+        while (grid.getFoodCount() < food) {
+            int cell = grid.getNextAvailableCell();
+            if (cell < 0) break;
+            grid.placeEntity(new Food(config), cell);
+        }
+        for (Agent agent : agents) {
+            agent.setEnergy(config.getInitialEnergy());
+        }
+    }
+
+    @Benchmark
+    public void executeAll() {
+        for (Agent agent : agents) {
+            agent.getStrategy().execute(agent, grid, context);
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.jacandre.core;
+
+import com.jacandre.models.Agent;
+import com.jacandre.models.AgentStore;
+import com.jacandre.models.Food;
+import com.jacandre.strategy.AgentStrategy;
+import com.jacandre.strategy.ForagerStrategy;
+import com.jacandre.strategy.HelperStrategy;
+import com.jacandre.strategy.SelfishStrategy;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary checkpoint of everything a Simulation needs to carry on exactly where it stopped.
+ * Layout (big-endian):
+ *
+ *   header   magic, version, backend, the grid's SimulationConfig, the seed of the run's random streams, tick,
+ *            next agent key, deaths, helper births, selfish births, free-cell searches made
+ *   agents   count, then one column each of keys, energies, strategy codes, last reproduction ticks and cells,
+ *            in store slot order
+ *   food     count, then (cell, spawn tick) pairs in expiry-wheel order
+ *
+ * Randomness is counter-based, so the seed, the tick and the number of free-cell searches are the whole RNG
+ * state. Agents act in slot order, so the slots are stored as they are. The spatial indexes are rebuilt as
+ * agents and food are placed: their queries break ties by cell, so the order inside them does not matter.
+ * The timeline and metrics history are not part of a checkpoint.
+ * Save and load between ticks only.
+ */
+@Slf4j
+public final class Checkpoint {
+    static final int MAGIC = 0x45474343; // "EGCC"
+    static final int VERSION = 5;
+    static final int CONFIG_BYTES = 8 * 4 + 10 * 8 + 8;
+    private static final int HEADER_BYTES = 4 + 4 + 1 + CONFIG_BYTES + 8 + 4 + 8 + 4 + 4 + 4 + 8;
+
+    private static final byte NO_STRATEGY = 0;
+    private static final byte HELPER = 1;
+    private static final byte SELFISH = 2;
+    private static final byte FORAGER = 3;
+
+    private Checkpoint() {
+    }
+
+    public static void save(Simulation simulation, Path path) throws IOException {
+        GridManager grid = simulation.getGridManager();
+        AgentStore store = simulation.getAgentStore();
+        int agents = store.size();
+
+        List<Food> food = new ArrayList<>();
+        List<Integer> foodCells = new ArrayList<>();
+        for (Food filed : grid.foodExpiry().scheduled()) {
+            int cell = grid.getCellOf(filed);
+            if (cell >= 0 && grid.getEntityAt(cell) == filed) {
+                food.add(filed);
+                foodCells.add(cell);
+            }
+        }
+
+        long bytes = HEADER_BYTES + 4 + 25L * agents + 4 + 8L * food.size();
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IOException("Checkpoint of " + bytes + " bytes is too large");
+        }
+        ByteBuffer out = ByteBuffer.allocate((int) bytes);
+
+        out.putInt(MAGIC).putInt(VERSION).put((byte) grid.backend().ordinal());
+        putConfig(out, simulation.getConfig());
+        out.putLong(simulation.getRandomStreams().getSeed())
+                .putInt(simulation.getTick())
+                .putLong(simulation.nextAgentKey())
+                .putInt(simulation.getTotalDeaths())
+                .putInt(simulation.getHelperBirths())
+                .putInt(simulation.getSelfishBirths())
+                .putLong(grid.freeCellSearches());
+
+        out.putInt(agents);
+        for (int slot = 0; slot < agents; slot++) out.putLong(store.getAgent(slot).getKey());
+        for (int slot = 0; slot < agents; slot++) out.putDouble(store.getEnergy(slot));
+        for (int slot = 0; slot < agents; slot++) out.put(strategyCode(store.getStrategy(slot)));
+        for (int slot = 0; slot < agents; slot++) out.putInt(store.getLastReproducedTick(slot));
+        for (int slot = 0; slot < agents; slot++) out.putInt(store.getCell(slot));
+
+        out.putInt(food.size());
+        for (int i = 0; i < food.size(); i++) {
+            out.putInt(foodCells.get(i)).putInt(food.get(i).getSpawnTick());
+        }
+
+        out.flip();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+        log.info("Checkpoint of tick {} written to {} ({} agents, {} food)", simulation.getTick(), path, agents, food.size());
+    }
+
+    public static Simulation load(Path path) throws IOException {
+        return load(path, -1);
+    }
+
+    // Loads the run with its tick limit moved to moreTicks past the checkpointed tick
+    public static Simulation resume(Path path, int moreTicks) throws IOException {
+        if (moreTicks < 0) {
+            throw new IllegalArgumentException("Cannot resume for " + moreTicks + " ticks");
+        }
+        return load(path, moreTicks);
+    }
+
+    private static Simulation load(Path path, int moreTicks) throws IOException {
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(path + " is too large to be a checkpoint");
+            }
+            in = ByteBuffer.allocate((int) channel.size());
+            while (in.hasRemaining() && channel.read(in) >= 0) {
+                // read the whole file
+            }
+            in.flip();
+        }
+
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IOException(path + " is not a checkpoint");
+            }
+            int version = in.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported checkpoint version " + version);
+            }
+            GridBackend backend = GridBackend.values()[in.get()];
+            SimulationConfig config = getConfig(in);
+            long streamSeed = in.getLong();
+            int tick = in.getInt();
+            if (moreTicks >= 0) {
+                config = config.toBuilder().maxTicks((int) Math.min(Integer.MAX_VALUE, (long) tick + moreTicks)).build();
+            }
+            long nextAgentKey = in.getLong();
+            int totalDeaths = in.getInt();
+            int helperBirths = in.getInt();
+            int selfishBirths = in.getInt();
+            long freeCellSearches = in.getLong();
+
+            GridManager grid = new GridManager(config, backend);
+            grid.foodExpiry().resetTo(tick);
+            grid.restoreFreeCellSearches(freeCellSearches);
+            Simulation simulation = new Simulation(grid, new RandomStreams(streamSeed));
+            simulation.restoreCounters(tick, nextAgentKey, totalDeaths, helperBirths, selfishBirths);
+
+            int agents = in.getInt();
+            int keys = in.position();
+            int energies = keys + 8 * agents;
+            int strategies = energies + 8 * agents;
+            int lastReproduced = strategies + agents;
+            int cells = lastReproduced + 4 * agents;
+            AgentStrategy forager = new ForagerStrategy();
+            for (int i = 0; i < agents; i++) {
+                Agent agent = new Agent(strategyFor(in.get(strategies + i), simulation, forager), config);
+                agent.setKey(in.getLong(keys + 8 * i));
+                agent.setEnergy(in.getDouble(energies + 8 * i));
+                agent.setLastReproducedTick(in.getInt(lastReproduced + 4 * i));
+                int cell = in.getInt(cells + 4 * i);
+                if (!grid.placeEntity(agent, cell)) {
+                    throw new IOException("Checkpoint places two entities on cell " + cell);
+                }
+                simulation.restoreAgent(agent);
+            }
+            in.position(cells + 4 * agents);
+
+            int food = in.getInt();
+            for (int i = 0; i < food; i++) {
+                grid.placeRestoredFood(new Food(config), in.getInt(), in.getInt());
+            }
+
+            log.info("Checkpoint of tick {} loaded from {} ({} agents, {} food)", tick, path, agents, food);
+            return simulation;
+        } catch (RuntimeException e) {
+            throw new IOException(path + " is not a valid checkpoint", e);
+        }
+    }
+
+    static void putConfig(ByteBuffer out, SimulationConfig config) {
+        out.putInt(config.getGridSize())
+                .putInt(config.getNumAgents())
+                .putInt(config.getMaxFoodSources())
+                .putDouble(config.getFoodSpawnProbability())
+                .putInt(config.getMaxTicks())
+                .putDouble(config.getInitialEnergy())
+                .putDouble(config.getReproductionThreshold())
+                .putInt(config.getReproductionCooldown())
+                .putDouble(config.getCostOfLiving())
+                .putDouble(config.getMoveCost())
+                .putDouble(config.getFoodReward())
+                .putInt(config.getFoodLifespan())
+                .putInt(config.getVisionRadius())
+                .putDouble(config.getAssistCost())
+                .putDouble(config.getShareRate())
+                .putDouble(config.getLowEnergyThreshold())
+                .putDouble(config.getBeta())
+                .putInt(config.getImitationInterval())
+                .putLong(config.getSeed());
+    }
+
+    static SimulationConfig getConfig(ByteBuffer in) {
+        return SimulationConfig.builder()
+                .gridSize(in.getInt())
+                .numAgents(in.getInt())
+                .maxFoodSources(in.getInt())
+                .foodSpawnProbability(in.getDouble())
+                .maxTicks(in.getInt())
+                .initialEnergy(in.getDouble())
+                .reproductionThreshold(in.getDouble())
+                .reproductionCooldown(in.getInt())
+                .costOfLiving(in.getDouble())
+                .moveCost(in.getDouble())
+                .foodReward(in.getDouble())
+                .foodLifespan(in.getInt())
+                .visionRadius(in.getInt())
+                .assistCost(in.getDouble())
+                .shareRate(in.getDouble())
+                .lowEnergyThreshold(in.getDouble())
+                .beta(in.getDouble())
+                .imitationInterval(in.getInt())
+                .seed(in.getLong())
+                .build();
+    }
+
+    static byte strategyCode(AgentStrategy strategy) {
+        if (strategy == null) return NO_STRATEGY;
+        if (strategy instanceof HelperStrategy) return HELPER;
+        if (strategy instanceof SelfishStrategy) return SELFISH;
+        if (strategy instanceof ForagerStrategy) return FORAGER;
+        throw new IllegalStateException("Cannot checkpoint strategy " + strategy.getClass().getName());
+    }
+
+    static AgentStrategy strategyFor(byte code, Simulation simulation, AgentStrategy forager) {
+        return strategyFor(code, simulation.getHelperStrategy(), simulation.getSelfishStrategy(), forager);
+    }
+
+    static AgentStrategy strategyFor(byte code, AgentStrategy helper, AgentStrategy selfish, AgentStrategy forager) {
+        return switch (code) {
+            case NO_STRATEGY -> null;
+            case HELPER -> helper;
+            case SELFISH -> selfish;
+            case FORAGER -> forager;
+            default -> throw new IllegalArgumentException("Unknown strategy code " + code);
+        };
+    }
+}
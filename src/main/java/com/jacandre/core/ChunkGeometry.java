@@ -0,0 +1,57 @@
+package com.jacandre.core;
+
+import net.jcip.annotations.Immutable;
+
+/**
+ * Splits a gridSize x gridSize torus into SIDE x SIDE chunks, so per-cell data can be allocated a chunk at a
+ * time. Chunks are numbered cx * chunksPerSide + cy and cells within a chunk (dx << SHIFT) | dy; chunks on the
+ * far edges are cut short when gridSize is not a multiple of SIDE.
+ */
+@Immutable
+final class ChunkGeometry {
+    static final int SHIFT = 5;
+    static final int SIDE = 1 << SHIFT;
+    static final int CELLS = SIDE * SIDE;
+    private static final int MASK = SIDE - 1;
+
+    private final int gridSize;
+    private final int chunksPerSide;
+
+    ChunkGeometry(int gridSize) {
+        if (gridSize <= 0 || (long) gridSize * gridSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Grid size " + gridSize + " does not fit packed int cell indices");
+        }
+        this.gridSize = gridSize;
+        this.chunksPerSide = (gridSize + MASK) >>> SHIFT;
+    }
+
+    int chunkCount() {
+        return chunksPerSide * chunksPerSide;
+    }
+
+    int chunkOf(int cell) {
+        int x = cell / gridSize;
+        int y = cell - x * gridSize;
+        return (x >>> SHIFT) * chunksPerSide + (y >>> SHIFT);
+    }
+
+    int offsetOf(int cell) {
+        int x = cell / gridSize;
+        int y = cell - x * gridSize;
+        return ((x & MASK) << SHIFT) | (y & MASK);
+    }
+
+    // Packed cell index of the offset within the chunk, or -1 if it falls off the edge of the grid
+    int cellAt(int chunk, int offset) {
+        int x = (chunk / chunksPerSide << SHIFT) + (offset >>> SHIFT);
+        int y = (chunk % chunksPerSide << SHIFT) + (offset & MASK);
+        return x < gridSize && y < gridSize ? x * gridSize + y : -1;
+    }
+
+    // Number of the chunk's cells that lie on the grid
+    int capacity(int chunk) {
+        int width = Math.min(SIDE, gridSize - (chunk / chunksPerSide << SHIFT));
+        int height = Math.min(SIDE, gridSize - (chunk % chunksPerSide << SHIFT));
+        return width * height;
+    }
+}
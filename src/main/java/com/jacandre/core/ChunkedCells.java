@@ -0,0 +1,197 @@
+package com.jacandre.core;
+
+import com.jacandre.models.GridEntity;
+import net.jcip.annotations.ThreadSafe;
+
+import java.awt.Point;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * The grid's cell contents, held in chunks (see ChunkGeometry) that are allocated the first time something is
+ * placed in them and dropped again between ticks once they are empty, so memory follows the occupied area and
+ * not the size of the world. A missing chunk reads as empty.
+ *
+ * Every chunk keeps a count of its occupied cells, which lets free-cell searches skip full chunks. With
+ * GridBackend.LOCKING each chunk has one lock covering all its cells; with ATOMIC cells are claimed by
+ * compare-and-swap and there are no locks.
+ */
+@ThreadSafe
+final class ChunkedCells {
+    private static final VarHandle CHUNKS = MethodHandles.arrayElementVarHandle(GridEntity[][].class);
+    private static final VarHandle CELLS = MethodHandles.arrayElementVarHandle(GridEntity[].class);
+    private static final VarHandle POINT_CHUNKS = MethodHandles.arrayElementVarHandle(Point[][].class);
+    private static final VarHandle POINTS = MethodHandles.arrayElementVarHandle(Point[].class);
+
+    private final ChunkGeometry geometry;
+    private final int gridSize;
+    private final GridEntity[][] chunks;
+    private final Point[][] points; // canonical Points, made on first request and dropped with their chunk
+    private final AtomicIntegerArray occupancy;
+    private final AtomicInteger occupied = new AtomicInteger();
+    private final ReentrantLock[] locks; // one per chunk; null for GridBackend.ATOMIC
+
+    ChunkedCells(int gridSize, GridBackend backend) {
+        this.geometry = new ChunkGeometry(gridSize);
+        this.gridSize = gridSize;
+        int chunkCount = geometry.chunkCount();
+        this.chunks = new GridEntity[chunkCount][];
+        this.points = new Point[chunkCount][];
+        this.occupancy = new AtomicIntegerArray(chunkCount);
+        if (backend == GridBackend.LOCKING) {
+            this.locks = new ReentrantLock[chunkCount];
+            for (int chunk = 0; chunk < chunkCount; chunk++) {
+                locks[chunk] = new ReentrantLock();
+            }
+        } else {
+            this.locks = null;
+        }
+    }
+
+    GridEntity get(int cell) {
+        GridEntity[] chunk = (GridEntity[]) CHUNKS.getAcquire(chunks, geometry.chunkOf(cell));
+        return chunk == null ? null : chunk[geometry.offsetOf(cell)];
+    }
+
+    // For the LOCKING backend, with the cell's chunk lock held, or between ticks
+    void set(int cell, GridEntity entity) {
+        int chunk = geometry.chunkOf(cell);
+        GridEntity[] cells = entity == null ? (GridEntity[]) CHUNKS.getAcquire(chunks, chunk) : chunkForWrite(chunk);
+        if (cells == null) return;
+        int offset = geometry.offsetOf(cell);
+        GridEntity previous = cells[offset];
+        cells[offset] = entity;
+        counted(chunk, previous, entity);
+    }
+
+    boolean compareAndSet(int cell, GridEntity expected, GridEntity entity) {
+        int chunk = geometry.chunkOf(cell);
+        GridEntity[] cells = expected == null ? chunkForWrite(chunk) : (GridEntity[]) CHUNKS.getAcquire(chunks, chunk);
+        if (cells == null || !CELLS.compareAndSet(cells, geometry.offsetOf(cell), expected, entity)) {
+            return false;
+        }
+        counted(chunk, expected, entity);
+        return true;
+    }
+
+    boolean isLocking() {
+        return locks != null;
+    }
+
+    // Moves take two locks in ascending lockOrder to avoid deadlock; cells in one chunk share a lock
+    ReentrantLock lockFor(int cell) {
+        return locks[geometry.chunkOf(cell)];
+    }
+
+    int lockOrder(int cell) {
+        return geometry.chunkOf(cell);
+    }
+
+    Point pointOf(int cell) {
+        int chunk = geometry.chunkOf(cell);
+        Point[] chunkPoints = (Point[]) POINT_CHUNKS.getAcquire(points, chunk);
+        if (chunkPoints == null) {
+            Point[] fresh = new Point[ChunkGeometry.CELLS];
+            Point[] witness = (Point[]) POINT_CHUNKS.compareAndExchange(points, chunk, null, fresh);
+            chunkPoints = witness == null ? fresh : witness;
+        }
+
+        int offset = geometry.offsetOf(cell);
+        Point point = (Point) POINTS.getAcquire(chunkPoints, offset);
+        if (point == null) {
+            Point fresh = new Point(cell / gridSize, cell % gridSize);
+            Point witness = (Point) POINTS.compareAndExchange(chunkPoints, offset, null, fresh);
+            point = witness == null ? fresh : witness;
+        }
+        return point;
+    }
+
+    int occupiedCount() {
+        return occupied.get();
+    }
+
+    int allocatedChunkCount() {
+        int allocated = 0;
+        for (int chunk = 0; chunk < chunks.length; chunk++) {
+            if (CHUNKS.getAcquire(chunks, chunk) != null) allocated++;
+        }
+        return allocated;
+    }
+
+    /**
+     * First empty cell of the first chunk with room, scanning chunks cyclically from firstChunk; -1 if the grid
+     * is full. Full chunks are passed over on their occupancy count alone.
+     */
+    int firstFreeCell(int firstChunk) {
+        return firstFreeCell(firstChunk, cell -> true);
+    }
+
+    // The same scan limited to the cells the filter accepts, e.g. the strip a ShardWorker owns
+    int firstFreeCell(int firstChunk, IntPredicate eligible) {
+        int chunkCount = chunks.length;
+        for (int i = 0; i < chunkCount; i++) {
+            int chunk = (firstChunk + i) % chunkCount;
+            if (occupancy.get(chunk) >= geometry.capacity(chunk)) continue;
+
+            GridEntity[] cells = (GridEntity[]) CHUNKS.getAcquire(chunks, chunk);
+            for (int offset = 0; offset < ChunkGeometry.CELLS; offset++) {
+                if (cells != null && cells[offset] != null) continue;
+                int cell = geometry.cellAt(chunk, offset);
+                if (cell >= 0 && eligible.test(cell)) return cell;
+            }
+        }
+        return -1;
+    }
+
+    int chunkCount() {
+        return chunks.length;
+    }
+
+    // Visits occupied cells chunk by chunk, skipping empty and unallocated chunks
+    void forEachOccupied(IntConsumer action) {
+        for (int chunk = 0; chunk < chunks.length; chunk++) {
+            GridEntity[] cells = (GridEntity[]) CHUNKS.getAcquire(chunks, chunk);
+            if (cells == null || occupancy.get(chunk) == 0) continue;
+            for (int offset = 0; offset < ChunkGeometry.CELLS; offset++) {
+                if (cells[offset] != null) action.accept(geometry.cellAt(chunk, offset));
+            }
+        }
+    }
+
+    // Drops the cells and Points of chunks that have emptied; only call between ticks, when nothing is being placed
+    int releaseEmptyChunks() {
+        int released = 0;
+        for (int chunk = 0; chunk < chunks.length; chunk++) {
+            if (occupancy.get(chunk) != 0) continue;
+            POINT_CHUNKS.setRelease(points, chunk, null);
+            if (CHUNKS.getAcquire(chunks, chunk) != null) {
+                CHUNKS.setRelease(chunks, chunk, null);
+                released++;
+            }
+        }
+        return released;
+    }
+
+    private GridEntity[] chunkForWrite(int chunk) {
+        GridEntity[] cells = (GridEntity[]) CHUNKS.getAcquire(chunks, chunk);
+        if (cells != null) return cells;
+        GridEntity[] fresh = new GridEntity[ChunkGeometry.CELLS];
+        GridEntity[] witness = (GridEntity[]) CHUNKS.compareAndExchange(chunks, chunk, null, fresh);
+        return witness == null ? fresh : witness;
+    }
+
+    private void counted(int chunk, GridEntity previous, GridEntity entity) {
+        if (previous == null && entity != null) {
+            occupancy.incrementAndGet(chunk);
+            occupied.incrementAndGet();
+        } else if (previous != null && entity == null) {
+            occupancy.decrementAndGet(chunk);
+            occupied.decrementAndGet();
+        }
+    }
+}
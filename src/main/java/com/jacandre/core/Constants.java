@@ -1,11 +1,10 @@
 package com.jacandre.core;
 
-import java.util.Random;
-
+// Defaults for SimulationConfig; a run reads its parameters from its config, never from here
 public class Constants {
     // Simulation Grid and Agent Count
     public static final int GRID_SIZE = 50;
-    public static int NUM_AGENTS = 200; // Total number of agents (max GRID_SIZE * GRID_SIZE)
+    public static final int NUM_AGENTS = 200; // Total number of agents (max GRID_SIZE * GRID_SIZE)
     public static final int MAX_FOOD_SOURCES = 100;
     public static final double FOOD_SPAWN_PROBABILITY = 0.35; // 20% chance per tick
     public static final int MAX_TICKS = 500;
@@ -27,7 +26,8 @@ public class Constants {
 
     // Evolutionary Dynamics Parameters
     public static final double BETA = 0.1; // Selection strength for the Fermi update rule (higher = stronger selection)
+    public static final int IMITATION_INTERVAL = 0; // Ticks between Fermi imitation passes; 0 turns imitation off
 
-    // Utility for randomization (ensure consistent random numbers across all classes)
-    public static final Random RANDOM = new Random(System.currentTimeMillis());
+    // Seed for all randomness in a run (see RandomStreams); give a config the same seed to replay a run exactly
+    public static final long SEED = System.currentTimeMillis();
 }
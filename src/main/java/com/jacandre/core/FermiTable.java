@@ -0,0 +1,38 @@
+package com.jacandre.core;
+
+import net.jcip.annotations.Immutable;
+
+/**
+ * The Fermi imitation probability 1 / (1 + exp(-beta * delta)), tabulated once per run.
+ * The argument beta * delta is sampled at STEPS + 1 evenly spaced points over [-RANGE, RANGE] and looked up
+ * with linear interpolation, which keeps the error below 1e-5; outside the range the probability is within
+ * 1e-13 of 0 or 1 and is clamped. A lookup is a multiply, a truncation and two array reads instead of an exp.
+ */
+@Immutable
+public final class FermiTable {
+    private static final double RANGE = 30.0;
+    private static final int STEPS = 1 << 12;
+
+    private final double[] table = new double[STEPS + 1];
+    private final double scale;  // steps per unit of delta
+    private final double offset; // step of delta == 0
+
+    public FermiTable(double beta) {
+        for (int i = 0; i <= STEPS; i++) {
+            double x = -RANGE + 2 * RANGE * i / STEPS;
+            table[i] = 1.0 / (1.0 + Math.exp(-x));
+        }
+        this.scale = beta * STEPS / (2 * RANGE);
+        this.offset = STEPS / 2.0;
+    }
+
+    // Probability of adopting a strategy whose payoff exceeds one's own by delta (delta may be negative)
+    public double probability(double delta) {
+        double position = delta * scale + offset;
+        if (position <= 0) return table[0];
+        if (position >= STEPS) return table[STEPS];
+        int i = (int) position;
+        double fraction = position - i;
+        return table[i] + (table[i + 1] - table[i]) * fraction;
+    }
+}
@@ -0,0 +1,235 @@
+package com.jacandre.core;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * Distance from every cell to its nearest food source, in king moves on the torus, capped at a radius.
+ * Built by a multi-source BFS and kept current incrementally: a new source relaxes outwards until it
+ * stops improving cells, and a removed source clears the region it was nearest to and refills it from
+ * the surrounding cells. Either update touches only the cells whose distance actually changes.
+ *
+ * Updates are serialised on the field. Reads are lock-free: a reader racing an update may see a mix of
+ * old and new distances, so callers must check the cell they are sent to, as they would any other
+ * decision made against a grid that other threads are changing.
+ *
+ * Distances are stored in chunks (see ChunkGeometry) that exist only while some cell in them is within the
+ * radius of food, and the work arrays grow with the largest update rather than with the grid, so the field
+ * costs memory in proportion to the area around food.
+ */
+@ThreadSafe
+class FoodDistanceField {
+    static final int UNREACHED = Integer.MAX_VALUE;
+    private static final int NO_SOURCE = -1;
+    private static final int IN_REGION = -2; // marks the cells a removal is clearing
+
+    // Orthogonal steps first, so a tie prefers the step that lands beside food rather than diagonal to it
+    private static final int[] STEP_DX = {-1, 1, 0, 0, -1, -1, 1, 1};
+    private static final int[] STEP_DY = {0, 0, -1, 1, -1, 1, -1, 1};
+    private static final int ORTHOGONAL_STEPS = 4;
+
+    private static final VarHandle CHUNKS = MethodHandles.arrayElementVarHandle(int[][].class);
+
+    private final int gridSize;
+    private final int radius;
+    private final ChunkGeometry chunks;
+    private final int[][] distance; // per chunk; null while every cell in it is UNREACHED
+    private final int[][] source;   // food cell each cell is measured from, or NO_SOURCE
+    private final int[] reached;    // cells per chunk with a distance
+    private int[] region = new int[64];
+    private long[] seeds = new long[64]; // (distance << 32) | cell, consumed in ascending order
+    private int[] queue = new int[64];
+
+    FoodDistanceField(int gridSize, int radius) {
+        this.gridSize = gridSize;
+        this.radius = radius;
+        this.chunks = new ChunkGeometry(gridSize);
+        this.distance = new int[chunks.chunkCount()][];
+        this.source = new int[chunks.chunkCount()][];
+        this.reached = new int[chunks.chunkCount()];
+    }
+
+    int distanceAt(int cell) {
+        int[] chunk = (int[]) CHUNKS.getAcquire(distance, chunks.chunkOf(cell));
+        return chunk == null ? UNREACHED : chunk[chunks.offsetOf(cell)];
+    }
+
+    /**
+     * Neighbour of the cell that is closest to food, or -1 if no food is within the radius. When the cell
+     * is beside food, the step is the food cell itself. Food diagonal to the cell is never the step: only
+     * orthogonal neighbours can eat, so the step is a cell beside both of them instead.
+     */
+    int stepTowardFood(int cell) {
+        int best = -1;
+        int bestDistance = UNREACHED;
+        int x = cell / gridSize;
+        int y = cell % gridSize;
+        for (int i = 0; i < STEP_DX.length; i++) {
+            int neighbour = neighbour(x, y, i);
+            int d = distanceAt(neighbour);
+            if (d == 0 && i >= ORTHOGONAL_STEPS) continue;
+            if (d < bestDistance) {
+                best = neighbour;
+                bestDistance = d;
+            }
+        }
+        return best;
+    }
+
+    synchronized void addSource(int cell) {
+        if (distanceAt(cell) == 0) {
+            return;
+        }
+        reach(cell, 0, cell);
+        seeds[0] = cell;
+        propagate(1);
+    }
+
+    synchronized void removeSource(int cell) {
+        if (sourceOf(cell) != cell) {
+            return;
+        }
+
+        // Collect the cells measured from this source. Each one has a neighbour one step closer with the
+        // same source, so the region is connected through the source itself.
+        int regionSize = 0;
+        region[regionSize++] = cell;
+        setSource(cell, IN_REGION);
+        for (int i = 0; i < regionSize; i++) {
+            int x = region[i] / gridSize;
+            int y = region[i] % gridSize;
+            for (int j = 0; j < STEP_DX.length; j++) {
+                int neighbour = neighbour(x, y, j);
+                if (sourceOf(neighbour) == cell) {
+                    if (regionSize == region.length) region = Arrays.copyOf(region, regionSize * 2);
+                    region[regionSize++] = neighbour;
+                    setSource(neighbour, IN_REGION);
+                }
+            }
+        }
+
+        // Refill the region from the cells bordering it, which keep their distances to other sources
+        int seedCount = 0;
+        for (int i = 0; i < regionSize; i++) {
+            int x = region[i] / gridSize;
+            int y = region[i] % gridSize;
+            for (int j = 0; j < STEP_DX.length; j++) {
+                int neighbour = neighbour(x, y, j);
+                int d = distanceAt(neighbour);
+                if (d < radius && sourceOf(neighbour) != IN_REGION) {
+                    if (seedCount == seeds.length) seeds = Arrays.copyOf(seeds, seedCount * 2);
+                    seeds[seedCount++] = ((long) d << 32) | neighbour;
+                }
+            }
+        }
+        for (int i = 0; i < regionSize; i++) {
+            unreach(region[i]);
+        }
+        Arrays.sort(seeds, 0, seedCount);
+        seedCount = withoutRepeats(seeds, seedCount);
+        propagate(seedCount);
+
+        for (int i = 0; i < regionSize; i++) {
+            releaseIfUnreached(chunks.chunkOf(region[i]));
+        }
+    }
+
+    /**
+     * BFS from seeds[0, seedCount), which must be sorted by distance. Seeds and the FIFO queue are merged
+     * in distance order, so every cell is settled the first time it improves and is expanded at most once.
+     */
+    private void propagate(int seedCount) {
+        int nextSeed = 0;
+        int head = 0;
+        int tail = 0;
+        while (nextSeed < seedCount || head < tail) {
+            int current;
+            if (head == tail || (nextSeed < seedCount && (int) (seeds[nextSeed] >>> 32) <= distanceAt(queue[head]))) {
+                current = (int) seeds[nextSeed++];
+            } else {
+                current = queue[head++];
+            }
+
+            int next = distanceAt(current) + 1;
+            if (next > radius) continue;
+
+            int currentSource = sourceOf(current);
+            int x = current / gridSize;
+            int y = current % gridSize;
+            for (int i = 0; i < STEP_DX.length; i++) {
+                int neighbour = neighbour(x, y, i);
+                if (next < distanceAt(neighbour)) {
+                    reach(neighbour, next, currentSource);
+                    if (tail == queue.length) queue = Arrays.copyOf(queue, tail * 2);
+                    queue[tail++] = neighbour;
+                }
+            }
+        }
+    }
+
+    private int sourceOf(int cell) {
+        int[] chunk = source[chunks.chunkOf(cell)];
+        return chunk == null ? NO_SOURCE : chunk[chunks.offsetOf(cell)];
+    }
+
+    // Only for cells that already have a distance
+    private void setSource(int cell, int food) {
+        source[chunks.chunkOf(cell)][chunks.offsetOf(cell)] = food;
+    }
+
+    private void reach(int cell, int d, int food) {
+        int chunk = chunks.chunkOf(cell);
+        int offset = chunks.offsetOf(cell);
+        int[] distances = distance[chunk];
+        if (distances == null) {
+            distances = new int[ChunkGeometry.CELLS];
+            Arrays.fill(distances, UNREACHED);
+            int[] sources = new int[ChunkGeometry.CELLS];
+            Arrays.fill(sources, NO_SOURCE);
+            source[chunk] = sources;
+            CHUNKS.setRelease(distance, chunk, distances); // readers must never see the unfilled array
+        }
+        if (distances[offset] == UNREACHED) reached[chunk]++;
+        distances[offset] = d;
+        source[chunk][offset] = food;
+    }
+
+    private void unreach(int cell) {
+        int chunk = chunks.chunkOf(cell);
+        int offset = chunks.offsetOf(cell);
+        if (distance[chunk][offset] != UNREACHED) reached[chunk]--;
+        distance[chunk][offset] = UNREACHED;
+        source[chunk][offset] = NO_SOURCE;
+    }
+
+    private void releaseIfUnreached(int chunk) {
+        if (reached[chunk] == 0 && distance[chunk] != null) {
+            CHUNKS.setRelease(distance, chunk, null);
+            source[chunk] = null;
+        }
+    }
+
+    // Compacts a sorted array so each value appears once; returns the new length
+    private static int withoutRepeats(long[] values, int count) {
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            if (kept == 0 || values[i] != values[kept - 1]) {
+                values[kept++] = values[i];
+            }
+        }
+        return kept;
+    }
+
+    private int neighbour(int x, int y, int step) {
+        return wrap(x + STEP_DX[step]) * gridSize + wrap(y + STEP_DY[step]);
+    }
+
+    private int wrap(int v) {
+        if (v < 0) return v + gridSize;
+        if (v >= gridSize) return v - gridSize;
+        return v;
+    }
+}
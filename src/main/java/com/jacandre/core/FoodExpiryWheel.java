@@ -0,0 +1,72 @@
+package com.jacandre.core;
+
+import com.jacandre.models.Food;
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Timing wheel of food expiry ticks.
+ * Each food source is filed once, in the slot for the tick it expires on, so advancing the wheel only
+ * touches the food that actually expires. Food that is eaten first is skipped when its slot comes round.
+ */
+@ThreadSafe
+class FoodExpiryWheel {
+    private final List<List<Food>> slots;
+    private int currentTick;
+
+    FoodExpiryWheel(int lifespan) {
+        // Every food source expires lifespan + 1 ticks after it is filed, so that many slots never collide
+        this.slots = new ArrayList<>(lifespan + 2);
+        for (int i = 0; i < lifespan + 2; i++) {
+            slots.add(new ArrayList<>());
+        }
+    }
+
+    synchronized int getCurrentTick() {
+        return currentTick;
+    }
+
+    // Sets the clock of an empty wheel, e.g. before refiling food restored from a checkpoint
+    synchronized void resetTo(int tick) {
+        for (List<Food> slot : slots) {
+            if (!slot.isEmpty()) {
+                throw new IllegalStateException("Wheel still holds food");
+            }
+        }
+        currentTick = tick;
+    }
+
+    // Filed food in the order it will be examined, soonest expiry first; includes food eaten since
+    synchronized List<Food> scheduled() {
+        List<Food> filed = new ArrayList<>();
+        for (int i = 1; i < slots.size(); i++) {
+            filed.addAll(slots.get(Math.floorMod(currentTick + i, slots.size())));
+        }
+        return filed;
+    }
+
+    synchronized void schedule(Food food) {
+        if (food.getExpiryTick() - currentTick >= slots.size()) {
+            throw new IllegalArgumentException("Expiry tick " + food.getExpiryTick() + " is beyond the wheel horizon");
+        }
+        slots.get(Math.floorMod(food.getExpiryTick(), slots.size())).add(food);
+    }
+
+    /**
+     * Moves the wheel forward to the given tick, adding every food source due on the way to expired.
+     */
+    synchronized void advanceTo(int tick, List<Food> expired) {
+        while (currentTick < tick) {
+            currentTick++;
+            List<Food> slot = slots.get(Math.floorMod(currentTick, slots.size()));
+            for (Food food : slot) {
+                if (food.getExpiryTick() == currentTick) {
+                    expired.add(food);
+                }
+            }
+            slot.clear();
+        }
+    }
+}
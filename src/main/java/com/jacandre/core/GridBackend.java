@@ -0,0 +1,9 @@
+package com.jacandre.core;
+
+// How GridManager makes cell updates safe when several threads change the grid
+public enum GridBackend {
+    // A ReentrantLock per chunk of cells; moves take both chunks' locks in chunk order
+    LOCKING,
+    // Compare-and-swap on the cell array itself; no per-cell lock objects
+    ATOMIC
+}
@@ -3,94 +3,174 @@ package com.jacandre.core;
 import com.jacandre.models.Agent;
 import com.jacandre.models.Food;
 import com.jacandre.models.GridEntity;
+import com.jacandre.models.LowEnergyListener;
 import lombok.extern.slf4j.Slf4j;
 import net.jcip.annotations.ThreadSafe;
 
 import java.awt.Point;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.random.RandomGenerator;
 import java.util.stream.Collectors;
 
+/**
+ * Thread-safe toroidal grid.
+ * Cells are addressed either by Point or by a packed int cell index (x * gridSize + y). The packed
+ * methods do not allocate, and every Point handed out is the shared canonical instance for its cell,
+ * so callers must treat returned Points as read-only.
+ *
+ * Cells are stored in lazily allocated chunks (see ChunkedCells), so a sparse population on a very large
+ * grid costs memory in proportion to the area it occupies. Cell updates are made safe either by a lock per
+ * chunk or, with GridBackend.ATOMIC, by compare-and-swap on the cells; see GridBackend.
+ */
 @Slf4j
 @ThreadSafe
 public class GridManager {
-    private final GridEntity[][] grid;
+    static final int FREE_CELL_DRAWS = 16;
+
+    private final ChunkedCells grid;
     private final ConcurrentHashMap<GridEntity, Point> entityPositions;
-    private final ConcurrentLinkedQueue<Point> unoccupiedPositions;
-    private final ReentrantLock[][] cellLocks;
+    private final SpatialIndex agentIndex;
+    private final SpatialIndex foodIndex;
+    private final SpatialIndex needyIndex; // agents below LOW_ENERGY_THRESHOLD
+    private final FoodDistanceField foodDistances;
+    private final FoodExpiryWheel foodExpiry;
+    private final List<Food> expiredFood = new ArrayList<>();
+    private final int[] wrapTable; // wrapTable[v + gridSize] == v mod gridSize for v in [-gridSize, 2 * gridSize)
     private final int gridSize;
+    private final SimulationConfig config;
+    private final RandomStreams freeCellStreams;
+    private final AtomicLong freeCellSearches = new AtomicLong();
+
+    private final IntPredicate lowEnergyAgent = cell ->
+            getEntityAt(cell) instanceof Agent agent && agent.isLowEnergy();
 
+    private final LowEnergyListener needyTracker = this::lowEnergyChanged;
+
+    // Fixed default seed, so grids built for tests hand out free cells in the same order every run
     public GridManager(int gridSize) {
-        this.gridSize = gridSize;
-        this.grid = new GridEntity[gridSize][gridSize];
-        this.entityPositions = new ConcurrentHashMap<>();
-        this.unoccupiedPositions = initialiseUnoccupiedPositions();
-        this.cellLocks = new ReentrantLock[gridSize][gridSize];
+        this(gridSize, GridBackend.LOCKING, 0L);
+    }
 
-        initialiseCellLocks();
+    public GridManager(int gridSize, GridBackend backend) {
+        this(gridSize, backend, 0L);
     }
 
-    private ConcurrentLinkedQueue<Point> initialiseUnoccupiedPositions() {
-        List<Point> unoccupiedPositions = new ArrayList<>();
-        for (int x = 0; x < gridSize; x++) {
-            for (int y = 0; y < gridSize; y++) {
-                unoccupiedPositions.add(new Point(x, y));
-            }
-        }
-        Collections.shuffle(unoccupiedPositions, Constants.RANDOM);
-        return new ConcurrentLinkedQueue<>(unoccupiedPositions);
+    public GridManager(int gridSize, GridBackend backend, long seed) {
+        this(SimulationConfig.builder().gridSize(gridSize).seed(seed).build(), backend);
     }
 
-    private void initialiseCellLocks() {
-        for (int x = 0; x < gridSize; x++) {
-            for (int y = 0; y < gridSize; y++) {
-                this.cellLocks[x][y] = new ReentrantLock();
-            }
+    // The config's seed fixes the order in which getNextAvailableCell hands out free cells
+    public GridManager(SimulationConfig config, GridBackend backend) {
+        this.config = config;
+        this.gridSize = config.getGridSize();
+        this.freeCellStreams = new RandomStreams(config.getSeed());
+        this.grid = new ChunkedCells(gridSize, backend);
+        this.entityPositions = new ConcurrentHashMap<>();
+        this.agentIndex = new SpatialIndex(gridSize);
+        this.foodIndex = new SpatialIndex(gridSize);
+        this.needyIndex = new SpatialIndex(gridSize);
+        this.foodDistances = new FoodDistanceField(gridSize, config.getVisionRadius());
+        this.foodExpiry = new FoodExpiryWheel(config.getFoodLifespan());
+        this.wrapTable = new int[3 * gridSize];
+
+        for (int v = -gridSize; v < 2 * gridSize; v++) {
+            this.wrapTable[v + gridSize] = Math.floorMod(v, gridSize);
         }
     }
 
     public Point getNextAvailablePosition() {
-        return unoccupiedPositions.poll(); // returns null if empty
+        int cell = getNextAvailableCell();
+        return cell < 0 ? null : pointOf(cell);
+    }
+
+    /**
+     * A free cell chosen at random, or -1 if the grid is full. A few uniform draws find one at once on a sparse
+     * grid; on a crowded one the search falls back to scanning from a random chunk, passing over the chunks
+     * that are full. Each call has its own counter-based stream, so the cells handed out depend only on the
+     * seed and the number of calls.
+     */
+    public int getNextAvailableCell() {
+        int cells = gridSize * gridSize;
+        if (grid.occupiedCount() >= cells) {
+            return -1;
+        }
+
+        RandomGenerator random = freeCellStreams.forFreeCellSearch(freeCellSearches.getAndIncrement());
+        for (int draw = 0; draw < FREE_CELL_DRAWS; draw++) {
+            int cell = random.nextInt(cells);
+            if (grid.get(cell) == null) {
+                return cell;
+            }
+        }
+        return grid.firstFreeCell(random.nextInt(grid.chunkCount()));
     }
 
     public boolean placeEntity(GridEntity entity, Point position) {
-        Point wrapped = wrap(position);
-        ReentrantLock lock = cellLocks[wrapped.x][wrapped.y];
+        return placeEntity(entity, cellOf(position.x, position.y));
+    }
+
+    public boolean placeEntity(GridEntity entity, int cell) {
+        if (!grid.isLocking()) {
+            if (!grid.compareAndSet(cell, null, entity)) return false;
+            placed(entity, cell);
+            return true;
+        }
+
+        ReentrantLock lock = grid.lockFor(cell);
 
         lock.lock();
         try {
-            if (grid[wrapped.x][wrapped.y] != null) {
+            if (grid.get(cell) != null) {
                 return false;
             }
 
-            grid[wrapped.x][wrapped.y] = entity;
-            entityPositions.put(entity, wrapped);
+            grid.set(cell, entity);
+            placed(entity, cell);
             return true;
         } finally {
             lock.unlock();
         }
     }
 
+    public boolean moveEntity(GridEntity entity, Point newPosition) {
+        return moveEntity(entity, cellOf(newPosition.x, newPosition.y));
+    }
+
     /**
-     * Thread-safe movement using fine-grained cell locks.
-     * Must acquire locks on both source and destination cells before mutation.
+     * Thread-safe movement. With chunk locks, both source and destination are locked before mutation.
+     * With the atomic backend the destination is claimed by compare-and-swap and the source released
+     * after it, so for that instant a reader can see the entity in both cells but never in neither.
      */
-    public boolean moveEntity(GridEntity entity, Point newPosition) {
-        Point oldPos = entityPositions.get(entity);
-        if (oldPos == null) {
+    public boolean moveEntity(GridEntity entity, int newCell) {
+        int oldCell = getCellOf(entity);
+        if (oldCell < 0) {
             return false;
         }
 
-        Point wrappedNew = wrap(newPosition);
-        ReentrantLock lockA = cellLocks[oldPos.x][oldPos.y];
-        ReentrantLock lockB = cellLocks[wrappedNew.x][wrappedNew.y];
+        if (!grid.isLocking()) {
+            if (!grid.compareAndSet(newCell, null, entity)) return false;
+            if (!grid.compareAndSet(oldCell, entity, null)) {
+                grid.compareAndSet(newCell, entity, null); // removed meanwhile; give the claim back
+                return false;
+            }
+            moved(entity, oldCell, newCell);
+            return true;
+        }
+
+        ReentrantLock lockA = grid.lockFor(oldCell);
+        ReentrantLock lockB = grid.lockFor(newCell);
+        int orderA = grid.lockOrder(oldCell);
+        int orderB = grid.lockOrder(newCell);
 
-        // Consistent lock ordering to prevent deadlock
-        if (lockA == lockB) {
+        // Consistent lock ordering (by chunk) to prevent deadlock; a move within one chunk takes its lock once
+        if (orderA == orderB) {
             lockA.lock();
-        } else if (System.identityHashCode(lockA) < System.identityHashCode(lockB)) {
+        } else if (orderA < orderB) {
             lockA.lock();
             lockB.lock();
         } else {
@@ -99,46 +179,42 @@ public class GridManager {
         }
 
         try {
-            if (grid[wrappedNew.x][wrappedNew.y] != null) return false;
+            if (grid.get(newCell) != null) return false;
 
-            grid[oldPos.x][oldPos.y] = null;
-            grid[wrappedNew.x][wrappedNew.y] = entity;
-            entityPositions.put(entity, wrappedNew);
-            releasePosition(oldPos);
+            grid.set(oldCell, null);
+            grid.set(newCell, entity);
+            moved(entity, oldCell, newCell);
             return true;
         } finally {
-            if (lockA != lockB) lockB.unlock();
+            if (orderA != orderB) lockB.unlock();
             lockA.unlock();
         }
     }
 
     public boolean tryConsumeFood(Point foodPos, Agent contender) {
-        Point wrapped = wrap(foodPos);
-        ReentrantLock lock = cellLocks[wrapped.x][wrapped.y];
+        return tryConsumeFood(cellOf(foodPos.x, foodPos.y), contender);
+    }
+
+    public boolean tryConsumeFood(int foodCell, Agent contender) {
+        if (!grid.isLocking()) {
+            // The contest is judged without a lock; the compare-and-swap makes sure only one winner eats
+            GridEntity entity = grid.get(foodCell);
+            if (!(entity instanceof Food) || strongestContender(foodCell) != contender) return false;
+            if (!grid.compareAndSet(foodCell, entity, null)) return false;
+            consumed(entity, foodCell, contender);
+            return true;
+        }
+
+        ReentrantLock lock = grid.lockFor(foodCell);
         lock.lock();
 
         try {
-            GridEntity entity = grid[wrapped.x][wrapped.y];
+            GridEntity entity = grid.get(foodCell);
             if (!(entity instanceof Food)) return false;
 
-            // Scan for adjacent agents
-            List<GridEntity> neighbours = getOccupiedNeighbours(wrapped, 1);
-            List<Agent> contenders = neighbours.stream()
-                    .filter(e -> e instanceof Agent)
-                    .map(e -> (Agent) e)
-                    .filter(a -> getPositionOf(a).distance(wrapped) <= 1.0)
-                    .toList();
-
-            Agent strongest = contenders.stream()
-                    .max(Comparator.comparingDouble(Agent::getEnergy))
-                    .orElse(null);
-
-            if (strongest != null && strongest.equals(contender)) {
-                grid[wrapped.x][wrapped.y] = null;
-                entityPositions.remove(entity);
-                releasePosition(wrapped);
-                contender.increaseEnergy(Constants.FOOD_REWARD);
-                log.info("Agent {} won contested food at {} with energy {}", contender.getId(), foodPos, contender.getEnergy());
+            if (strongestContender(foodCell) == contender) {
+                grid.set(foodCell, null);
+                consumed(entity, foodCell, contender);
                 return true;
             }
 
@@ -149,43 +225,157 @@ public class GridManager {
     }
 
     public void removeEntity(GridEntity entity) {
-        Point position = entityPositions.get(entity);
-        if (position == null) {
+        int cell = getCellOf(entity);
+        if (cell < 0) {
             return;
         }
 
-        Point wrapped = wrap(position);
-        ReentrantLock lock = cellLocks[wrapped.x][wrapped.y];
+        if (!grid.isLocking()) {
+            if (grid.compareAndSet(cell, entity, null)) removed(entity, cell);
+            return;
+        }
+
+        ReentrantLock lock = grid.lockFor(cell);
 
         lock.lock();
         try {
-            grid[wrapped.x][wrapped.y] = null;
-            entityPositions.remove(entity);
-            releasePosition(wrapped);
+            grid.set(cell, null);
+            removed(entity, cell);
         } finally {
             lock.unlock();
         }
     }
 
-    public void releasePosition(Point p) {
-        Point wrapped = wrap(p);
-        if (!isOccupied(wrapped)) {
-            unoccupiedPositions.offer(wrapped);
+    // Strongest adjacent agent wins. Only the four orthogonal neighbours on the torus count as
+    // contenders, as FoodDistanceField routes across the wrap; the first one scanned wins a tie.
+    private Agent strongestContender(int foodCell) {
+        int foodX = foodCell / gridSize;
+        int foodY = foodCell % gridSize;
+        Agent strongest = null;
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                if (Math.abs(dx) + Math.abs(dy) != 1) continue;
+
+                if (grid.get(cellOf(foodX + dx, foodY + dy)) instanceof Agent agent
+                        && (strongest == null || agent.getEnergy() > strongest.getEnergy())) {
+                    strongest = agent;
+                }
+            }
         }
+        return strongest;
+    }
+
+    // Bookkeeping after the cell itself has changed; shared by both backends
+
+    private void placed(GridEntity entity, int cell) {
+        trackPosition(entity, cell);
+        SpatialIndex index = indexFor(entity);
+        if (index != null) index.add(cell);
+        if (entity instanceof Agent agent) {
+            agent.setLowEnergyListener(needyTracker);
+            if (agent.isLowEnergy()) needyIndex.add(cell);
+        }
+        if (entity instanceof Food food) {
+            food.setSpawnTick(foodExpiry.getCurrentTick());
+            foodExpiry.schedule(food);
+            foodDistances.addSource(cell);
+        }
+    }
+
+    private void moved(GridEntity entity, int oldCell, int newCell) {
+        trackPosition(entity, newCell);
+        SpatialIndex index = indexFor(entity);
+        if (index != null) index.move(oldCell, newCell);
+        if (entity instanceof Agent agent && agent.isLowEnergy()) needyIndex.move(oldCell, newCell);
+    }
+
+    private void removed(GridEntity entity, int cell) {
+        untrackPosition(entity);
+        SpatialIndex index = indexFor(entity);
+        if (index != null) index.remove(cell);
+        if (entity instanceof Food) foodDistances.removeSource(cell);
+        if (entity instanceof Agent agent && agent.isLowEnergy()) needyIndex.remove(cell);
+    }
+
+    private void consumed(GridEntity food, int foodCell, Agent contender) {
+        removed(food, foodCell);
+        contender.increaseEnergy(config.getFoodReward());
+        if (log.isInfoEnabled()) {
+            log.info("Agent {} won contested food at {} with energy {}", contender.getId(), pointOf(foodCell), contender.getEnergy());
+        }
+    }
+
+    /**
+     * Advances the food clock to the given tick and removes every food source that has outlived
+     * FOOD_LIFESPAN. Food placed while the clock reads t expires on tick t + FOOD_LIFESPAN + 1.
+     * Returns the number of food sources removed.
+     */
+    public synchronized int expireFood(int tick) {
+        foodExpiry.advanceTo(tick, expiredFood);
+
+        int removed = 0;
+        for (Food food : expiredFood) {
+            int cell = getCellOf(food);
+            if (cell >= 0 && grid.get(cell) == food) {
+                removeEntity(food);
+                removed++;
+                if (log.isInfoEnabled()) {
+                    log.info("Food at {} expired and removed.", pointOf(cell));
+                }
+            }
+        }
+        expiredFood.clear();
+        return removed;
+    }
+
+    // Live count of food on the grid
+    public void forEachFoodCell(IntConsumer action) {
+        foodIndex.forEach(action);
+    }
+
+    public int getFoodCount() {
+        return foodIndex.size();
+    }
+
+    public int getAgentCount() {
+        return agentIndex.size();
+    }
+
+    // Free cells are found by looking at the grid itself, so a vacated cell no longer needs releasing
+    public void releasePosition(Point p) {
+    }
+
+    public void releasePosition(int cell) {
     }
 
     public GridEntity getEntityAt(Point position) {
-        Point wrapped = wrap(position);
-        return grid[wrapped.x][wrapped.y];
+        return grid.get(cellOf(position.x, position.y));
+    }
+
+    public GridEntity getEntityAt(int cell) {
+        return grid.get(cell);
     }
 
     public Point getPositionOf(GridEntity entity) {
-        return entityPositions.get(entity);
+        int cell = getCellOf(entity);
+        return cell < 0 ? null : pointOf(cell);
+    }
+
+    // Returns -1 if the entity is not on the grid
+    public int getCellOf(GridEntity entity) {
+        if (entity instanceof Agent agent) {
+            return agent.getCell();
+        }
+        Point position = entityPositions.get(entity);
+        return position == null ? -1 : position.x * gridSize + position.y;
     }
 
     public boolean isOccupied(Point position) {
-        Point wrapped = wrap(position);
-        return grid[wrapped.x][wrapped.y] != null;
+        return grid.get(cellOf(position.x, position.y)) != null;
+    }
+
+    public boolean isOccupied(int cell) {
+        return grid.get(cell) != null;
     }
 
     public List<Point> getNeighbourPositions(Point centre, int radius) {
@@ -195,7 +385,7 @@ public class GridManager {
             for (int dy = -radius; dy <= radius; dy++) {
                 if (dx == 0 && dy == 0) continue;
 
-                neighbours.add(wrap(new Point(centre.x + dx, centre.y + dy)));
+                neighbours.add(pointOf(cellOf(centre.x + dx, centre.y + dy)));
             }
         }
 
@@ -220,10 +410,149 @@ public class GridManager {
                 .collect(Collectors.toMap(p -> p, this::getEntityAt));
     }
 
+    public int neighbourCell(int cell, int dx, int dy) {
+        return cellOf(cell / gridSize + dx, cell % gridSize + dy);
+    }
+
+    public int countEmptyNeighbours(int cell) {
+        int count = 0;
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                if (dx == 0 && dy == 0) continue;
+                if (grid.get(neighbourCell(cell, dx, dy)) == null) count++;
+            }
+        }
+        return count;
+    }
+
+    // Uniformly random cell holding an agent among the 8 neighbours, or -1 if there is none; one draw when found
+    public int randomAgentNeighbour(int cell, RandomGenerator random) {
+        int count = 0;
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                if (dx == 0 && dy == 0) continue;
+                if (grid.get(neighbourCell(cell, dx, dy)) instanceof Agent) count++;
+            }
+        }
+        if (count == 0) return -1;
+
+        int pick = random.nextInt(count);
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                if (dx == 0 && dy == 0) continue;
+                int neighbour = neighbourCell(cell, dx, dy);
+                if (grid.get(neighbour) instanceof Agent && pick-- == 0) return neighbour;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Uniformly random empty cell among the 8 neighbours, or -1 if all are occupied.
+     * Draws from the random source exactly once when a cell is available, in the same scan order as
+     * getEmptyNeighbours(centre, 1).
+     */
+    public int randomEmptyNeighbour(int cell, RandomGenerator random) {
+        return randomEmptyNeighbour(cell, -1, random);
+    }
+
+    // As above, but never returns excludedCell
+    public int randomEmptyNeighbour(int cell, int excludedCell, RandomGenerator random) {
+        int count = 0;
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                if (dx == 0 && dy == 0) continue;
+                int neighbour = neighbourCell(cell, dx, dy);
+                if (grid.get(neighbour) == null && neighbour != excludedCell) count++;
+            }
+        }
+        if (count == 0) return -1;
+
+        int pick = random.nextInt(count);
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                if (dx == 0 && dy == 0) continue;
+                int neighbour = neighbourCell(cell, dx, dy);
+                if (grid.get(neighbour) == null && neighbour != excludedCell && pick-- == 0) return neighbour;
+            }
+        }
+        return -1; // a neighbour was filled concurrently
+    }
+
+    /**
+     * Positions of entities of the given type within the square window of the given radius around
+     * centre, excluding centre itself. Agents and food are answered from their spatial index, so the
+     * cost scales with the number of matching entities rather than with the window area.
+     */
     public List<Point> getEntitiesOfType(Point centre, int radius, Class<? extends GridEntity> type) {
-        return getNeighbourPositions(centre, radius).stream()
-                .filter(p -> type.isInstance(getEntityAt(p)))
-                .collect(Collectors.toList());
+        SpatialIndex index = indexFor(type);
+        if (index == null) {
+            return getNeighbourPositions(centre, radius).stream()
+                    .filter(p -> type.isInstance(getEntityAt(p)))
+                    .collect(Collectors.toList());
+        }
+
+        int centreCell = cellOf(centre.x, centre.y);
+        List<Point> matches = new ArrayList<>();
+        index.forEachInWindow(centreCell / gridSize, centreCell % gridSize, radius, cell -> {
+            if (cell != centreCell) {
+                matches.add(pointOf(cell));
+            }
+        });
+        return matches;
+    }
+
+    /**
+     * Allocation-free equivalent of findNearest(centre, getEntitiesOfType(centre, radius, type)).
+     * Returns -1 if nothing of that type is in range.
+     */
+    public int findNearestOfType(int centre, int radius, Class<? extends GridEntity> type) {
+        SpatialIndex index = indexFor(type);
+        if (index != null) {
+            return index.nearest(centre / gridSize, centre % gridSize, radius, centre, null);
+        }
+
+        int best = -1;
+        long bestDistanceSq = Long.MAX_VALUE;
+        for (int dx = -radius; dx <= radius; dx++) {
+            for (int dy = -radius; dy <= radius; dy++) {
+                int cell = neighbourCell(centre, dx, dy);
+                if (cell == centre || !type.isInstance(grid.get(cell))) continue;
+                long distanceSq = planarDistanceSq(centre, cell);
+                if (distanceSq < bestDistanceSq) {
+                    best = cell;
+                    bestDistanceSq = distanceSq;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Neighbouring cell one king move closer to the nearest food on the torus, or -1 if no food is within
+     * VISION_RADIUS moves. Next to food, this is the food cell. Reads a distance field that every food
+     * placement and removal keeps current, so the cost does not depend on the radius or the amount of food.
+     */
+    public int stepTowardFood(int cell) {
+        return foodDistances.stepTowardFood(cell);
+    }
+
+    // King moves from the cell to the nearest food on the torus, or Integer.MAX_VALUE beyond VISION_RADIUS
+    public int foodDistanceAt(int cell) {
+        return foodDistances.distanceAt(cell);
+    }
+
+    /**
+     * Nearest agent below LOW_ENERGY_THRESHOLD within the window, or -1. Searches only the agents that are
+     * currently low on energy, so with nobody in need it returns at once.
+     */
+    public int findNearestLowEnergyAgent(int centre, int radius) {
+        if (needyIndex.size() == 0) return -1;
+        return needyIndex.nearest(centre / gridSize, centre % gridSize, radius, centre, lowEnergyAgent);
+    }
+
+    public int getLowEnergyAgentCount() {
+        return needyIndex.size();
     }
 
     public Optional<Point> findNearest(Point from, List<Point> targets) {
@@ -231,6 +560,13 @@ public class GridManager {
                 .min(Comparator.comparingDouble(from::distanceSq));
     }
 
+    // Squared distance between two cells on the wrapped coordinates, ignoring the torus (as findNearest does)
+    public long planarDistanceSq(int a, int b) {
+        long dx = a / gridSize - b / gridSize;
+        long dy = a % gridSize - b % gridSize;
+        return dx * dx + dy * dy;
+    }
+
     public boolean consumeEntity(Point p, Agent consumer, double reward) {
         GridEntity entity = getEntityAt(p);
         if (entity == null) return false;
@@ -253,38 +589,159 @@ public class GridManager {
 
     public Map<Point, GridEntity> getEntitiesOfType(Class<? extends GridEntity> type) {
         Map<Point, GridEntity> result = new HashMap<>();
-        for (int x = 0; x < gridSize; x++) {
-            for (int y = 0; y < gridSize; y++) {
-                GridEntity entity = grid[x][y];
-                if (type.isInstance(entity)) {
-                    result.put(new Point(x, y), entity);
-                }
+        grid.forEachOccupied(cell -> {
+            GridEntity entity = grid.get(cell);
+            if (type.isInstance(entity)) {
+                result.put(pointOf(cell), entity);
             }
-        }
+        });
         return result;
     }
 
 
     public Point stepToward(Point from, Point to) {
-        int dx = Integer.compare(to.x, from.x);
-        int dy = Integer.compare(to.y, from.y);
-        return wrap(new Point(from.x + dx, from.y + dy));
+        return pointOf(stepToward(cellOf(from.x, from.y), cellOf(to.x, to.y)));
+    }
+
+    public int stepToward(int from, int to) {
+        int dx = Integer.compare(to / gridSize, from / gridSize);
+        int dy = Integer.compare(to % gridSize, from % gridSize);
+        return neighbourCell(from, dx, dy);
     }
 
     public int availableCount() {
-        return unoccupiedPositions.size();
+        return gridSize * gridSize - grid.occupiedCount();
     }
 
+    // Free cells are drawn at random when asked for, so there is no queue left to reshuffle
     public void reshuffleAvailablePositions() {
-        List<Point> temp = new ArrayList<>(unoccupiedPositions);
-        Collections.shuffle(temp, Constants.RANDOM);
-        unoccupiedPositions.clear();
-        unoccupiedPositions.addAll(temp);
     }
 
-    private Point wrap(Point p) {
-        int x = (p.x % gridSize + gridSize) % gridSize;
-        int y = (p.y % gridSize + gridSize) % gridSize;
-        return new Point(x, y);
+    // Chunks of cell storage currently allocated; see ChunkedCells
+    public int getAllocatedChunkCount() {
+        return grid.allocatedChunkCount();
+    }
+
+    // Frees the cell and spatial index storage of chunks nobody occupies any more. Only call between ticks.
+    public void releaseEmptyChunks() {
+        int released = grid.releaseEmptyChunks();
+        if (released > 0) {
+            log.debug("Released {} empty grid chunks", released);
+        }
+        int blocks = agentIndex.releaseEmptyBlocks() + foodIndex.releaseEmptyBlocks() + needyIndex.releaseEmptyBlocks();
+        if (blocks > 0) {
+            log.debug("Released {} empty spatial index blocks", blocks);
+        }
+    }
+
+    // The parameters of the run this grid belongs to; strategies read theirs from here
+    public SimulationConfig getConfig() {
+        return config;
+    }
+
+    public int getGridSize() {
+        return gridSize;
+    }
+
+    // Packed index of the cell at (x, y), wrapping both coordinates
+    public int cellOf(int x, int y) {
+        return wrapCoordinate(x) * gridSize + wrapCoordinate(y);
+    }
+
+    public int cellX(int cell) {
+        return cell / gridSize;
+    }
+
+    public int cellY(int cell) {
+        return cell % gridSize;
+    }
+
+    public Point pointOf(int cell) {
+        return grid.pointOf(cell);
+    }
+
+    // ShardWorker support: the fallback of getNextAvailableCell, limited to the strip a worker owns
+
+    int chunkCount() {
+        return grid.chunkCount();
+    }
+
+    int firstFreeCell(int firstChunk, IntPredicate eligible) {
+        return grid.firstFreeCell(firstChunk, eligible);
+    }
+
+    // Checkpoint support: the order-sensitive internals, handed out as they are. Only use between ticks.
+
+    GridBackend backend() {
+        return grid.isLocking() ? GridBackend.LOCKING : GridBackend.ATOMIC;
+    }
+
+    // Number of getNextAvailableCell calls so far, which is all the state its random draws have
+    long freeCellSearches() {
+        return freeCellSearches.get();
+    }
+
+    void restoreFreeCellSearches(long searches) {
+        freeCellSearches.set(searches);
+    }
+
+    FoodExpiryWheel foodExpiry() {
+        return foodExpiry;
+    }
+
+    // Places food that was spawned on an earlier tick; the wheel must already be reset to the current tick
+    void placeRestoredFood(Food food, int cell, int spawnTick) {
+        grid.set(cell, food);
+        trackPosition(food, cell);
+        foodIndex.add(cell);
+        food.setSpawnTick(spawnTick);
+        foodExpiry.schedule(food);
+        foodDistances.addSource(cell);
+    }
+
+    // Keeps needyIndex in step with energy. An agent's energy never changes concurrently with its own move:
+    // the tiled engine keeps every agent that could touch it in one tile, and synchronous commits are serial.
+    private void lowEnergyChanged(Agent agent, boolean low) {
+        int cell = agent.getCell();
+        if (cell < 0) return;
+        if (low) needyIndex.add(cell);
+        else needyIndex.remove(cell);
+    }
+
+    // Agents carry their own cell (in their AgentStore slot when they have one); other entities use the map
+    private void trackPosition(GridEntity entity, int cell) {
+        if (entity instanceof Agent agent) {
+            agent.setCell(cell);
+        } else {
+            entityPositions.put(entity, pointOf(cell));
+        }
+    }
+
+    private void untrackPosition(GridEntity entity) {
+        if (entity instanceof Agent agent) {
+            agent.setCell(-1);
+        } else {
+            entityPositions.remove(entity);
+        }
+    }
+
+    private SpatialIndex indexFor(GridEntity entity) {
+        if (entity instanceof Agent) return agentIndex;
+        if (entity instanceof Food) return foodIndex;
+        return null;
+    }
+
+    private SpatialIndex indexFor(Class<? extends GridEntity> type) {
+        if (type == Agent.class) return agentIndex;
+        if (type == Food.class) return foodIndex;
+        return null;
+    }
+
+    private int wrapCoordinate(int v) {
+        int shifted = v + gridSize;
+        if (shifted >= 0 && shifted < wrapTable.length) {
+            return wrapTable[shifted];
+        }
+        return Math.floorMod(v, gridSize);
     }
 }
@@ -0,0 +1,207 @@
+package com.jacandre.core;
+
+import com.jacandre.models.Agent;
+import com.jacandre.models.AgentStore;
+import com.jacandre.models.Food;
+import com.jacandre.strategy.Intent;
+import com.jacandre.strategy.IntentBuffer;
+import lombok.extern.slf4j.Slf4j;
+import net.jcip.annotations.NotThreadSafe;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Commit phase of a SYNCHRONOUS tick.
+ * Applies every agent's intent in one serial pass. All intents were decided against the same frozen grid,
+ * so a move or birth can only target a cell that was empty at the start of the tick, and a consume can only
+ * target food that was there. Conflicts are settled cell by cell: among the agents claiming the same cell the
+ * one with the most energy at the start of the tick wins, and equal energy goes to the lower agent key. The
+ * outcome therefore depends only on the intents, never on slot order or the threads they were decided on,
+ * which is also what lets ShardWorker settle claims on its own strip.
+ *
+ * Commit order: assists (energy transfers), then food (winner eats and steps in), then moves, then births.
+ */
+@Slf4j
+@NotThreadSafe
+class IntentResolver {
+    private final SimulationConfig config;
+    private double[] frozenEnergy = new double[0];
+    private int[] assistBalance = new int[0];
+    private long[] claims = new long[0];
+    private int claimCount;
+
+    IntentResolver(SimulationConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Applies the intents of slots [0, agentCount) and returns the newborns, already placed on the grid,
+     * for the caller to register.
+     */
+    List<Agent> commit(AgentStore store, int agentCount, IntentBuffer intents, GridManager grid, int tick) {
+        if (frozenEnergy.length < agentCount) {
+            frozenEnergy = new double[Math.max(agentCount, frozenEnergy.length * 2)];
+            assistBalance = new int[frozenEnergy.length];
+            claims = new long[2 * frozenEnergy.length];
+        }
+        for (int slot = 0; slot < agentCount; slot++) {
+            frozenEnergy[slot] = store.getEnergy(slot);
+        }
+
+        commitAssists(store, agentCount, intents, grid);
+        commitConsumption(store, agentCount, intents, grid);
+        commitMovesAndBirths(store, agentCount, intents, grid);
+        return commitBirths(store, intents, grid, tick);
+    }
+
+    // An agent can give and receive in the same tick, so transfers are netted per agent and applied once
+    private void commitAssists(AgentStore store, int agentCount, IntentBuffer intents, GridManager grid) {
+        Arrays.fill(assistBalance, 0, agentCount, 0);
+        for (int slot = 0; slot < agentCount; slot++) {
+            if (intents.getIntent(slot) != Intent.ASSIST || frozenEnergy[slot] <= config.getAssistCost()) continue;
+
+            if (grid.getEntityAt(intents.getTarget(slot)) instanceof Agent recipient) {
+                assistBalance[slot]--;
+                if (recipient.getSlot() >= 0) {
+                    assistBalance[recipient.getSlot()]++;
+                } else {
+                    recipient.increaseEnergy(config.getAssistCost());
+                }
+                log.info("Agent {} assisted Agent {} with {} energy.",
+                        store.getAgent(slot).getId(), recipient.getId(), config.getAssistCost());
+            }
+        }
+        for (int slot = 0; slot < agentCount; slot++) {
+            if (assistBalance[slot] != 0) {
+                store.addEnergy(slot, assistBalance[slot] * config.getAssistCost());
+            }
+        }
+    }
+
+    private void commitConsumption(AgentStore store, int agentCount, IntentBuffer intents, GridManager grid) {
+        claimCount = 0;
+        for (int slot = 0; slot < agentCount; slot++) {
+            if (intents.getIntent(slot) == Intent.CONSUME) {
+                addClaim(intents.getTarget(slot), slot, false);
+            }
+        }
+        Arrays.sort(claims, 0, claimCount);
+
+        for (int start = 0; start < claimCount; ) {
+            int end = groupEnd(start);
+            int foodCell = claimCell(claims[start]);
+            int winner = claimSlot(claims[bestClaim(store, start, end)]);
+
+            if (grid.getEntityAt(foodCell) instanceof Food food) {
+                Agent agent = store.getAgent(winner);
+                grid.removeEntity(food);
+                agent.increaseEnergy(config.getFoodReward());
+                if (grid.moveEntity(agent, foodCell)) {
+                    agent.decreaseEnergy(config.getMoveCost());
+                }
+                if (log.isInfoEnabled()) {
+                    log.info("Agent {} won contested food at {} with energy {}", agent.getId(), grid.pointOf(foodCell), agent.getEnergy());
+                }
+            }
+            start = end;
+        }
+    }
+
+    // Moves are committed here; winning birth claims are left in claims[] for commitBirths
+    private void commitMovesAndBirths(AgentStore store, int agentCount, IntentBuffer intents, GridManager grid) {
+        claimCount = 0;
+        for (int slot = 0; slot < agentCount; slot++) {
+            if (intents.getIntent(slot) == Intent.MOVE) {
+                addClaim(intents.getTarget(slot), slot, false);
+            }
+            if (intents.getBirthTarget(slot) >= 0) {
+                addClaim(intents.getBirthTarget(slot), slot, true);
+            }
+        }
+        Arrays.sort(claims, 0, claimCount);
+
+        int births = 0;
+        for (int start = 0; start < claimCount; ) {
+            int end = groupEnd(start);
+            long winner = claims[bestClaim(store, start, end)];
+
+            if (isBirth(winner)) {
+                claims[births++] = winner; // births always trail the read position, so this never overwrites
+            } else {
+                Agent agent = store.getAgent(claimSlot(winner));
+                if (grid.moveEntity(agent, claimCell(winner))) {
+                    agent.decreaseEnergy(config.getMoveCost());
+                }
+            }
+            start = end;
+        }
+        claimCount = births;
+    }
+
+    private List<Agent> commitBirths(AgentStore store, IntentBuffer intents, GridManager grid, int tick) {
+        List<Agent> newborns = new ArrayList<>();
+        for (int i = 0; i < claimCount; i++) {
+            int slot = claimSlot(claims[i]);
+            int childCell = claimCell(claims[i]);
+            Agent parent = store.getAgent(slot);
+            Agent child = new Agent(parent.getStrategy(), config);
+
+            if (grid.placeEntity(child, childCell)) {
+                double splitEnergy = parent.getEnergy() / 2.0;
+                parent.setEnergy(splitEnergy);
+                child.setEnergy(splitEnergy);
+                parent.setLastReproducedTick(tick);
+                newborns.add(child);
+
+                if (log.isInfoEnabled()) {
+                    log.info("Agent {} reproduced at tick {}. Child agent {} created at {} with {} energy.",
+                            parent.getId(), tick, child.getId(), grid.pointOf(childCell), splitEnergy);
+                }
+            }
+        }
+        return newborns;
+    }
+
+    // Claims sort by cell, then slot; the lowest bit marks a birth
+    private void addClaim(int cell, int slot, boolean birth) {
+        claims[claimCount++] = ((long) cell << 32) | ((long) slot << 1) | (birth ? 1 : 0);
+    }
+
+    private int groupEnd(int start) {
+        int cell = claimCell(claims[start]);
+        int end = start + 1;
+        while (end < claimCount && claimCell(claims[end]) == cell) end++;
+        return end;
+    }
+
+    private int bestClaim(AgentStore store, int start, int end) {
+        int best = start;
+        for (int i = start + 1; i < end; i++) {
+            int slot = claimSlot(claims[i]);
+            int bestSlot = claimSlot(claims[best]);
+            if (beats(frozenEnergy[slot], store.getAgent(slot).getKey(), frozenEnergy[bestSlot], store.getAgent(bestSlot).getKey())) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    // Whether a claim with this frozen energy and agent key wins a cell from the other
+    static boolean beats(double energy, long key, double otherEnergy, long otherKey) {
+        return energy > otherEnergy || (energy == otherEnergy && key < otherKey);
+    }
+
+    private static int claimCell(long claim) {
+        return (int) (claim >>> 32);
+    }
+
+    private static int claimSlot(long claim) {
+        return (int) (claim & 0xFFFFFFFFL) >>> 1;
+    }
+
+    private static boolean isBirth(long claim) {
+        return (claim & 1) != 0;
+    }
+}
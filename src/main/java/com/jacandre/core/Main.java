@@ -1,32 +1,129 @@
 package com.jacandre.core;
 
+import com.jacandre.export.SnapshotBinaryWriter;
 import com.jacandre.export.SnapshotCSVExporter;
+import com.jacandre.export.StreamingExporter;
 import com.jacandre.export.MetricsCSVExporter;
+import com.jacandre.termination.FixationDetector;
+import com.jacandre.termination.PopulationStabilityDetector;
+import com.jacandre.termination.RatioStabilityDetector;
+import com.jacandre.termination.TerminationDetector;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
 public class Main {
-    public static void main(String[] args) {
-        int maxTicks = 1000;
-        int numAgents = Constants.NUM_AGENTS;
+    public static void main(String[] args) throws IOException {
+        int maxTicks = Constants.MAX_TICKS;
+        SimulationConfig.SimulationConfigBuilder config = SimulationConfig.builder();
+        int threads = 1;
+        boolean synchronous = false;
+        boolean stream = false;
+        boolean binarySnapshots = false;
+        String csvSuffix = ".csv";
+        String checkpointFile = null;
+        String resumeFile = null;
+        List<TerminationDetector> detectors = new ArrayList<>();
+        GridBackend backend = GridBackend.LOCKING;
 
         for (int i = 0; i < args.length; i++) {
             switch (args[i]) {
                 case "--ticks":
                     maxTicks = Integer.parseInt(args[++i]);
                     break;
+                case "--grid":
+                    config.gridSize(Integer.parseInt(args[++i]));
+                    break;
                 case "--agents":
-                    numAgents = Integer.parseInt(args[++i]);
+                    config.numAgents(Integer.parseInt(args[++i]));
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--sync":
+                    synchronous = true;
+                    break;
+                case "--stream":
+                    stream = true;
+                    break;
+                case "--gzip":
+                    csvSuffix = ".csv.gz";
+                    break;
+                case "--format":
+                    binarySnapshots = switch (args[++i]) {
+                        case "csv" -> false;
+                        case "bin" -> true;
+                        default -> throw new IllegalArgumentException("Unknown snapshot format: " + args[i]);
+                    };
+                    break;
+                case "--seed":
+                    config.seed(Long.parseLong(args[++i]));
+                    break;
+                case "--atomic-grid":
+                    backend = GridBackend.ATOMIC;
+                    break;
+                case "--imitation":
+                    config.imitationInterval(Integer.parseInt(args[++i]));
+                    break;
+                case "--beta":
+                    config.beta(Double.parseDouble(args[++i]));
+                    break;
+                case "--stop-on-fixation":
+                    detectors.add(new FixationDetector());
+                    break;
+                case "--stop-ratio": {
+                    String[] setting = args[++i].split(",");
+                    detectors.add(new RatioStabilityDetector(Integer.parseInt(setting[0]), Double.parseDouble(setting[1])));
+                    break;
+                }
+                case "--stop-population": {
+                    String[] setting = args[++i].split(",");
+                    detectors.add(new PopulationStabilityDetector(Integer.parseInt(setting[0]), Double.parseDouble(setting[1])));
+                    break;
+                }
+                case "--checkpoint":
+                    checkpointFile = args[++i];
+                    break;
+                case "--resume":
+                    resumeFile = args[++i];
                     break;
                 default:
                     System.out.println("Unknown argument: " + args[i]);
             }
         }
 
-        Constants.NUM_AGENTS = numAgents; // override default
         long startTime = System.nanoTime();
 
-        Simulation simulation = new Simulation();
+        // --ticks is the tick limit of a fresh run. A resumed run takes its grid, backend and seed from the
+        // checkpoint and runs --ticks more ticks past the checkpointed one.
+        Simulation simulation = resumeFile != null
+                ? Checkpoint.resume(Path.of(resumeFile), maxTicks)
+                : new Simulation(config.maxTicks(maxTicks).build(), backend);
+        if (synchronous) {
+            simulation.setUpdateMode(UpdateMode.SYNCHRONOUS);
+            simulation.setThreads(threads);
+        } else if (threads > 1) {
+            simulation.setUpdateMode(UpdateMode.TILED_PARALLEL);
+            simulation.setThreads(threads);
+        }
+
+        // Snapshots go to one file, CSV unless --format bin asks for the binary format
+        String snapshotFile = binarySnapshots ? "simulation_grid_snapshots.bin" : "simulation_grid_snapshots" + csvSuffix;
+
+        // Streaming writes each tick as it completes instead of keeping the whole run in memory
+        StreamingExporter exporter = null;
+        if (stream) {
+            exporter = new StreamingExporter(snapshotFile, "simulation_metrics" + csvSuffix,
+                    simulation.getGridManager().getGridSize(), maxTicks);
+            simulation.addListener(exporter);
+            simulation.setKeepHistory(false);
+        }
+
+        detectors.forEach(simulation::addTerminationDetector);
 
-        for (int i = 0; i < maxTicks; i++) {
+        for (int i = 0; i < maxTicks && !simulation.isTerminated(); i++) {
             simulation.stepSimulation();
             if (simulation.getLivingAgents().isEmpty()) {
                 System.out.println("All agents died at tick " + simulation.getTick());
@@ -38,10 +135,28 @@ public class Main {
         long durationMs = (endTime - startTime) / 1_000_000;
 
         System.out.println("Simulation ended at tick " + simulation.getTick());
+        if (simulation.isTerminated()) {
+            System.out.println("Stopped because of " + simulation.getTermination().reason());
+        }
+        System.out.println("Seed: " + simulation.getRandomStreams().getSeed());
         System.out.println("Final agent count: " + simulation.getLivingAgents().size());
         System.out.println("Total execution time: " + durationMs + " ms");
 
-        MetricsCSVExporter.exportMetricsToCSV("simulation_metrics.csv", simulation.getMetricsHistory());
-        SnapshotCSVExporter.exportGridSnapshots("simulation_grid_snapshots.csv", simulation.getTimeline().getSnapshots());
+        if (checkpointFile != null) {
+            Checkpoint.save(simulation, Path.of(checkpointFile));
+        }
+
+        if (exporter != null) {
+            exporter.close();
+            return;
+        }
+
+        MetricsCSVExporter.exportMetricsToCSV("simulation_metrics" + csvSuffix, simulation.getMetricsHistory());
+        if (binarySnapshots) {
+            SnapshotBinaryWriter.exportGridSnapshots(snapshotFile, simulation.getGridManager().getGridSize(),
+                    simulation.getTimeline().getTickCount(), simulation.getTimeline());
+        } else {
+            SnapshotCSVExporter.exportGridSnapshots(snapshotFile, simulation.getTimeline());
+        }
     }
 }
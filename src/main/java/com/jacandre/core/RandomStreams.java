@@ -0,0 +1,76 @@
+package com.jacandre.core;
+
+import lombok.Getter;
+import net.jcip.annotations.Immutable;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Counter-based random streams for one run.
+ * A stream is a pure function of (seed, tick, key): its starting state is a hash of the three, and each draw
+ * hashes the next value of a counter (SplitMix64). Nothing is shared between streams, so an agent draws the
+ * same numbers whichever thread runs it and in whatever order, and a run replays exactly from its seed.
+ */
+@Immutable
+public final class RandomStreams {
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    private static final long TICK_KEY = -1L;   // the tick's own stream, e.g. food spawning
+    private static final int SETUP_TICK = -1;   // draws made before the first tick
+    private static final int FREE_CELL_TICK = -2; // GridManager's free-cell searches, keyed by search number
+    private static final long IMITATION_SALT = 0x5DEECE66DL;
+
+    @Getter
+    private final long seed;
+
+    public RandomStreams(long seed) {
+        this.seed = seed;
+    }
+
+    // Stream for draws that belong to the tick rather than to an agent
+    public RandomGenerator forTick(int tick) {
+        return new CounterRandom(streamState(tick, TICK_KEY));
+    }
+
+    public RandomGenerator forAgent(int tick, long agentKey) {
+        return new CounterRandom(streamState(tick, agentKey));
+    }
+
+    // The agent's second stream of the tick, for the imitation pass, independent of the one it acted with
+    public RandomGenerator forImitation(int tick, long agentKey) {
+        return new CounterRandom(mix64(streamState(tick, agentKey) ^ IMITATION_SALT));
+    }
+
+    // Stream for building the initial population
+    public RandomGenerator forSetup() {
+        return new CounterRandom(streamState(SETUP_TICK, TICK_KEY));
+    }
+
+    // Stream for one of the grid's free-cell searches, whichever tick it happens on
+    public RandomGenerator forFreeCellSearch(long search) {
+        return new CounterRandom(streamState(FREE_CELL_TICK, search));
+    }
+
+    private long streamState(int tick, long key) {
+        return mix64(mix64(mix64(seed) + tick) + key);
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // Not thread-safe: each stream belongs to the one agent or tick it was made for
+    private static final class CounterRandom implements RandomGenerator {
+        private long state;
+
+        private CounterRandom(long state) {
+            this.state = state;
+        }
+
+        @Override
+        public long nextLong() {
+            return mix64(state += GOLDEN_GAMMA);
+        }
+    }
+}
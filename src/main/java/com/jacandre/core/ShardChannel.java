@@ -0,0 +1,140 @@
+package com.jacandre.core;
+
+import lombok.extern.slf4j.Slf4j;
+import net.jcip.annotations.ThreadSafe;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * One end of a loopback connection in a sharded run, between the coordinator and a worker or between two
+ * neighbouring workers. Messages are length-prefixed frames that start with their type. A reader thread drains
+ * the socket into an inbox, so both ends can send everything for a phase before reading anything back without
+ * either side blocking on a full socket buffer.
+ */
+@Slf4j
+@ThreadSafe
+final class ShardChannel implements Closeable {
+    // Worker to coordinator
+    static final int HELLO = 1;
+    static final int READY = 2;
+    static final int BIRTHS = 3;
+    static final int REPORT = 4;
+    static final int FREE_CELL = 5;
+    static final int STATE = 6;
+
+    // Coordinator to worker
+    static final int INIT = 10;
+    static final int TICK = 11;
+    static final int KEYS = 12;
+    static final int FALLBACK = 13;
+    static final int FINISH = 14;
+
+    // Worker to worker
+    static final int PEER = 20;
+    static final int HALO = 21;
+    static final int CLAIMS = 22;
+    static final int OUTCOMES = 23;
+    static final int MIGRANTS = 24;
+
+    private static final byte[] CLOSED = new byte[0];
+
+    private final String name;
+    private final Socket socket;
+    private final DataOutputStream out;
+    private final BlockingQueue<byte[]> inbox = new LinkedBlockingQueue<>();
+
+    @FunctionalInterface
+    interface Body {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    ShardChannel(Socket socket, String name) throws IOException {
+        this.name = name;
+        this.socket = socket;
+        socket.setTcpNoDelay(true);
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        Thread reader = new Thread(() -> read(in), name + "-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    synchronized void send(int type, Body body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream frame = new DataOutputStream(bytes);
+        frame.writeInt(type);
+        body.write(frame);
+        frame.flush();
+
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+        out.flush();
+    }
+
+    void send(int type) throws IOException {
+        send(type, frame -> {
+        });
+    }
+
+    // Next message, positioned after its type
+    Message receive() throws IOException {
+        byte[] frame;
+        try {
+            frame = inbox.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + name);
+        }
+        if (frame == CLOSED) {
+            inbox.add(CLOSED); // later receives fail the same way
+            throw new EOFException(name + " closed the connection");
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame));
+        return new Message(in.readInt(), in);
+    }
+
+    DataInputStream receive(int type) throws IOException {
+        Message message = receive();
+        if (message.type() != type) {
+            throw new IOException("Expected message " + type + " from " + name + " but got " + message.type());
+        }
+        return message.in();
+    }
+
+    record Message(int type, DataInputStream in) {
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    private void read(DataInputStream in) {
+        try {
+            while (true) {
+                byte[] frame = new byte[in.readInt()];
+                in.readFully(frame);
+                inbox.add(frame);
+            }
+        } catch (IOException e) {
+            if (!socket.isClosed() && !(e instanceof EOFException)) {
+                log.warn("Connection to {} failed: {}", name, e.getMessage());
+            }
+        } finally {
+            inbox.add(CLOSED);
+        }
+    }
+}
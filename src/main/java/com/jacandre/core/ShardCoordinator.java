@@ -0,0 +1,430 @@
+package com.jacandre.core;
+
+import com.jacandre.export.MetricsCSVExporter;
+import com.jacandre.models.Agent;
+import com.jacandre.models.AgentStore;
+import com.jacandre.models.Food;
+import com.jacandre.strategy.AgentStrategy;
+import com.jacandre.strategy.ForagerStrategy;
+import com.jacandre.termination.Termination;
+import com.jacandre.termination.TerminationDetector;
+import com.jacandre.timeline.EnergyDistribution;
+import com.jacandre.timeline.SimulationMetrics;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import net.jcip.annotations.NotThreadSafe;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.random.RandomGenerator;
+
+import static com.jacandre.core.ShardChannel.*;
+
+/**
+ * Runs one simulation split across ShardWorkers on this machine, each owning a strip of rows (see StripLayout)
+ * and talking to its neighbours and to the coordinator over loopback sockets. The coordinator builds the starting
+ * population exactly as Simulation does, hands every worker its strip and lets the whole world go again, keeping
+ * only the random streams and strategies. After that it numbers the newborns, decides where food spawns and merges
+ * the workers' reports into one SimulationMetrics per tick.
+ *
+ * For the same config a sharded run ends with the same agents, energies, births and deaths as a single Simulation
+ * in UpdateMode.SYNCHRONOUS, whatever the number of shards. The average energy is summed in another order and
+ * may differ in the last bits. Listeners get the metrics but never a snapshot.
+ *
+ * Usage: ShardCoordinator --shards 4 --grid 400 --vision 10 --agents 20000 --ticks 500 --seed 7 --out sharded_metrics.csv
+ *        add --threads n for each worker's decide threads, --in-process to run the workers as threads of this JVM
+ */
+@Slf4j
+@NotThreadSafe
+public class ShardCoordinator implements Closeable {
+    private static final int CONNECT_TIMEOUT_MS = 60_000;
+
+    public enum Launch {
+        PROCESSES,
+        THREADS
+    }
+
+    // Agents are detached copies sorted by key, with their cells set; food cells are sorted
+    public record FinalState(List<Agent> agents, int[] foodCells) {
+    }
+
+    @Getter
+    private final SimulationConfig config;
+    private final StripLayout layout;
+    private final ChunkGeometry geometry;
+    private final RandomStreams randomStreams; // the starting population's, for the food spawn draws
+    private final RandomStreams freeCellStreams;
+    private final AgentStrategy helper; // the strategies agents are read back with
+    private final AgentStrategy selfish;
+    private final AgentStrategy forager = new ForagerStrategy();
+    private final List<ShardChannel> workers = new ArrayList<>();
+    private final List<Process> processes = new ArrayList<>();
+
+    @Getter
+    private final List<SimulationMetrics> metricsHistory = new ArrayList<>();
+    private final List<SimulationListener> listeners = new ArrayList<>();
+    private final List<TerminationDetector> terminationDetectors = new ArrayList<>();
+    @Setter
+    private boolean keepHistory = true;
+    @Getter
+    private Termination termination; // null while the run is still going
+
+    @Getter
+    private int tick;
+    @Getter
+    private int agentCount;
+    private long nextAgentKey;
+    private long freeCellSearches;
+    private int pendingFood = -1; // chosen at the end of a tick, placed by its owner when the next one starts
+    private boolean finished;
+
+    public ShardCoordinator(SimulationConfig config, int shards, Launch launch, int workerThreads) throws IOException {
+        this.config = config;
+        this.layout = new StripLayout(config.getGridSize(), shards, config.getVisionRadius() + 1);
+        this.geometry = new ChunkGeometry(config.getGridSize());
+        Simulation setup = new Simulation(config, GridBackend.LOCKING);
+        this.randomStreams = setup.getRandomStreams();
+        this.freeCellStreams = new RandomStreams(config.getSeed());
+        this.helper = setup.getHelperStrategy();
+        this.selfish = setup.getSelfishStrategy();
+        this.tick = setup.getTick();
+        this.agentCount = setup.getAgentStore().size();
+        this.nextAgentKey = setup.nextAgentKey();
+        this.freeCellSearches = setup.getGridManager().freeCellSearches();
+
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout(CONNECT_TIMEOUT_MS);
+            for (int shard = 0; shard < shards; shard++) {
+                launch(launch, server.getLocalPort(), shard);
+            }
+
+            int[] peerPorts = new int[shards];
+            for (int shard = 0; shard < shards; shard++) {
+                ShardChannel worker = new ShardChannel(server.accept(), "shard " + shard);
+                workers.add(worker);
+                peerPorts[shard] = worker.receive(HELLO).readInt();
+            }
+            for (int shard = 0; shard < shards; shard++) {
+                sendInit(setup, shard, peerPorts, Math.max(1, workerThreads));
+            }
+            for (ShardChannel worker : workers) {
+                worker.receive(READY);
+            }
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+        log.info("Sharded run of {} agents on a {}x{} grid across {} {}", agentCount, config.getGridSize(),
+                config.getGridSize(), shards, launch == Launch.PROCESSES ? "processes" : "threads");
+    }
+
+    private void launch(Launch launch, int port, int shard) throws IOException {
+        String host = InetAddress.getLoopbackAddress().getHostAddress();
+        if (launch == Launch.PROCESSES) {
+            String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+            processes.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    ShardWorker.class.getName(), host, Integer.toString(port)).inheritIO().start());
+        } else {
+            Thread thread = new Thread(() -> {
+                try {
+                    new ShardWorker(new ShardChannel(new Socket(host, port), "coordinator")).run();
+                } catch (IOException e) {
+                    log.error("Shard worker failed", e);
+                }
+            }, "shard-worker-" + shard);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private void sendInit(Simulation setup, int shard, int[] peerPorts, int workerThreads) throws IOException {
+        AgentStore store = setup.getAgentStore();
+        GridManager grid = setup.getGridManager();
+        List<Integer> foodCells = new ArrayList<>();
+        grid.forEachFoodCell(cell -> {
+            if (layout.owns(shard, cell)) foodCells.add(cell);
+        });
+        ByteBuffer configBytes = ByteBuffer.allocate(Checkpoint.CONFIG_BYTES);
+        Checkpoint.putConfig(configBytes, config);
+
+        workers.get(shard).send(INIT, out -> {
+            out.writeInt(shard);
+            out.writeInt(peerPorts.length);
+            for (int port : peerPorts) {
+                out.writeInt(port);
+            }
+            out.write(configBytes.array());
+            out.writeLong(setup.getRandomStreams().getSeed());
+            out.writeByte(grid.backend().ordinal());
+            out.writeInt(workerThreads);
+
+            List<Integer> slots = new ArrayList<>();
+            for (int slot = 0; slot < store.size(); slot++) {
+                if (store.getCell(slot) >= 0 && layout.owns(shard, store.getCell(slot))) slots.add(slot);
+            }
+            out.writeInt(slots.size());
+            for (int slot : slots) {
+                ShardWorker.writeAgent(out, store.getAgent(slot), store.getCell(slot));
+            }
+            out.writeInt(foodCells.size());
+            for (int cell : foodCells) {
+                out.writeInt(cell);
+                out.writeInt(((Food) grid.getEntityAt(cell)).getSpawnTick());
+            }
+        });
+    }
+
+    public void addListener(SimulationListener listener) {
+        listeners.add(listener);
+    }
+
+    public void addTerminationDetector(TerminationDetector detector) {
+        terminationDetectors.add(detector);
+    }
+
+    public boolean isTerminated() {
+        return termination != null;
+    }
+
+    public void stepSimulation() throws IOException {
+        if (finished) {
+            throw new IllegalStateException("The sharded run has already finished");
+        }
+        if (termination == null && tick >= config.getMaxTicks()) {
+            termination = new Termination(tick, "tick limit");
+        }
+        if (termination != null) {
+            log.info("Simulation terminated at tick {}: {}", termination.tick(), termination.reason());
+            return;
+        }
+
+        int food = pendingFood;
+        for (ShardChannel worker : workers) {
+            worker.send(TICK, out -> out.writeInt(food));
+        }
+        int startedAt = tick;
+        tick++;
+
+        // Newborns are numbered in cell order, so each strip's come after those of the strips before it
+        long search = freeCellSearches;
+        for (ShardChannel worker : workers) {
+            int births = worker.receive(BIRTHS).readInt();
+            long firstKey = nextAgentKey;
+            worker.send(KEYS, out -> {
+                out.writeLong(firstKey);
+                out.writeLong(search);
+            });
+            nextAgentKey += births;
+        }
+
+        SimulationMetrics metrics = new SimulationMetrics();
+        EnergyDistribution helperEnergy = new EnergyDistribution();
+        EnergyDistribution selfishEnergy = new EnergyDistribution();
+        int agents = 0;
+        double energySum = 0.0;
+        int foodCount = 0;
+        int occupied = 0;
+        int freeDraws = 0;
+        for (ShardChannel worker : workers) {
+            DataInputStream in = worker.receive(REPORT);
+            agents += in.readInt();
+            metrics.setHelperCount(metrics.getHelperCount() + in.readInt());
+            metrics.setSelfishCount(metrics.getSelfishCount() + in.readInt());
+            energySum += in.readDouble();
+            helperEnergy.merge(EnergyDistribution.readFrom(in));
+            selfishEnergy.merge(EnergyDistribution.readFrom(in));
+            metrics.setTotalDeaths(metrics.getTotalDeaths() + in.readInt());
+            metrics.setHelperBirths(metrics.getHelperBirths() + in.readInt());
+            metrics.setSelfishBirths(metrics.getSelfishBirths() + in.readInt());
+            foodCount += in.readInt();
+            occupied += in.readInt();
+            freeDraws |= in.readInt();
+        }
+        agentCount = agents;
+        metrics.setTick(tick);
+        metrics.setAvgEnergy(agents == 0 ? 0.0 : energySum / agents);
+        metrics.setHelperEnergy(helperEnergy);
+        metrics.setSelfishEnergy(selfishEnergy);
+
+        pendingFood = nextFoodCell(startedAt, foodCount, occupied, freeDraws);
+
+        log.info("Tick {} complete. {} agents remain.", tick, agents);
+        metrics.logMetrics();
+        if (keepHistory) {
+            metricsHistory.add(metrics);
+        }
+        for (SimulationListener listener : listeners) {
+            listener.onTick(null, metrics);
+        }
+
+        for (TerminationDetector detector : terminationDetectors) {
+            String reason = detector.onTick(metrics);
+            if (reason != null) {
+                termination = new Termination(tick, reason);
+                break;
+            }
+        }
+        if (termination == null && tick >= config.getMaxTicks()) {
+            termination = new Termination(tick, "tick limit");
+        }
+        if (termination != null) {
+            log.info("Simulation terminated at tick {}: {}", tick, termination.reason());
+        }
+    }
+
+    /**
+     * The cell Simulation.maybeGenerateNewFood would pick, or -1 for none. The free-cell search replays
+     * GridManager.getNextAvailableCell: the workers have already said which of its random draws hit an empty cell
+     * of theirs, and only when none did are they asked for the first free cell of the fallback scan.
+     */
+    private int nextFoodCell(int startedAt, int foodCount, int occupied, int freeDraws) throws IOException {
+        if (foodCount >= config.getMaxFoodSources()) return -1;
+        if (randomStreams.forTick(startedAt).nextDouble() >= config.getFoodSpawnProbability()) return -1;
+
+        int cells = config.getGridSize() * config.getGridSize();
+        if (occupied >= cells) return -1;
+
+        RandomGenerator random = freeCellStreams.forFreeCellSearch(freeCellSearches++);
+        for (int draw = 0; draw < GridManager.FREE_CELL_DRAWS; draw++) {
+            int cell = random.nextInt(cells);
+            if ((freeDraws & 1 << draw) != 0) return cell;
+        }
+
+        int firstChunk = random.nextInt(geometry.chunkCount());
+        for (ShardChannel worker : workers) {
+            worker.send(FALLBACK, out -> out.writeInt(firstChunk));
+        }
+        int best = -1;
+        long bestPosition = Long.MAX_VALUE;
+        for (ShardChannel worker : workers) {
+            int cell = worker.receive(FREE_CELL).readInt();
+            if (cell < 0) continue;
+            long position = (long) Math.floorMod(geometry.chunkOf(cell) - firstChunk, geometry.chunkCount())
+                    * ChunkGeometry.CELLS + geometry.offsetOf(cell);
+            if (position < bestPosition) {
+                bestPosition = position;
+                best = cell;
+            }
+        }
+        return best;
+    }
+
+    // Places any food chosen on the last tick, collects every worker's agents and food and lets the workers exit
+    public FinalState finish() throws IOException {
+        if (finished) {
+            throw new IllegalStateException("The sharded run has already finished");
+        }
+        finished = true;
+        int food = pendingFood;
+        for (ShardChannel worker : workers) {
+            worker.send(FINISH, out -> out.writeInt(food));
+        }
+
+        List<Agent> agents = new ArrayList<>();
+        List<Integer> foodCells = new ArrayList<>();
+        for (ShardChannel worker : workers) {
+            DataInputStream in = worker.receive(STATE);
+            for (int count = in.readInt(); count > 0; count--) {
+                Agent agent = ShardWorker.readAgent(in, config, helper, selfish, forager);
+                agent.setCell(in.readInt());
+                agents.add(agent);
+            }
+            for (int count = in.readInt(); count > 0; count--) {
+                foodCells.add(in.readInt());
+                in.readInt(); // spawn tick
+            }
+        }
+        agents.sort(Comparator.comparingLong(Agent::getKey));
+        int[] cells = foodCells.stream().mapToInt(Integer::intValue).toArray();
+        Arrays.sort(cells);
+        return new FinalState(agents, cells);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (ShardChannel worker : workers) {
+            worker.close();
+        }
+        for (Process process : processes) {
+            try {
+                if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        SimulationConfig.SimulationConfigBuilder config = SimulationConfig.builder();
+        int shards = 2;
+        int workerThreads = 1;
+        Launch launch = Launch.PROCESSES;
+        String output = "sharded_metrics.csv";
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--shards":
+                    shards = Integer.parseInt(args[++i]);
+                    break;
+                case "--threads":
+                    workerThreads = Integer.parseInt(args[++i]);
+                    break;
+                case "--in-process":
+                    launch = Launch.THREADS;
+                    break;
+                case "--grid":
+                    config.gridSize(Integer.parseInt(args[++i]));
+                    break;
+                case "--agents":
+                    config.numAgents(Integer.parseInt(args[++i]));
+                    break;
+                case "--ticks":
+                    config.maxTicks(Integer.parseInt(args[++i]));
+                    break;
+                case "--vision":
+                    config.visionRadius(Integer.parseInt(args[++i]));
+                    break;
+                case "--seed":
+                    config.seed(Long.parseLong(args[++i]));
+                    break;
+                case "--imitation":
+                    config.imitationInterval(Integer.parseInt(args[++i]));
+                    break;
+                case "--beta":
+                    config.beta(Double.parseDouble(args[++i]));
+                    break;
+                case "--out":
+                    output = args[++i];
+                    break;
+                default:
+                    System.out.println("Unknown argument: " + args[i]);
+            }
+        }
+
+        long startTime = System.nanoTime();
+        try (ShardCoordinator coordinator = new ShardCoordinator(config.build(), shards, launch, workerThreads)) {
+            while (!coordinator.isTerminated() && coordinator.getAgentCount() > 0) {
+                coordinator.stepSimulation();
+            }
+            FinalState state = coordinator.finish();
+            MetricsCSVExporter.exportMetricsToCSV(output, coordinator.getMetricsHistory());
+            System.out.println("Sharded run of " + coordinator.getTick() + " ticks on " + shards + " shards ended with "
+                    + state.agents().size() + " agents in " + (System.nanoTime() - startTime) / 1_000_000 + " ms");
+        }
+    }
+}
@@ -0,0 +1,575 @@
+package com.jacandre.core;
+
+import com.jacandre.models.Agent;
+import com.jacandre.models.AgentStore;
+import com.jacandre.models.Food;
+import com.jacandre.models.GridEntity;
+import com.jacandre.strategy.AgentStrategy;
+import com.jacandre.strategy.ForagerStrategy;
+import com.jacandre.strategy.IntentBuffer;
+import com.jacandre.timeline.EnergyDistribution;
+import lombok.extern.slf4j.Slf4j;
+import net.jcip.annotations.NotThreadSafe;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+import static com.jacandre.core.ShardChannel.*;
+
+/**
+ * One strip of a sharded run (see ShardCoordinator), normally in a JVM of its own. A worker keeps a full-size
+ * GridManager, whose chunked storage costs nothing for the rows it does not own, and a Simulation over the agents
+ * on its strip, and runs the phases of a SYNCHRONOUS tick with exchanges between them:
+ *
+ *   halo      agents and food within VISION_RADIUS + 1 rows of a neighbour's strip, placed there as copies that
+ *             only exist for the decide phase
+ *   claims    moves, births, food and assists aimed at a neighbour's cells, settled by that cell's owner exactly
+ *             as IntentResolver settles them
+ *   outcomes  which claims won
+ *   migrants  agents that moved onto a neighbour's strip and children born on it
+ *
+ * The coordinator numbers the newborns, merges the reports into SimulationMetrics and decides where food spawns.
+ *
+ * Usage: ShardWorker <coordinator host> <coordinator port>
+ */
+@Slf4j
+@NotThreadSafe
+public final class ShardWorker {
+    private static final byte CONSUME = 0;
+    private static final byte MOVE = 1;
+    private static final byte BIRTH = 2;
+    private static final byte ASSIST = 3;
+
+    private final ShardChannel coordinator;
+    private final AgentStrategy forager = new ForagerStrategy();
+    private final List<Agent> ghosts = new ArrayList<>();
+    private final List<Food> ghostFood = new ArrayList<>();
+
+    private int id;
+    private StripLayout layout;
+    private SimulationConfig config;
+    private Simulation simulation;
+    private GridManager grid;
+    private AgentStore store;
+    private RandomStreams freeCellStreams; // the same streams GridManager.getNextAvailableCell draws from
+    private int[] neighbours;
+    private ShardChannel[] peers; // one per neighbour, in the same order
+
+    // A claim on a cell, settled by the shard that owns the cell; slot is the claimant's slot on its own shard
+    private record Claim(byte kind, int cell, long key, double energy, int slot, int from) {
+    }
+
+    // A child born on a neighbour's strip, sent there to be placed and numbered
+    private record Child(byte strategy, int cell, double energy) {
+    }
+
+    ShardWorker(ShardChannel coordinator) {
+        this.coordinator = coordinator;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: ShardWorker <coordinator host> <coordinator port>");
+            System.exit(2);
+        }
+        Socket socket = new Socket(args[0], Integer.parseInt(args[1]));
+        new ShardWorker(new ShardChannel(socket, "coordinator")).run();
+    }
+
+    void run() throws IOException {
+        try {
+            try (ServerSocket peerServer = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+                coordinator.send(HELLO, out -> out.writeInt(peerServer.getLocalPort()));
+                int[] peerPorts = init(coordinator.receive(INIT));
+                connectPeers(peerServer, peerPorts);
+            }
+            coordinator.send(READY);
+
+            while (true) {
+                ShardChannel.Message command = coordinator.receive();
+                switch (command.type()) {
+                    case TICK -> {
+                        placeFood(command.in().readInt());
+                        tick();
+                    }
+                    case FALLBACK -> {
+                        int cell = grid.firstFreeCell(command.in().readInt(), candidate -> layout.owns(id, candidate));
+                        coordinator.send(FREE_CELL, out -> out.writeInt(cell));
+                    }
+                    case FINISH -> {
+                        placeFood(command.in().readInt());
+                        sendState();
+                        return;
+                    }
+                    default -> throw new IOException("Unexpected message " + command.type() + " from the coordinator");
+                }
+            }
+        } finally {
+            if (peers != null) {
+                for (ShardChannel peer : peers) {
+                    if (peer != null) peer.close();
+                }
+            }
+            coordinator.close();
+        }
+    }
+
+    private int[] init(DataInputStream in) throws IOException {
+        id = in.readInt();
+        int[] peerPorts = new int[in.readInt()];
+        for (int shard = 0; shard < peerPorts.length; shard++) {
+            peerPorts[shard] = in.readInt();
+        }
+        byte[] configBytes = new byte[Checkpoint.CONFIG_BYTES];
+        in.readFully(configBytes);
+        config = Checkpoint.getConfig(ByteBuffer.wrap(configBytes));
+        long streamSeed = in.readLong();
+        GridBackend backend = GridBackend.values()[in.readByte()];
+        int threads = in.readInt();
+
+        layout = new StripLayout(config.getGridSize(), peerPorts.length, haloRows());
+        neighbours = layout.neighbours(id);
+        grid = new GridManager(config, backend);
+        freeCellStreams = new RandomStreams(config.getSeed());
+        simulation = new Simulation(grid, new RandomStreams(streamSeed));
+        simulation.setUpdateMode(UpdateMode.SYNCHRONOUS);
+        simulation.setThreads(threads);
+        simulation.setKeepHistory(false);
+        store = simulation.getAgentStore();
+
+        int agents = in.readInt();
+        for (int i = 0; i < agents; i++) {
+            Agent agent = readAgent(in, simulation, forager);
+            place(agent, in.readInt());
+            simulation.restoreAgent(agent);
+        }
+        int food = in.readInt();
+        for (int i = 0; i < food; i++) {
+            grid.placeRestoredFood(new Food(config), in.readInt(), in.readInt());
+        }
+
+        log.info("Shard {} of {} holds rows {} to {}: {} agents, {} food", id, peerPorts.length, layout.firstRow(id),
+                layout.firstRow(id + 1) - 1, agents, food);
+        return peerPorts;
+    }
+
+    // The lower id of each pair connects, the higher one accepts
+    private void connectPeers(ServerSocket server, int[] peerPorts) throws IOException {
+        peers = new ShardChannel[neighbours.length];
+        int accepting = 0;
+        for (int i = 0; i < neighbours.length; i++) {
+            if (neighbours[i] > id) {
+                Socket socket = new Socket(InetAddress.getLoopbackAddress(), peerPorts[neighbours[i]]);
+                peers[i] = new ShardChannel(socket, "shard " + neighbours[i]);
+                peers[i].send(PEER, out -> out.writeInt(id));
+            } else {
+                accepting++;
+            }
+        }
+        for (; accepting > 0; accepting--) {
+            ShardChannel peer = new ShardChannel(server.accept(), "peer of shard " + id);
+            peers[neighbourIndex(peer.receive(PEER).readInt())] = peer;
+        }
+    }
+
+    private void tick() throws IOException {
+        SimulationContext context = simulation.startTick();
+        int tick = simulation.getTick();
+        exchangeHalo(haloRows());
+
+        int agentCount = store.size();
+        simulation.decideAll(agentCount, context);
+        IntentBuffer intents = simulation.intents();
+
+        int[] assistBalance = new int[agentCount];
+        List<Claim> settling = new ArrayList<>();
+        List<List<Claim>> outgoing = perNeighbour();
+        for (int slot = 0; slot < agentCount; slot++) {
+            long key = store.getAgent(slot).getKey();
+            double energy = store.getEnergy(slot);
+            int target = intents.getTarget(slot);
+            byte kind = switch (intents.getIntent(slot)) {
+                case CONSUME -> CONSUME;
+                case MOVE -> MOVE;
+                case ASSIST -> energy > config.getAssistCost() && grid.getEntityAt(target) instanceof Agent ? ASSIST : -1;
+                case IDLE -> -1;
+            };
+            if (kind == ASSIST) {
+                assistBalance[slot]--;
+            }
+            if (kind >= 0) {
+                route(new Claim(kind, target, key, energy, slot, id), settling, outgoing);
+            }
+            if (intents.getBirthTarget(slot) >= 0) {
+                route(new Claim(BIRTH, intents.getBirthTarget(slot), key, energy, slot, id), settling, outgoing);
+            }
+        }
+
+        for (int i = 0; i < peers.length; i++) {
+            List<Claim> claims = outgoing.get(i);
+            peers[i].send(CLAIMS, out -> {
+                out.writeInt(claims.size());
+                for (Claim claim : claims) {
+                    out.writeByte(claim.kind());
+                    out.writeInt(claim.cell());
+                    out.writeLong(claim.key());
+                    out.writeDouble(claim.energy());
+                    out.writeInt(claim.slot());
+                }
+            });
+        }
+        for (int i = 0; i < peers.length; i++) {
+            DataInputStream in = peers[i].receive(CLAIMS);
+            for (int count = in.readInt(); count > 0; count--) {
+                settling.add(new Claim(in.readByte(), in.readInt(), in.readLong(), in.readDouble(), in.readInt(), neighbours[i]));
+            }
+        }
+
+        List<Claim> won = new ArrayList<>();
+        List<List<Claim>> wonElsewhere = perNeighbour();
+        resolve(settling, assistBalance, won, wonElsewhere);
+
+        for (int i = 0; i < peers.length; i++) {
+            List<Claim> claims = wonElsewhere.get(i);
+            peers[i].send(OUTCOMES, out -> {
+                out.writeInt(claims.size());
+                for (Claim claim : claims) {
+                    out.writeByte(claim.kind());
+                    out.writeInt(claim.cell());
+                    out.writeInt(claim.slot());
+                }
+            });
+        }
+        for (ShardChannel peer : peers) {
+            DataInputStream in = peer.receive(OUTCOMES);
+            for (int count = in.readInt(); count > 0; count--) {
+                won.add(new Claim(in.readByte(), in.readInt(), -1, 0, in.readInt(), id));
+            }
+        }
+
+        // Same order as IntentResolver.commit: assists, then food and moves, then births
+        for (int slot = 0; slot < agentCount; slot++) {
+            if (assistBalance[slot] != 0) {
+                store.addEnergy(slot, assistBalance[slot] * config.getAssistCost());
+            }
+        }
+        won.sort(Comparator.comparingInt(Claim::kind).thenComparingInt(Claim::cell));
+        int[] destination = new int[agentCount];
+        Arrays.fill(destination, -1);
+        List<Agent> newborns = new ArrayList<>();
+        List<List<Child>> childrenElsewhere = perNeighbour();
+        for (Claim claim : won) {
+            Agent agent = store.getAgent(claim.slot());
+            if (claim.kind() == CONSUME) {
+                agent.increaseEnergy(config.getFoodReward());
+            }
+            if (claim.kind() == CONSUME || claim.kind() == MOVE) {
+                if (!layout.owns(id, claim.cell())) {
+                    destination[claim.slot()] = claim.cell();
+                    agent.decreaseEnergy(config.getMoveCost());
+                } else if (grid.moveEntity(agent, claim.cell())) {
+                    agent.decreaseEnergy(config.getMoveCost());
+                }
+            } else if (claim.kind() == BIRTH) {
+                double splitEnergy = agent.getEnergy() / 2.0;
+                agent.setEnergy(splitEnergy);
+                agent.setLastReproducedTick(tick);
+                if (layout.owns(id, claim.cell())) {
+                    Agent child = new Agent(agent.getStrategy(), config);
+                    child.setEnergy(splitEnergy);
+                    place(child, claim.cell());
+                    newborns.add(child);
+                } else {
+                    childrenElsewhere.get(neighbourIndex(layout.ownerOf(claim.cell())))
+                            .add(new Child(Checkpoint.strategyCode(agent.getStrategy()), claim.cell(), splitEnergy));
+                }
+            }
+        }
+        removeGhosts();
+
+        List<List<Agent>> emigrants = perNeighbour();
+        for (int slot = 0; slot < agentCount; slot++) {
+            if (destination[slot] >= 0) {
+                emigrants.get(neighbourIndex(layout.ownerOf(destination[slot]))).add(store.getAgent(slot));
+            }
+        }
+        for (int i = 0; i < peers.length; i++) {
+            List<Agent> leaving = emigrants.get(i);
+            List<Child> children = childrenElsewhere.get(i);
+            peers[i].send(MIGRANTS, out -> {
+                out.writeInt(leaving.size());
+                for (Agent agent : leaving) {
+                    writeAgent(out, agent, destination[agent.getSlot()]);
+                }
+                out.writeInt(children.size());
+                for (Child child : children) {
+                    out.writeByte(child.strategy());
+                    out.writeInt(child.cell());
+                    out.writeDouble(child.energy());
+                }
+            });
+        }
+        for (List<Agent> leaving : emigrants) {
+            for (Agent agent : leaving) {
+                grid.removeEntity(agent);
+                store.remove(agent);
+            }
+        }
+        for (ShardChannel peer : peers) {
+            DataInputStream in = peer.receive(MIGRANTS);
+            for (int count = in.readInt(); count > 0; count--) {
+                Agent agent = readAgent(in, simulation, forager);
+                place(agent, in.readInt());
+                simulation.restoreAgent(agent);
+            }
+            for (int count = in.readInt(); count > 0; count--) {
+                Agent child = new Agent(Checkpoint.strategyFor(in.readByte(), simulation, forager), config);
+                int cell = in.readInt();
+                child.setEnergy(in.readDouble());
+                place(child, cell);
+                newborns.add(child);
+            }
+        }
+
+        // Keys follow cell order across the whole grid, as they do when IntentResolver hands back the newborns
+        coordinator.send(BIRTHS, out -> out.writeInt(newborns.size()));
+        DataInputStream keys = coordinator.receive(KEYS);
+        long firstKey = keys.readLong();
+        long search = keys.readLong();
+        int settled = store.size();
+        newborns.sort(Comparator.comparingInt(Agent::getCell));
+        for (int i = 0; i < newborns.size(); i++) {
+            newborns.get(i).setKey(firstKey + i);
+            simulation.registerBirth(newborns.get(i));
+        }
+        simulation.settle(settled);
+
+        if (simulation.imitationDue()) {
+            exchangeHalo(1);
+            simulation.imitateNeighbours();
+            removeGhosts();
+        }
+        grid.releaseEmptyChunks();
+        report(search);
+    }
+
+    // Settles the claims on this strip's cells: assists are credited here, everything else goes to the best claim
+    private void resolve(List<Claim> claims, int[] assistBalance, List<Claim> won, List<List<Claim>> wonElsewhere) {
+        claims.sort(Comparator.comparingInt(Claim::cell));
+        for (int start = 0; start < claims.size(); ) {
+            int cell = claims.get(start).cell();
+            int end = start;
+            Claim best = null;
+            for (; end < claims.size() && claims.get(end).cell() == cell; end++) {
+                Claim claim = claims.get(end);
+                if (claim.kind() == ASSIST) {
+                    assistBalance[((Agent) grid.getEntityAt(cell)).getSlot()]++;
+                } else if (best == null || IntentResolver.beats(claim.energy(), claim.key(), best.energy(), best.key())) {
+                    best = claim;
+                }
+            }
+            start = end;
+            if (best == null) continue;
+
+            if (best.kind() == CONSUME) {
+                if (!(grid.getEntityAt(cell) instanceof Food food)) continue;
+                grid.removeEntity(food);
+            }
+            if (best.from() == id) {
+                won.add(best);
+            } else {
+                wonElsewhere.get(neighbourIndex(best.from())).add(best);
+            }
+        }
+    }
+
+    // Rows: VISION_RADIUS + 1 for deciding, since food steps read distances one cell past the vision radius
+    private void exchangeHalo(int rows) throws IOException {
+        for (int i = 0; i < peers.length; i++) {
+            int shard = neighbours[i];
+            List<Integer> agentSlots = new ArrayList<>();
+            for (int slot = 0; slot < store.size(); slot++) {
+                int cell = store.getCell(slot);
+                if (cell >= 0 && layout.inHaloOf(cell, shard, rows)) agentSlots.add(slot);
+            }
+            List<Integer> foodCells = new ArrayList<>();
+            grid.forEachFoodCell(cell -> {
+                if (layout.inHaloOf(cell, shard, rows)) foodCells.add(cell);
+            });
+
+            peers[i].send(HALO, out -> {
+                out.writeInt(agentSlots.size());
+                for (int slot : agentSlots) {
+                    writeAgent(out, store.getAgent(slot), store.getCell(slot));
+                }
+                out.writeInt(foodCells.size());
+                for (int cell : foodCells) {
+                    out.writeInt(cell);
+                }
+            });
+        }
+
+        for (ShardChannel peer : peers) {
+            DataInputStream in = peer.receive(HALO);
+            for (int count = in.readInt(); count > 0; count--) {
+                Agent ghost = readAgent(in, simulation, forager);
+                place(ghost, in.readInt());
+                ghosts.add(ghost);
+            }
+            for (int count = in.readInt(); count > 0; count--) {
+                Food food = new Food(config);
+                place(food, in.readInt());
+                ghostFood.add(food);
+            }
+        }
+    }
+
+    private void removeGhosts() {
+        ghosts.forEach(grid::removeEntity);
+        ghostFood.forEach(grid::removeEntity);
+        ghosts.clear();
+        ghostFood.clear();
+    }
+
+    private void placeFood(int cell) {
+        if (cell >= 0 && layout.owns(id, cell)) {
+            place(new Food(config), cell);
+        }
+    }
+
+    private void place(GridEntity entity, int cell) {
+        if (!grid.placeEntity(entity, cell)) {
+            throw new IllegalStateException("Shard " + id + " found cell " + grid.pointOf(cell) + " already taken");
+        }
+    }
+
+    /**
+     * Counts and energies for the coordinator's SimulationMetrics, plus which of the free-cell search's random
+     * draws land on an empty cell of this strip, so the coordinator can pick the cell getNextAvailableCell would.
+     */
+    private void report(long search) throws IOException {
+        int helpers = 0;
+        int selfish = 0;
+        double energySum = 0.0;
+        EnergyDistribution helperEnergy = new EnergyDistribution();
+        EnergyDistribution selfishEnergy = new EnergyDistribution();
+        for (int slot = 0; slot < store.size(); slot++) {
+            double energy = store.getEnergy(slot);
+            if (store.isHelper(slot)) {
+                helpers++;
+                helperEnergy.add(energy);
+            } else if (store.isSelfish(slot)) {
+                selfish++;
+                selfishEnergy.add(energy);
+            }
+            energySum += energy;
+        }
+
+        int cells = config.getGridSize() * config.getGridSize();
+        RandomGenerator random = freeCellStreams.forFreeCellSearch(search);
+        int freeDraws = 0;
+        for (int draw = 0; draw < GridManager.FREE_CELL_DRAWS; draw++) {
+            int cell = random.nextInt(cells);
+            if (layout.owns(id, cell) && !grid.isOccupied(cell)) freeDraws |= 1 << draw;
+        }
+
+        int agents = store.size();
+        int helperCount = helpers;
+        int selfishCount = selfish;
+        double energy = energySum;
+        int free = freeDraws;
+        coordinator.send(REPORT, out -> {
+            out.writeInt(agents);
+            out.writeInt(helperCount);
+            out.writeInt(selfishCount);
+            out.writeDouble(energy);
+            helperEnergy.writeTo(out);
+            selfishEnergy.writeTo(out);
+            out.writeInt(simulation.getTotalDeaths());
+            out.writeInt(simulation.getHelperBirths());
+            out.writeInt(simulation.getSelfishBirths());
+            out.writeInt(grid.getFoodCount());
+            out.writeInt(cells - grid.availableCount());
+            out.writeInt(free);
+        });
+    }
+
+    private void sendState() throws IOException {
+        List<Integer> foodCells = new ArrayList<>();
+        grid.forEachFoodCell(foodCells::add);
+        coordinator.send(STATE, out -> {
+            out.writeInt(store.size());
+            for (int slot = 0; slot < store.size(); slot++) {
+                writeAgent(out, store.getAgent(slot), store.getCell(slot));
+            }
+            out.writeInt(foodCells.size());
+            for (int cell : foodCells) {
+                out.writeInt(cell);
+                out.writeInt(((Food) grid.getEntityAt(cell)).getSpawnTick());
+            }
+        });
+    }
+
+    private void route(Claim claim, List<Claim> settling, List<List<Claim>> outgoing) {
+        int owner = layout.ownerOf(claim.cell());
+        if (owner == id) {
+            settling.add(claim);
+        } else {
+            outgoing.get(neighbourIndex(owner)).add(claim);
+        }
+    }
+
+    private int neighbourIndex(int shard) {
+        for (int i = 0; i < neighbours.length; i++) {
+            if (neighbours[i] == shard) return i;
+        }
+        throw new IllegalStateException("Shard " + shard + " is not next to shard " + id);
+    }
+
+    private <T> List<List<T>> perNeighbour() {
+        List<List<T>> lists = new ArrayList<>(neighbours.length);
+        for (int i = 0; i < neighbours.length; i++) {
+            lists.add(new ArrayList<>());
+        }
+        return lists;
+    }
+
+    private int haloRows() {
+        return config.getVisionRadius() + 1;
+    }
+
+    // Wire form of an agent: key, energy, strategy code and last reproduction tick, followed by its cell
+    static void writeAgent(DataOutputStream out, Agent agent, int cell) throws IOException {
+        out.writeLong(agent.getKey());
+        out.writeDouble(agent.getEnergy());
+        out.writeByte(Checkpoint.strategyCode(agent.getStrategy()));
+        out.writeInt(agent.getLastReproducedTick());
+        out.writeInt(cell);
+    }
+
+    // Reads an agent up to its cell, which the caller reads next
+    static Agent readAgent(DataInputStream in, Simulation simulation, AgentStrategy forager) throws IOException {
+        return readAgent(in, simulation.getConfig(), simulation.getHelperStrategy(), simulation.getSelfishStrategy(), forager);
+    }
+
+    static Agent readAgent(DataInputStream in, SimulationConfig config, AgentStrategy helper, AgentStrategy selfish,
+                           AgentStrategy forager) throws IOException {
+        long key = in.readLong();
+        double energy = in.readDouble();
+        Agent agent = new Agent(Checkpoint.strategyFor(in.readByte(), helper, selfish, forager), config);
+        agent.setKey(key);
+        agent.setEnergy(energy);
+        agent.setLastReproducedTick(in.readInt());
+        return agent;
+    }
+}
@@ -3,29 +3,47 @@ package com.jacandre.core;
 import com.jacandre.models.*;
 import com.jacandre.strategy.AgentStrategy;
 import com.jacandre.strategy.HelperStrategy;
+import com.jacandre.strategy.IntentBuffer;
 import com.jacandre.strategy.SelfishStrategy;
+import com.jacandre.termination.Termination;
+import com.jacandre.termination.TerminationDetector;
+import com.jacandre.timeline.EnergyDistribution;
 import com.jacandre.timeline.SimulationMetrics;
 import com.jacandre.timeline.TickHistory;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
 import java.awt.*;
 import java.util.*;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.random.RandomGenerator;
+import java.util.stream.IntStream;
 
 @Slf4j
 @Getter
 public class Simulation {
-    private final List<Agent> livingAgents;
+    private final SimulationConfig config;
+    private final AgentStore agentStore;
+    private final List<Agent> livingAgents; // read-only view of agentStore in slot order
     private final GridManager gridManager;
     private final TickHistory timeline = new TickHistory();
     private int tick;
+    private final RandomStreams randomStreams;
+    @Getter(AccessLevel.NONE)
+    private long nextAgentKey = 0;
 
     private final AgentStrategy helperStrategy = new HelperStrategy();
     private final AgentStrategy selfishStrategy = new SelfishStrategy();
 
     private final List<SimulationMetrics> metricsHistory = new ArrayList<>();
+    @Getter(AccessLevel.NONE)
+    private final List<SimulationListener> listeners = new ArrayList<>();
+    private boolean keepHistory = true;
+    @Getter(AccessLevel.NONE)
+    private final List<TerminationDetector> terminationDetectors = new ArrayList<>();
+    private Termination termination; // null while the run is still going
 
     private int totalDeaths = 0;
     private int helperBirths = 0;
@@ -35,39 +53,77 @@ public class Simulation {
     private double cumulativeEnergy = 0.0;
     private double avgEnergy = 0.0;
 
+    private UpdateMode updateMode = UpdateMode.SEQUENTIAL;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    @Getter(AccessLevel.NONE)
+    private ForkJoinPool pool;
+    @Getter(AccessLevel.NONE)
+    private TiledTickEngine tiledEngine;
+    @Getter(AccessLevel.NONE)
+    private final IntentBuffer intents = new IntentBuffer();
+    @Getter(AccessLevel.NONE)
+    private final IntentResolver intentResolver;
+    @Getter(AccessLevel.NONE)
+    private final FermiTable fermiTable;
+    @Getter(AccessLevel.NONE)
+    private byte[] imitated = new byte[0];
+
     public Simulation() {
-        this(new GridManager(Constants.GRID_SIZE), new ArrayList<>(), new ArrayList<>(), Constants.RANDOM);
+        this(GridBackend.LOCKING);
+    }
+
+    public Simulation(GridBackend backend) {
+        this(SimulationConfig.DEFAULTS, backend);
+    }
+
+    // Everything random in the run is drawn from the config's seed, so the same config replays the same run
+    public Simulation(SimulationConfig config, GridBackend backend) {
+        this(new GridManager(config, backend), new RandomStreams(config.getSeed()));
         initialiseAgents();
         generateFoodSource();
 
         log.info("Simulation initialised with {} agents on a {}x{} grid.",
-                livingAgents.size(), Constants.GRID_SIZE, Constants.GRID_SIZE);
+                livingAgents.size(), config.getGridSize(), config.getGridSize());
     }
 
     // For testing
     public Simulation(GridManager gridManager, List<Agent> agents, List<Food> foodSources, Random random) {
+        this(gridManager, new RandomStreams(random.nextLong()));
+
+        List<Agent> shuffled = new ArrayList<>(agents);
+        Collections.shuffle(shuffled, random);
+        shuffled.forEach(this::admit);
+    }
+
+    // Empty simulation around an existing grid; also the starting point of Checkpoint.load
+    Simulation(GridManager gridManager, RandomStreams randomStreams) {
+        this.config = gridManager.getConfig();
+        this.agentStore = new AgentStore(config.getLowEnergyThreshold());
+        this.livingAgents = agentStore.asList();
+        this.intentResolver = new IntentResolver(config);
+        this.fermiTable = new FermiTable(config.getBeta());
         this.gridManager = gridManager;
-        this.livingAgents = new ArrayList<>(agents);
+        this.randomStreams = randomStreams;
         this.tick = 0;
-        Collections.shuffle(this.livingAgents, random);
     }
 
     private void initialiseAgents() {
-        for (int i = 0; i < Constants.NUM_AGENTS; i++) {
-            Point pos = gridManager.getNextAvailablePosition();
-            if (pos == null) {
-                log.warn("Ran out of space while placing agents. {}/{} agents placed.", livingAgents.size(), Constants.NUM_AGENTS);
+        RandomGenerator random = randomStreams.forSetup();
+        for (int i = 0; i < config.getNumAgents(); i++) {
+            int cell = gridManager.getNextAvailableCell();
+            if (cell < 0) {
+                log.warn("Ran out of space while placing agents. {}/{} agents placed.", livingAgents.size(), config.getNumAgents());
                 break;
             }
 
-            AgentStrategy strategy = Constants.RANDOM.nextBoolean() ? helperStrategy : selfishStrategy;
-            Agent agent = new Agent(strategy);
+            AgentStrategy strategy = random.nextBoolean() ? helperStrategy : selfishStrategy;
+            Agent agent = new Agent(strategy, config);
 
-            boolean placed = gridManager.placeEntity(agent, pos);
+            boolean placed = gridManager.placeEntity(agent, cell);
             if (placed) {
-                livingAgents.add(agent);
+                admit(agent);
             } else {
-                log.warn("Failed to place agent at {}", pos);
+                log.warn("Failed to place agent at {}", gridManager.pointOf(cell));
             }
         }
 
@@ -75,106 +131,98 @@ public class Simulation {
     }
 
     private void generateFoodSource() {
-        if (gridManager.getFoodEntities().size() >= Constants.MAX_FOOD_SOURCES) {
+        if (gridManager.getFoodCount() >= config.getMaxFoodSources()) {
             log.debug("Maximum food sources reached. Skipping generation.");
             return;
         }
 
-        Point pos = gridManager.getNextAvailablePosition();
-        if (pos == null) {
+        int cell = gridManager.getNextAvailableCell();
+        if (cell < 0) {
             log.warn("No available position to place food.");
             return;
         }
 
-        Food food = new Food();
-        if (gridManager.placeEntity(food, pos)) {
-            log.info("Food source generated at {}", pos);
-        }
-    }
-
-    // Remove expired food
-    private void cleanUpFoodSources() {
-        Map<Point, GridEntity> foodEntities = gridManager.getEntitiesOfType(Food.class);
-
-        for (Map.Entry<Point, GridEntity> entry : foodEntities.entrySet()) {
-            Food food = (Food) entry.getValue();
-            Point pos = entry.getKey();
-
-            food.ageOneTick();
-            if (food.isExpired()) {
-                gridManager.removeEntity(food);
-                gridManager.releasePosition(pos);
-                log.info("Food at {} expired and removed.", pos);
+        Food food = new Food(config);
+        if (gridManager.placeEntity(food, cell)) {
+            if (log.isInfoEnabled()) {
+                log.info("Food source generated at {}", gridManager.pointOf(cell));
             }
         }
     }
 
     public void stepSimulation() {
-        if (tick >= Constants.MAX_TICKS) {
-            log.info("Simulation terminated: reached maximum tick limit of {}", Constants.MAX_TICKS);
+        if (termination == null && tick >= config.getMaxTicks()) {
+            termination = new Termination(tick, "tick limit"); // e.g. resumed from a checkpoint at the limit
+        }
+        if (termination != null) {
+            log.info("Simulation terminated at tick {}: {}", termination.tick(), termination.reason());
             return;
         }
 
-
-        SimulationContext context = new SimulationContext(tick, Constants.RANDOM);
-
-        tick++;
-        log.debug("Tick {} begins", tick);
-
-        cleanUpFoodSources();
-
-        List<Agent> agentsToRemove = new ArrayList<>();
-
-        for (Agent agent : new ArrayList<>(livingAgents)) {
-            Point pos = gridManager.getPositionOf(agent);
-            if (pos == null) {
-                log.warn("Agent {} has no position and will be removed.", agent.getId());
-                agentsToRemove.add(agent);
-                continue;
-            }
-
-            act(agent, context);
-            maybeReproduce(agent, context);
-            applyCostOfLiving(agent);
-
-            if (agent.getEnergy() <= 0) {
-                agentsToRemove.add(agent);
+        SimulationContext context = startTick();
+
+        int agentCount = agentStore.size();
+        if (updateMode == UpdateMode.TILED_PARALLEL && tiledEngine().isApplicable()) {
+            List<Agent> births = tiledEngine().run(agentStore, agentCount, agent -> {
+                SimulationContext own = agentContext(agent, context);
+                act(agent, own);
+                return maybeReproduce(agent, own);
+            });
+            births.forEach(this::registerBirth);
+        } else if (updateMode == UpdateMode.SYNCHRONOUS) {
+            decideAll(agentCount, context);
+            intentResolver.commit(agentStore, agentCount, intents, gridManager, tick).forEach(this::registerBirth);
+        } else {
+            // Children are added to the store during the loop; only agents alive at the start of the tick act
+            for (int slot = 0; slot < agentCount; slot++) {
+                Agent agent = agentStore.getAgent(slot);
+                if (agentStore.getCell(slot) < 0) {
+                    log.warn("Agent {} has no position and will be removed.", agent.getId());
+                    continue;
+                }
+
+                SimulationContext own = agentContext(agent, context);
+                act(agent, own);
+                Agent child = maybeReproduce(agent, own);
+                if (child != null) {
+                    registerBirth(child);
+                }
             }
         }
 
-        for (Agent agent : agentsToRemove) {
-            Point pos = gridManager.getPositionOf(agent);
-            if (pos != null) {
-                gridManager.removeEntity(agent);
-                gridManager.releasePosition(pos);
-                ++totalDeaths;
-            }
+        settle(agentCount);
+
+        if (imitationDue()) {
+            imitateNeighbours();
         }
-        livingAgents.removeAll(agentsToRemove);
 
         maybeGenerateNewFood(context);
+        gridManager.releaseEmptyChunks();
 
-        recordSnapshot(tick);
+        if (keepHistory) {
+            recordSnapshot(tick);
+        }
 
         helperCount = 0;
         selfishCount = 0;
 
-        for (Agent agent : livingAgents) {
-            if (agent.isHelper()) {
+        EnergyDistribution helperEnergy = new EnergyDistribution();
+        EnergyDistribution selfishEnergy = new EnergyDistribution();
+        for (int slot = 0; slot < agentStore.size(); slot++) {
+            double energy = agentStore.getEnergy(slot);
+            if (agentStore.isHelper(slot)) {
                 helperCount++;
-            } else if (agent.isSelfish()) {
+                helperEnergy.add(energy);
+            } else if (agentStore.isSelfish(slot)) {
                 selfishCount++;
+                selfishEnergy.add(energy);
             }
-            cumulativeEnergy += agent.getEnergy();
+            cumulativeEnergy += energy;
         }
 
-        avgEnergy = livingAgents.isEmpty() ? 0.0 : cumulativeEnergy / livingAgents.size();
-
-        log.info("Tick {} complete. {} agents remain.", tick, livingAgents.size());
+        avgEnergy = agentStore.isEmpty() ? 0.0 : cumulativeEnergy / agentStore.size();
 
-        List<Double> energySnapshot = livingAgents.stream()
-                .map(Agent::getEnergy)
-                .collect(Collectors.toList());
+        log.info("Tick {} complete. {} agents remain.", tick, agentStore.size());
 
         SimulationMetrics metrics = new SimulationMetrics();
         metrics.setTick(tick);
@@ -184,12 +232,35 @@ public class Simulation {
         metrics.setSelfishCount(selfishCount);
         metrics.setHelperBirths(helperBirths);
         metrics.setSelfishBirths(selfishBirths);
-        metrics.setEnergySnapshot(energySnapshot);
+        metrics.setHelperEnergy(helperEnergy);
+        metrics.setSelfishEnergy(selfishEnergy);
 
         metrics.logMetrics();
-        metricsHistory.add(metrics);
+        if (keepHistory) {
+            metricsHistory.add(metrics);
+        }
+        if (!listeners.isEmpty()) {
+            TickSnapshot snapshot = listeners.stream().anyMatch(SimulationListener::wantsSnapshots) ? captureSnapshot(tick) : null;
+            for (SimulationListener listener : listeners) {
+                listener.onTick(snapshot, metrics);
+            }
+        }
 
         cumulativeEnergy = 0.0;
+
+        for (TerminationDetector detector : terminationDetectors) {
+            String reason = detector.onTick(metrics);
+            if (reason != null) {
+                termination = new Termination(tick, reason);
+                break;
+            }
+        }
+        if (termination == null && tick >= config.getMaxTicks()) {
+            termination = new Termination(tick, "tick limit");
+        }
+        if (termination != null) {
+            log.info("Simulation terminated at tick {}: {}", tick, termination.reason());
+        }
     }
 
     // TODO: Add strength-based arbitration for contested food consumption
@@ -216,49 +287,282 @@ public class Simulation {
         agent.act(gridManager, context);
     }
 
-    private void maybeReproduce(Agent agent, SimulationContext context) {
-        if (agent.getEnergy() < Constants.REPRODUCTION_THRESHOLD) return;
-        if (tick - agent.getLastReproducedTick() < Constants.REPRODUCTION_COOLDOWN) return;
+    public void addListener(SimulationListener listener) {
+        listeners.add(listener);
+    }
 
-        Point parentPos = gridManager.getPositionOf(agent);
-        List<Point> emptyNeighbours = gridManager.getEmptyNeighbours(parentPos, 1);
-        if (emptyNeighbours.isEmpty()) return;
+    // Detectors see every tick's metrics in the order they were added; the first to give a reason ends the run
+    public void addTerminationDetector(TerminationDetector detector) {
+        terminationDetectors.add(detector);
+    }
 
-        Point childPos = emptyNeighbours.get(context.random().nextInt(emptyNeighbours.size()));
-        Agent child = new Agent(agent.getStrategy());
+    public boolean isTerminated() {
+        return termination != null;
+    }
 
-        if (gridManager.placeEntity(child, childPos)) {
-            double splitEnergy = agent.getEnergy() / 2.0;
-            agent.setEnergy(splitEnergy);
-            child.setEnergy(splitEnergy);
-            livingAgents.add(child);
+    // With history off, neither the timeline nor metricsHistory grows; listeners still see every tick
+    public void setKeepHistory(boolean keepHistory) {
+        this.keepHistory = keepHistory;
+    }
 
-            agent.setLastReproducedTick(tick); // update cooldown
-            if (child.isHelper()) {
-                helperBirths++;
-            } else if (child.isSelfish()) {
-                selfishBirths++;
-            }
+    public void setUpdateMode(UpdateMode updateMode) {
+        this.updateMode = updateMode;
+    }
+
+    // Worker threads for TILED_PARALLEL and SYNCHRONOUS
+    public void setThreads(int threads) {
+        this.threads = threads;
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+        this.tiledEngine = null;
+    }
+
+    private ForkJoinPool pool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(threads);
+        }
+        return pool;
+    }
+
+    private TiledTickEngine tiledEngine() {
+        if (tiledEngine == null) {
+            tiledEngine = new TiledTickEngine(gridManager.getGridSize(), pool());
+        }
+        return tiledEngine;
+    }
+
+    // The phases of a tick, also run one by one by ShardWorker with its exchanges in between
+
+    // Advances the clock and expires food; the returned context carries the tick's own stream
+    SimulationContext startTick() {
+        // Draws that belong to the tick; each agent gets its own stream from agentContext
+        SimulationContext context = new SimulationContext(tick, randomStreams.forTick(tick));
+
+        tick++;
+        log.debug("Tick {} begins", tick);
+
+        gridManager.expireFood(tick);
+        return context;
+    }
 
+    /**
+     * Read phase of a SYNCHRONOUS tick. Nothing on the grid or in the store changes until every agent has decided,
+     * and each agent draws from its own stream, so the intents are the same whatever the thread count.
+     */
+    void decideAll(int agentCount, SimulationContext context) {
+        intents.reset(agentCount);
+
+        pool().submit(() -> IntStream.range(0, agentCount).parallel().forEach(slot -> {
+            if (agentStore.getCell(slot) < 0) return;
+
+            Agent agent = agentStore.getAgent(slot);
+            SimulationContext own = agentContext(agent, context);
+            agent.getStrategy().decide(agent, gridManager, own, intents);
+            decideReproduction(agent, slot, own);
+        })).join();
+    }
+
+    // The child goes next to the parent's starting cell, never into the cell the parent is about to move to
+    private void decideReproduction(Agent agent, int slot, SimulationContext context) {
+        if (agentStore.getEnergy(slot) < config.getReproductionThreshold()) return;
+        if (tick - agentStore.getLastReproducedTick(slot) < config.getReproductionCooldown()) return;
+
+        int childCell = gridManager.randomEmptyNeighbour(agentStore.getCell(slot), intents.getTarget(slot), context.random());
+        if (childCell >= 0) {
+            intents.reproduce(agent, childCell);
+        }
+    }
+
+    IntentBuffer intents() {
+        return intents;
+    }
+
+    // Charges the cost of living to the agents alive when the tick began, then removes the dead
+    void settle(int agentCount) {
+        agentStore.decreaseEnergyAll(config.getCostOfLiving(), agentCount);
+        removeDeadAgents(agentCount);
+    }
+
+    boolean imitationDue() {
+        return config.getImitationInterval() > 0 && tick % config.getImitationInterval() == 0;
+    }
+
+    // Places the child on the grid and returns it, leaving it for the caller to register; null if no birth
+    private Agent maybeReproduce(Agent agent, SimulationContext context) {
+        if (agent.getEnergy() < config.getReproductionThreshold()) return null;
+        if (tick - agent.getLastReproducedTick() < config.getReproductionCooldown()) return null;
+
+        int parentCell = gridManager.getCellOf(agent);
+        int childCell = gridManager.randomEmptyNeighbour(parentCell, context.random());
+        if (childCell < 0) return null;
+
+        Agent child = new Agent(agent.getStrategy(), config);
+
+        if (!gridManager.placeEntity(child, childCell)) {
+            return null;
+        }
+
+        double splitEnergy = agent.getEnergy() / 2.0;
+        agent.setEnergy(splitEnergy);
+        child.setEnergy(splitEnergy);
+        agent.setLastReproducedTick(tick); // update cooldown
+
+        if (log.isInfoEnabled()) {
             log.info("Agent {} reproduced at tick {}. Child agent {} created at {} with {} energy.",
-                    agent.getId(), tick, child.getId(), childPos, splitEnergy);
+                    agent.getId(), tick, child.getId(), gridManager.pointOf(childCell), splitEnergy);
+        }
+        return child;
+    }
+
+    // The agent's own random stream for this tick, independent of which thread runs it or when
+    private SimulationContext agentContext(Agent agent, SimulationContext tickContext) {
+        return new SimulationContext(tickContext.tick(), randomStreams.forAgent(tickContext.tick(), agent.getKey()));
+    }
+
+    // Adds the agent to the population, giving it the next key if it has none yet
+    private void admit(Agent agent) {
+        if (agent.getKey() < 0) {
+            agent.setKey(nextAgentKey++);
+        }
+        agentStore.add(agent);
+    }
+
+    // Checkpoint support
+
+    long nextAgentKey() {
+        return nextAgentKey;
+    }
+
+    void restoreCounters(int tick, long nextAgentKey, int totalDeaths, int helperBirths, int selfishBirths) {
+        this.tick = tick;
+        this.nextAgentKey = nextAgentKey;
+        this.totalDeaths = totalDeaths;
+        this.helperBirths = helperBirths;
+        this.selfishBirths = selfishBirths;
+    }
+
+    // The agent must already be on the grid and carry its key
+    void restoreAgent(Agent agent) {
+        admit(agent);
+    }
+
+    void registerBirth(Agent child) {
+        admit(child);
+        if (child.isHelper()) {
+            helperBirths++;
+        } else if (child.isSelfish()) {
+            selfishBirths++;
+        }
+    }
+
+    /**
+     * Fermi imitation: every agent compares its energy with that of a random neighbouring agent and adopts the
+     * neighbour's strategy with probability 1 / (1 + exp(-BETA * (theirs - mine))). Every comparison reads the
+     * population as it was before the pass and the switches are applied afterwards, so the outcome does not
+     * depend on slot order and the comparisons can be split across threads.
+     */
+    void imitateNeighbours() {
+        int agentCount = agentStore.size();
+        if (imitated.length < agentCount) {
+            imitated = new byte[Math.max(agentCount, imitated.length * 2)];
+        }
+        byte[] adopted = imitated;
+        if (updateMode != UpdateMode.SEQUENTIAL && threads > 1) {
+            pool().submit(() -> IntStream.range(0, agentCount).parallel()
+                    .forEach(slot -> adopted[slot] = imitationChoice(slot))).join();
+        } else {
+            for (int slot = 0; slot < agentCount; slot++) {
+                adopted[slot] = imitationChoice(slot);
+            }
         }
+
+        int switches = 0;
+        for (int slot = 0; slot < agentCount; slot++) {
+            if (adopted[slot] != agentStore.getStrategyCode(slot)) {
+                agentStore.setStrategyCode(slot, adopted[slot]);
+                switches++;
+            }
+        }
+        log.debug("Tick {}: {} agents switched strategy by imitation", tick, switches);
+    }
+
+    private byte imitationChoice(int slot) {
+        byte own = agentStore.getStrategyCode(slot);
+        int cell = agentStore.getCell(slot);
+        if (own == 0 || cell < 0) return own;
+
+        RandomGenerator random = randomStreams.forImitation(tick, agentStore.getAgent(slot).getKey());
+        int neighbourCell = gridManager.randomAgentNeighbour(cell, random);
+        if (neighbourCell < 0) return own;
+
+        // A neighbour outside the store is a ShardWorker's copy of an agent on the next strip
+        Agent neighbour = (Agent) gridManager.getEntityAt(neighbourCell);
+        int other = neighbour.getSlot();
+        byte theirs = other >= 0 ? agentStore.getStrategyCode(other) : agentStore.codeOf(neighbour.getStrategy());
+        if (theirs == own || theirs == 0) return own;
+
+        double delta = neighbour.getEnergy() - agentStore.getEnergy(slot);
+        return random.nextDouble() < fermiTable.probability(delta) ? theirs : own;
     }
 
     private void maybeGenerateNewFood(SimulationContext context) {
-        if (gridManager.getFoodEntities().size() >= Constants.MAX_FOOD_SOURCES) {
+        if (gridManager.getFoodCount() >= config.getMaxFoodSources()) {
             return;
         }
-        if (context.random().nextDouble() < Constants.FOOD_SPAWN_PROBABILITY) {
+        if (context.random().nextDouble() < config.getFoodSpawnProbability()) {
             generateFoodSource();
         }
     }
 
-    private void applyCostOfLiving(Agent agent) {
-        agent.decreaseEnergy(Constants.COST_OF_LIVING);
+    // Scans slots [0, count) from the top so swap-removal only ever pulls in slots already checked or newborns
+    private void removeDeadAgents(int count) {
+        for (int slot = count - 1; slot >= 0; slot--) {
+            int cell = agentStore.getCell(slot);
+            if (cell >= 0 && agentStore.getEnergy(slot) > 0) {
+                continue;
+            }
+
+            if (cell >= 0) {
+                gridManager.removeEntity(agentStore.getAgent(slot));
+                ++totalDeaths;
+            }
+            agentStore.removeSlot(slot);
+        }
     }
 
+    // Records the occupied cells as values, so later changes to the agents do not rewrite this tick
     public void recordSnapshot(int tick) {
-        timeline.addSnapshot(new TickSnapshot(tick, gridManager.getEntitiesOfType(GridEntity.class)));
+        timeline.beginTick(tick, gridManager.getGridSize());
+        for (int slot = 0; slot < agentStore.size(); slot++) {
+            int cell = agentStore.getCell(slot);
+            if (cell >= 0) {
+                timeline.recordAgent(cell, strategyLabel(slot), agentStore.getEnergy(slot));
+            }
+        }
+        gridManager.forEachFoodCell(timeline::recordFood);
+        timeline.endTick();
+    }
+
+    // Points are made for the snapshot rather than taken from the grid, whose cache only covers the occupied area
+    private TickSnapshot captureSnapshot(int tick) {
+        int gridSize = gridManager.getGridSize();
+        Map<Point, CellState> cells = new HashMap<>();
+        for (int slot = 0; slot < agentStore.size(); slot++) {
+            int cell = agentStore.getCell(slot);
+            if (cell >= 0) {
+                cells.put(new Point(cell / gridSize, cell % gridSize),
+                        CellState.agent(strategyLabel(slot), agentStore.getEnergy(slot)));
+            }
+        }
+        gridManager.forEachFoodCell(cell -> cells.put(new Point(cell / gridSize, cell % gridSize), CellState.FOOD));
+        return new TickSnapshot(tick, cells);
+    }
+
+    private String strategyLabel(int slot) {
+        if (agentStore.isHelper(slot)) return "HELPER";
+        if (agentStore.isSelfish(slot)) return "SELFISH";
+        return String.valueOf(agentStore.getStrategy(slot));
     }
 }
@@ -0,0 +1,101 @@
+package com.jacandre.core;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Every parameter of one run. A Simulation takes its config from its GridManager, and the models and
+ * strategies read it from there, so runs with different configs can share a JVM. Unset fields default
+ * to the values in Constants.
+ */
+@Value
+@Builder(toBuilder = true)
+public class SimulationConfig {
+    public static final SimulationConfig DEFAULTS = builder().build();
+
+    @Builder.Default int gridSize = Constants.GRID_SIZE;
+    @Builder.Default int numAgents = Constants.NUM_AGENTS;
+    @Builder.Default int maxFoodSources = Constants.MAX_FOOD_SOURCES;
+    @Builder.Default double foodSpawnProbability = Constants.FOOD_SPAWN_PROBABILITY;
+    @Builder.Default int maxTicks = Constants.MAX_TICKS;
+
+    @Builder.Default double initialEnergy = Constants.INITIAL_ENERGY;
+    @Builder.Default double reproductionThreshold = Constants.REPRODUCTION_THRESHOLD;
+    @Builder.Default int reproductionCooldown = Constants.REPRODUCTION_COOLDOWN;
+    @Builder.Default double costOfLiving = Constants.COST_OF_LIVING;
+    @Builder.Default double moveCost = Constants.MOVE_COST;
+    @Builder.Default double foodReward = Constants.FOOD_REWARD;
+    @Builder.Default int foodLifespan = Constants.FOOD_LIFESPAN;
+    @Builder.Default int visionRadius = Constants.VISION_RADIUS;
+
+    @Builder.Default double assistCost = Constants.ASSIST_COST;
+    @Builder.Default double shareRate = Constants.SHARE_RATE;
+    @Builder.Default double lowEnergyThreshold = Constants.LOW_ENERGY_THRESHOLD;
+
+    @Builder.Default double beta = Constants.BETA;
+    @Builder.Default int imitationInterval = Constants.IMITATION_INTERVAL;
+
+    @Builder.Default long seed = Constants.SEED;
+
+    /**
+     * Sets a parameter by its field name, for sweeps and command lines. Integer parameters must be given
+     * whole values.
+     */
+    public SimulationConfig with(String parameter, double value) {
+        SimulationConfigBuilder builder = toBuilder();
+        switch (parameter) {
+            case "gridSize" -> builder.gridSize(whole(parameter, value));
+            case "numAgents" -> builder.numAgents(whole(parameter, value));
+            case "maxFoodSources" -> builder.maxFoodSources(whole(parameter, value));
+            case "foodSpawnProbability" -> builder.foodSpawnProbability(value);
+            case "maxTicks" -> builder.maxTicks(whole(parameter, value));
+            case "initialEnergy" -> builder.initialEnergy(value);
+            case "reproductionThreshold" -> builder.reproductionThreshold(value);
+            case "reproductionCooldown" -> builder.reproductionCooldown(whole(parameter, value));
+            case "costOfLiving" -> builder.costOfLiving(value);
+            case "moveCost" -> builder.moveCost(value);
+            case "foodReward" -> builder.foodReward(value);
+            case "foodLifespan" -> builder.foodLifespan(whole(parameter, value));
+            case "visionRadius" -> builder.visionRadius(whole(parameter, value));
+            case "assistCost" -> builder.assistCost(value);
+            case "shareRate" -> builder.shareRate(value);
+            case "lowEnergyThreshold" -> builder.lowEnergyThreshold(value);
+            case "beta" -> builder.beta(value);
+            case "imitationInterval" -> builder.imitationInterval(whole(parameter, value));
+            default -> throw new IllegalArgumentException("Unknown parameter: " + parameter);
+        }
+        return builder.build();
+    }
+
+    // Reads a parameter by its field name, the counterpart of with
+    public double get(String parameter) {
+        return switch (parameter) {
+            case "gridSize" -> getGridSize();
+            case "numAgents" -> getNumAgents();
+            case "maxFoodSources" -> getMaxFoodSources();
+            case "foodSpawnProbability" -> getFoodSpawnProbability();
+            case "maxTicks" -> getMaxTicks();
+            case "initialEnergy" -> getInitialEnergy();
+            case "reproductionThreshold" -> getReproductionThreshold();
+            case "reproductionCooldown" -> getReproductionCooldown();
+            case "costOfLiving" -> getCostOfLiving();
+            case "moveCost" -> getMoveCost();
+            case "foodReward" -> getFoodReward();
+            case "foodLifespan" -> getFoodLifespan();
+            case "visionRadius" -> getVisionRadius();
+            case "assistCost" -> getAssistCost();
+            case "shareRate" -> getShareRate();
+            case "lowEnergyThreshold" -> getLowEnergyThreshold();
+            case "beta" -> getBeta();
+            case "imitationInterval" -> getImitationInterval();
+            default -> throw new IllegalArgumentException("Unknown parameter: " + parameter);
+        };
+    }
+
+    private static int whole(String parameter, double value) {
+        if (value != Math.rint(value)) {
+            throw new IllegalArgumentException(parameter + " must be a whole number, got " + value);
+        }
+        return (int) value;
+    }
+}
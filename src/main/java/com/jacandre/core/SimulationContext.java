@@ -1,5 +1,5 @@
 package com.jacandre.core;
 
-import java.util.Random;
+import java.util.random.RandomGenerator;
 
-public record SimulationContext(int tick, Random random) {}
+public record SimulationContext(int tick, RandomGenerator random) {}
@@ -0,0 +1,15 @@
+package com.jacandre.core;
+
+import com.jacandre.models.TickSnapshot;
+import com.jacandre.timeline.SimulationMetrics;
+
+// Receives every completed tick, on the simulation thread, before the next tick starts
+@FunctionalInterface
+public interface SimulationListener {
+    void onTick(TickSnapshot snapshot, SimulationMetrics metrics);
+
+    // Listeners that only read the metrics can decline the snapshot; they are then handed null
+    default boolean wantsSnapshots() {
+        return true;
+    }
+}
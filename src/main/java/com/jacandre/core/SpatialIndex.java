@@ -0,0 +1,260 @@
+package com.jacandre.core;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * Bucketed spatial hash over the toroidal grid.
+ * Each bucket covers a BUCKET_SIZE x BUCKET_SIZE block of cells and stores the packed
+ * cell indices (x * gridSize + y) of the entities it tracks, so a radius query only
+ * visits the buckets overlapping the query window instead of every cell in it.
+ *
+ * Buckets are allocated a grid chunk (see ChunkGeometry) at a time, the first time something in the chunk is
+ * indexed, and dropped again between ticks once the chunk's buckets are all empty, so a huge, sparsely
+ * populated world only pays for the chunks its entities are in.
+ */
+@ThreadSafe
+class SpatialIndex {
+    static final int BUCKET_SIZE = 8;
+    private static final int BLOCK_SIDE = ChunkGeometry.SIDE / BUCKET_SIZE; // buckets along a chunk's side
+    private static final int LOCK_STRIPES = 64;
+    private static final VarHandle BLOCKS = MethodHandles.arrayElementVarHandle(Block[].class);
+
+    private final int gridSize;
+    private final int bucketsPerSide;
+    private final int chunksPerSide;
+    private final Block[] blocks; // per chunk; null until something in the chunk is indexed
+    private final Object[] stripes;
+    private final AtomicInteger size = new AtomicInteger();
+
+    // The buckets of one chunk; each bucket is guarded by its lock stripe
+    private static final class Block {
+        final int[][] cells = new int[BLOCK_SIDE * BLOCK_SIDE][];
+        final int[] counts = new int[BLOCK_SIDE * BLOCK_SIDE];
+    }
+
+    SpatialIndex(int gridSize) {
+        this.gridSize = gridSize;
+        this.bucketsPerSide = (gridSize + BUCKET_SIZE - 1) / BUCKET_SIZE;
+        this.chunksPerSide = (gridSize + ChunkGeometry.SIDE - 1) / ChunkGeometry.SIDE;
+        this.blocks = new Block[new ChunkGeometry(gridSize).chunkCount()];
+        this.stripes = new Object[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+    }
+
+    void add(int cell) {
+        int bx = cell / gridSize / BUCKET_SIZE;
+        int by = cell % gridSize / BUCKET_SIZE;
+        Block block = blockForWrite(blockOf(bx, by));
+        int slot = slotOf(bx, by);
+        synchronized (stripeOf(bx, by)) {
+            int[] cells = block.cells[slot];
+            int count = block.counts[slot];
+            if (cells == null) {
+                cells = new int[4];
+            } else if (count == cells.length) {
+                cells = Arrays.copyOf(cells, count * 2);
+            }
+            cells[count] = cell;
+            block.cells[slot] = cells;
+            block.counts[slot] = count + 1;
+        }
+        size.incrementAndGet();
+    }
+
+    boolean remove(int cell) {
+        int bx = cell / gridSize / BUCKET_SIZE;
+        int by = cell % gridSize / BUCKET_SIZE;
+        Block block = (Block) BLOCKS.getAcquire(blocks, blockOf(bx, by));
+        if (block == null) {
+            return false;
+        }
+        int slot = slotOf(bx, by);
+        synchronized (stripeOf(bx, by)) {
+            int[] cells = block.cells[slot];
+            int count = block.counts[slot];
+            for (int i = 0; i < count; i++) {
+                if (cells[i] == cell) {
+                    cells[i] = cells[count - 1];
+                    block.counts[slot] = count - 1;
+                    size.decrementAndGet();
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    void move(int from, int to) {
+        if (from != to && remove(from)) {
+            add(to);
+        }
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    /**
+     * Visits every indexed cell whose wrapped offset from (cx, cy) lies within the square window of
+     * the given radius. Each cell is visited at most once, however far the window wraps.
+     */
+    void forEachInWindow(int cx, int cy, int radius, IntConsumer visitor) {
+        // A window at least as wide as the grid covers every column and row
+        boolean full = 2 * radius + 1 >= gridSize;
+        int firstBx = full ? 0 : wrap(cx - radius) / BUCKET_SIZE;
+        int firstBy = full ? 0 : wrap(cy - radius) / BUCKET_SIZE;
+        int spanX = full ? bucketsPerSide : bucketSpan(cx, radius);
+        int spanY = full ? bucketsPerSide : bucketSpan(cy, radius);
+
+        for (int i = 0; i < spanX; i++) {
+            int bx = (firstBx + i) % bucketsPerSide;
+            for (int j = 0; j < spanY; j++) {
+                int by = (firstBy + j) % bucketsPerSide;
+                Block block = (Block) BLOCKS.getAcquire(blocks, blockOf(bx, by));
+                if (block == null) continue;
+                int slot = slotOf(bx, by);
+                synchronized (stripeOf(bx, by)) {
+                    int[] cells = block.cells[slot];
+                    int count = block.counts[slot];
+                    for (int k = 0; k < count; k++) {
+                        int cell = cells[k];
+                        if (full || (inWindow(cell / gridSize, cx, radius)
+                                && inWindow(cell % gridSize, cy, radius))) {
+                            visitor.accept(cell);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Nearest indexed cell to (cx, cy) within the window that passes the filter, or -1 if there is none.
+     * Distance is planar on the wrapped coordinates, as in GridManager.findNearest; ties go to the lowest
+     * cell index, so the answer does not depend on the order cells were added in.
+     */
+    int nearest(int cx, int cy, int radius, int excludedCell, IntPredicate filter) {
+        boolean full = 2 * radius + 1 >= gridSize;
+        int firstBx = full ? 0 : wrap(cx - radius) / BUCKET_SIZE;
+        int firstBy = full ? 0 : wrap(cy - radius) / BUCKET_SIZE;
+        int spanX = full ? bucketsPerSide : bucketSpan(cx, radius);
+        int spanY = full ? bucketsPerSide : bucketSpan(cy, radius);
+
+        int best = -1;
+        long bestDistanceSq = Long.MAX_VALUE;
+        for (int i = 0; i < spanX; i++) {
+            int bx = (firstBx + i) % bucketsPerSide;
+            for (int j = 0; j < spanY; j++) {
+                int by = (firstBy + j) % bucketsPerSide;
+                Block block = (Block) BLOCKS.getAcquire(blocks, blockOf(bx, by));
+                if (block == null) continue;
+                int slot = slotOf(bx, by);
+                synchronized (stripeOf(bx, by)) {
+                    int[] cells = block.cells[slot];
+                    int count = block.counts[slot];
+                    for (int k = 0; k < count; k++) {
+                        int cell = cells[k];
+                        int x = cell / gridSize;
+                        int y = cell % gridSize;
+                        if (cell == excludedCell
+                                || !(full || (inWindow(x, cx, radius) && inWindow(y, cy, radius)))) {
+                            continue;
+                        }
+                        long dx = x - cx;
+                        long dy = y - cy;
+                        long distanceSq = dx * dx + dy * dy;
+                        boolean closer = distanceSq < bestDistanceSq || (distanceSq == bestDistanceSq && cell < best);
+                        if (closer && (filter == null || filter.test(cell))) {
+                            best = cell;
+                            bestDistanceSq = distanceSq;
+                        }
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Visits every indexed cell.
+     */
+    void forEach(IntConsumer visitor) {
+        for (int chunk = 0; chunk < blocks.length; chunk++) {
+            Block block = (Block) BLOCKS.getAcquire(blocks, chunk);
+            if (block == null) continue;
+            for (int slot = 0; slot < block.counts.length; slot++) {
+                int bx = chunk / chunksPerSide * BLOCK_SIDE + slot / BLOCK_SIDE;
+                int by = chunk % chunksPerSide * BLOCK_SIDE + slot % BLOCK_SIDE;
+                synchronized (stripeOf(bx, by)) {
+                    int[] cells = block.cells[slot];
+                    int count = block.counts[slot];
+                    for (int k = 0; k < count; k++) {
+                        visitor.accept(cells[k]);
+                    }
+                }
+            }
+        }
+    }
+
+    // Drops the buckets of chunks with nothing indexed in them; only call between ticks, when nothing is being added
+    int releaseEmptyBlocks() {
+        int released = 0;
+        for (int chunk = 0; chunk < blocks.length; chunk++) {
+            Block block = (Block) BLOCKS.getAcquire(blocks, chunk);
+            if (block != null && Arrays.stream(block.counts).allMatch(count -> count == 0)) {
+                BLOCKS.setRelease(blocks, chunk, null);
+                released++;
+            }
+        }
+        return released;
+    }
+
+    // Number of consecutive buckets (wrapping) touched by [c - radius, c + radius] on one axis
+    private int bucketSpan(int c, int radius) {
+        int lo = wrap(c - radius);
+        int hi = wrap(c + radius);
+        int first = lo / BUCKET_SIZE;
+        int last = hi / BUCKET_SIZE;
+        if (first == last && lo > hi) {
+            return bucketsPerSide; // window wraps all the way round into its starting bucket
+        }
+        return (last - first + bucketsPerSide) % bucketsPerSide + 1;
+    }
+
+    private boolean inWindow(int coord, int centre, int radius) {
+        return wrap(coord - centre + radius) <= 2 * radius;
+    }
+
+    private int blockOf(int bx, int by) {
+        return bx / BLOCK_SIDE * chunksPerSide + by / BLOCK_SIDE;
+    }
+
+    private static int slotOf(int bx, int by) {
+        return bx % BLOCK_SIDE * BLOCK_SIDE + by % BLOCK_SIDE;
+    }
+
+    private Object stripeOf(int bx, int by) {
+        return stripes[(bx * bucketsPerSide + by) % LOCK_STRIPES];
+    }
+
+    private Block blockForWrite(int chunk) {
+        Block block = (Block) BLOCKS.getAcquire(blocks, chunk);
+        if (block != null) return block;
+        Block fresh = new Block();
+        Block witness = (Block) BLOCKS.compareAndExchange(blocks, chunk, null, fresh);
+        return witness == null ? fresh : witness;
+    }
+
+    private int wrap(int v) {
+        return (v % gridSize + gridSize) % gridSize;
+    }
+}
@@ -0,0 +1,70 @@
+package com.jacandre.core;
+
+import net.jcip.annotations.Immutable;
+
+/**
+ * How a sharded run cuts the torus into strips of whole rows (x values), one per shard. Strip s holds rows
+ * [firstRow(s), firstRow(s + 1)). Cells are packed x-major, so the strips in shard order are also in cell order.
+ * Every strip must be at least haloRows wide, so the halo a shard needs only ever comes from the strips on
+ * either side of it.
+ */
+@Immutable
+final class StripLayout {
+    private final int gridSize;
+    private final int shards;
+    private final int[] ownerByRow;
+
+    StripLayout(int gridSize, int shards, int haloRows) {
+        if (shards < 1 || shards > gridSize) {
+            throw new IllegalArgumentException("Cannot cut a grid of " + gridSize + " rows into " + shards + " strips");
+        }
+        if (shards > 1 && gridSize / shards < haloRows) {
+            throw new IllegalArgumentException("Strips of " + gridSize / shards + " rows are narrower than the halo of "
+                    + haloRows + " rows; use fewer shards");
+        }
+        this.gridSize = gridSize;
+        this.shards = shards;
+        this.ownerByRow = new int[gridSize];
+        for (int shard = 0; shard < shards; shard++) {
+            for (int row = firstRow(shard); row < firstRow(shard + 1); row++) {
+                ownerByRow[row] = shard;
+            }
+        }
+    }
+
+    int shards() {
+        return shards;
+    }
+
+    int firstRow(int shard) {
+        return (int) ((long) shard * gridSize / shards);
+    }
+
+    int ownerOf(int cell) {
+        return ownerByRow[cell / gridSize];
+    }
+
+    boolean owns(int shard, int cell) {
+        return ownerOf(cell) == shard;
+    }
+
+    // The shards on either side, without duplicates: none for one shard, a single one for two
+    int[] neighbours(int shard) {
+        if (shards == 1) return new int[0];
+        int before = (shard + shards - 1) % shards;
+        int after = (shard + 1) % shards;
+        return before == after ? new int[]{after} : new int[]{before, after};
+    }
+
+    // Whether the cell lies within rows of the other shard's strip, across the wrap, so that shard needs a copy
+    boolean inHaloOf(int cell, int shard, int rows) {
+        int row = cell / gridSize;
+        if (ownerByRow[row] == shard) return false;
+        return rowDistance(row, firstRow(shard)) <= rows || rowDistance(row, firstRow(shard + 1) - 1) <= rows;
+    }
+
+    private int rowDistance(int a, int b) {
+        int d = Math.abs(a - b);
+        return Math.min(d, gridSize - d);
+    }
+}
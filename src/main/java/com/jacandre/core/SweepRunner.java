@@ -0,0 +1,337 @@
+package com.jacandre.core;
+
+import com.jacandre.export.CSVEncoder;
+import com.jacandre.export.EnsembleCSVExporter;
+import com.jacandre.models.TickSnapshot;
+import com.jacandre.termination.FixationDetector;
+import com.jacandre.termination.PopulationStabilityDetector;
+import com.jacandre.termination.RatioStabilityDetector;
+import com.jacandre.termination.TerminationDetector;
+import com.jacandre.timeline.EnsembleMetrics;
+import com.jacandre.timeline.SimulationMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import java.util.stream.LongStream;
+
+/**
+ * Runs a parameter sweep in one JVM: every combination of the varied parameter values, for every seed, each as
+ * its own Simulation with its own SimulationConfig, on a fixed pool of threads. Runs keep no history, and one
+ * summary row is handed on per run as soon as it finishes, so rows arrive in completion order; the run number
+ * gives each row's place in the sweep.
+ *
+ * In ensemble mode the seeds are replicates of the base config, and every tick of every replicate is folded
+ * into one EnsembleMetrics as it completes instead of producing a row per run. Replicates that stop before the
+ * others are held at their final state up to the ensemble's last tick.
+ *
+ * Usage: SweepRunner --vary foodReward=50,100 --vary costOfLiving=0.2,0.4 --seeds 1,2,3 --threads 4 --out sweep.csv
+ *        SweepRunner --ensemble --replicates 32 --out simulation_ensemble.csv
+ *        add --stop-on-fixation, --stop-ratio window,epsilon or --stop-population window,tolerance to end runs early
+ */
+@Slf4j
+public class SweepRunner {
+    private final SimulationConfig base;
+    private final Map<String, double[]> parameters = new LinkedHashMap<>();
+    private long[] seeds;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private GridBackend backend = GridBackend.LOCKING;
+    private final List<Supplier<TerminationDetector>> detectors = new ArrayList<>();
+
+    public SweepRunner(SimulationConfig base) {
+        this.base = base;
+        this.seeds = new long[]{base.getSeed()};
+    }
+
+    public record RunSummary(int run, SimulationConfig config, int finalTick, int agents, int helpers, int selfish,
+                             int helperBirths, int selfishBirths, int deaths, double avgEnergy, long durationMs,
+                             String stopReason) {
+    }
+
+    @FunctionalInterface
+    public interface SummarySink {
+        void accept(RunSummary summary) throws IOException;
+    }
+
+    public SweepRunner vary(String parameter, double... values) {
+        if (values.length == 0) {
+            throw new IllegalArgumentException("No values given for " + parameter);
+        }
+        for (double value : values) {
+            base.with(parameter, value); // rejects unknown names and fractional integers up front
+        }
+        parameters.put(parameter, values.clone());
+        return this;
+    }
+
+    public SweepRunner seeds(long... seeds) {
+        if (seeds.length == 0) {
+            throw new IllegalArgumentException("No seeds given");
+        }
+        this.seeds = seeds.clone();
+        return this;
+    }
+
+    public SweepRunner threads(int threads) {
+        this.threads = Math.max(1, threads);
+        return this;
+    }
+
+    // Detectors are stateful, so every run gets fresh ones from the factory
+    public SweepRunner terminateWhen(Supplier<TerminationDetector> detector) {
+        detectors.add(detector);
+        return this;
+    }
+
+    public SweepRunner backend(GridBackend backend) {
+        this.backend = backend;
+        return this;
+    }
+
+    // Row-major over the parameters in the order they were added, seeds innermost
+    public List<SimulationConfig> configs() {
+        List<SimulationConfig> configs = new ArrayList<>();
+        configs.add(base);
+        for (Map.Entry<String, double[]> parameter : parameters.entrySet()) {
+            List<SimulationConfig> expanded = new ArrayList<>(configs.size() * parameter.getValue().length);
+            for (SimulationConfig config : configs) {
+                for (double value : parameter.getValue()) {
+                    expanded.add(config.with(parameter.getKey(), value));
+                }
+            }
+            configs = expanded;
+        }
+
+        List<SimulationConfig> runs = new ArrayList<>(configs.size() * seeds.length);
+        for (SimulationConfig config : configs) {
+            for (long seed : seeds) {
+                runs.add(config.toBuilder().seed(seed).build());
+            }
+        }
+        return runs;
+    }
+
+    /**
+     * Runs the whole sweep, passing each summary to the sink on the calling thread. If a run fails the rest are
+     * cancelled and the failure is rethrown.
+     */
+    public void run(SummarySink sink) throws IOException, InterruptedException {
+        run(sink, null);
+    }
+
+    // Streams one CSV row per run to the file, flushing after each so partial sweeps are kept
+    public void run(String filename) throws IOException, InterruptedException {
+        try (CSVEncoder out = new CSVEncoder(Path.of(filename))) {
+            out.writeString("run,seed");
+            for (String parameter : parameters.keySet()) {
+                out.writeChar(',').writeString(parameter);
+            }
+            out.writeString(",final_tick,agents,helpers,selfish,helper_births,selfish_births,deaths,avg_energy,duration_ms,stop_reason")
+                    .endLine();
+
+            run(summary -> {
+                out.writeInt(summary.run()).writeChar(',').writeInt(summary.config().getSeed());
+                for (String parameter : parameters.keySet()) {
+                    out.writeChar(',');
+                    writeValue(out, summary.config().get(parameter));
+                }
+                out.writeChar(',').writeInt(summary.finalTick())
+                        .writeChar(',').writeInt(summary.agents())
+                        .writeChar(',').writeInt(summary.helpers())
+                        .writeChar(',').writeInt(summary.selfish())
+                        .writeChar(',').writeInt(summary.helperBirths())
+                        .writeChar(',').writeInt(summary.selfishBirths())
+                        .writeChar(',').writeInt(summary.deaths())
+                        .writeChar(',').writeFixed2(summary.avgEnergy())
+                        .writeChar(',').writeInt(summary.durationMs())
+                        .writeChar(',').writeQuoted(summary.stopReason())
+                        .endLine();
+                out.flush();
+            });
+        }
+    }
+
+    /**
+     * Runs every seed of the base config as a replicate and aggregates their metrics tick by tick. Varied
+     * parameters are not allowed: an ensemble describes one configuration.
+     */
+    public EnsembleMetrics runEnsemble() throws InterruptedException {
+        if (!parameters.isEmpty()) {
+            throw new IllegalStateException("An ensemble runs one configuration; remove the varied parameters");
+        }
+        EnsembleMetrics ensemble = new EnsembleMetrics();
+        List<ReplicateAggregator> aggregators = Collections.synchronizedList(new ArrayList<>());
+        try {
+            run(summary -> log.info("Replicate {} (seed {}) finished at tick {}", summary.run(), summary.config().getSeed(),
+                    summary.finalTick()), () -> {
+                ReplicateAggregator aggregator = new ReplicateAggregator(ensemble);
+                aggregators.add(aggregator);
+                return aggregator;
+            });
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // the logging sink does no I/O
+        }
+
+        int lastTick = ensemble.getLastTick();
+        for (ReplicateAggregator aggregator : aggregators) {
+            if (aggregator.last != null) {
+                ensemble.hold(aggregator.last, lastTick);
+            }
+        }
+        return ensemble;
+    }
+
+    // Folds one replicate's ticks into the ensemble and remembers its last one
+    private static final class ReplicateAggregator implements SimulationListener {
+        private final EnsembleMetrics ensemble;
+        private SimulationMetrics last; // read once the replicate's future has completed
+
+        ReplicateAggregator(EnsembleMetrics ensemble) {
+            this.ensemble = ensemble;
+        }
+
+        @Override
+        public void onTick(TickSnapshot snapshot, SimulationMetrics metrics) {
+            ensemble.add(metrics);
+            last = metrics;
+        }
+
+        @Override
+        public boolean wantsSnapshots() {
+            return false;
+        }
+    }
+
+    private void run(SummarySink sink, Supplier<SimulationListener> listeners) throws IOException, InterruptedException {
+        List<SimulationConfig> configs = configs();
+        log.info("Sweep of {} runs on {} threads", configs.size(), threads);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "sweep-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            CompletionService<RunSummary> completed = new ExecutorCompletionService<>(pool);
+            for (int run = 0; run < configs.size(); run++) {
+                int number = run;
+                SimulationConfig config = configs.get(run);
+                completed.submit(() -> runOne(number, config, listeners == null ? null : listeners.get()));
+            }
+            for (int i = 0; i < configs.size(); i++) {
+                try {
+                    sink.accept(completed.take().get());
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Sweep run failed", e.getCause());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private RunSummary runOne(int run, SimulationConfig config, SimulationListener listener) {
+        long start = System.nanoTime();
+        Simulation simulation = new Simulation(config, backend);
+        simulation.setKeepHistory(false);
+        if (listener != null) {
+            simulation.addListener(listener);
+        }
+        detectors.forEach(detector -> simulation.addTerminationDetector(detector.get()));
+        while (!simulation.isTerminated() && !simulation.getLivingAgents().isEmpty()) {
+            simulation.stepSimulation();
+        }
+        String stopReason = simulation.isTerminated() ? simulation.getTermination().reason() : "extinction";
+        long durationMs = (System.nanoTime() - start) / 1_000_000;
+        return new RunSummary(run, config, simulation.getTick(), simulation.getLivingAgents().size(),
+                simulation.getHelperCount(), simulation.getSelfishCount(), simulation.getHelperBirths(),
+                simulation.getSelfishBirths(), simulation.getTotalDeaths(), simulation.getAvgEnergy(), durationMs,
+                stopReason);
+    }
+
+    private static void writeValue(CSVEncoder out, double value) throws IOException {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.writeInt((long) value);
+        } else {
+            out.writeString(Double.toString(value));
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        SweepRunner sweep = new SweepRunner(SimulationConfig.DEFAULTS);
+        String output = null;
+        boolean ensemble = false;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--vary":
+                    String[] assignment = args[++i].split("=", 2);
+                    if (assignment.length != 2) {
+                        throw new IllegalArgumentException("Expected name=v1,v2,... but got " + args[i]);
+                    }
+                    sweep.vary(assignment[0], Arrays.stream(assignment[1].split(",")).mapToDouble(Double::parseDouble).toArray());
+                    break;
+                case "--seeds":
+                    sweep.seeds(Arrays.stream(args[++i].split(",")).mapToLong(Long::parseLong).toArray());
+                    break;
+                case "--replicates":
+                    sweep.seeds(LongStream.rangeClosed(1, Long.parseLong(args[++i])).toArray());
+                    break;
+                case "--ensemble":
+                    ensemble = true;
+                    break;
+                case "--threads":
+                    sweep.threads(Integer.parseInt(args[++i]));
+                    break;
+                case "--stop-on-fixation":
+                    sweep.terminateWhen(FixationDetector::new);
+                    break;
+                case "--stop-ratio": {
+                    String[] setting = args[++i].split(",");
+                    int window = Integer.parseInt(setting[0]);
+                    double epsilon = Double.parseDouble(setting[1]);
+                    sweep.terminateWhen(() -> new RatioStabilityDetector(window, epsilon));
+                    break;
+                }
+                case "--stop-population": {
+                    String[] setting = args[++i].split(",");
+                    int window = Integer.parseInt(setting[0]);
+                    double tolerance = Double.parseDouble(setting[1]);
+                    sweep.terminateWhen(() -> new PopulationStabilityDetector(window, tolerance));
+                    break;
+                }
+                case "--atomic-grid":
+                    sweep.backend(GridBackend.ATOMIC);
+                    break;
+                case "--out":
+                    output = args[++i];
+                    break;
+                default:
+                    System.out.println("Unknown argument: " + args[i]);
+            }
+        }
+
+        long startTime = System.nanoTime();
+        if (ensemble) {
+            output = output != null ? output : "simulation_ensemble.csv";
+            EnsembleCSVExporter.exportEnsembleToCSV(output, sweep.runEnsemble());
+        } else {
+            output = output != null ? output : "sweep.csv";
+            sweep.run(output);
+        }
+        System.out.println("Sweep of " + sweep.configs().size() + " runs written to " + output + " in "
+                + (System.nanoTime() - startTime) / 1_000_000 + " ms");
+    }
+}
@@ -0,0 +1,153 @@
+package com.jacandre.core;
+
+import com.jacandre.models.Agent;
+import com.jacandre.models.AgentStore;
+import lombok.Getter;
+import net.jcip.annotations.NotThreadSafe;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs one turn per agent on a ForkJoinPool.
+ * The torus is cut into an even number of tiles per axis and agents are binned by the tile they start the
+ * tick in. Tiles are then processed in four checkerboard phases, one per (x, y) parity, with every tile of
+ * the current phase running concurrently. A turn reads and writes only cells within two steps of its
+ * starting cell (move, then place a child or contest food next to the new cell), and tiles are at least
+ * MIN_TILE_SIZE wide, so no two agents running at the same time can touch the same cell or each other's
+ * energy. Cell locks in GridManager still arbitrate every move and food consumption.
+ *
+ * Agents born during the tick must not be added to the AgentStore while tiles are running; turns return
+ * them instead and run() hands them back, tile by tile, once every phase has finished.
+ */
+@NotThreadSafe
+class TiledTickEngine {
+    static final int MIN_TILE_SIZE = 4;
+    private static final int MAX_TILES_PER_AXIS = 64;
+
+    @FunctionalInterface
+    interface AgentTurn {
+        // Returns the agent's newborn this tick, or null
+        Agent take(Agent agent);
+    }
+
+    private final ForkJoinPool pool;
+    private final int gridSize;
+    @Getter
+    private final int tilesPerAxis;
+    private final int[][] phaseTiles;
+    private final int[] tileStart;
+    private final List<List<Agent>> tileBirths;
+    private int[] order = new int[0];
+
+    TiledTickEngine(int gridSize, ForkJoinPool pool) {
+        this.pool = pool;
+        this.gridSize = gridSize;
+
+        int tiles = Math.min(gridSize / MIN_TILE_SIZE, MAX_TILES_PER_AXIS);
+        this.tilesPerAxis = tiles - tiles % 2; // even, so parity alternates across the wrap too
+
+        int tileCount = tilesPerAxis * tilesPerAxis;
+        this.tileStart = new int[tileCount + 1];
+        this.tileBirths = new ArrayList<>(tileCount);
+        for (int i = 0; i < tileCount; i++) {
+            tileBirths.add(new ArrayList<>());
+        }
+
+        this.phaseTiles = new int[4][tileCount / 4];
+        int[] filled = new int[4];
+        for (int tx = 0; tx < tilesPerAxis; tx++) {
+            for (int ty = 0; ty < tilesPerAxis; ty++) {
+                int phase = (tx % 2) * 2 + (ty % 2);
+                phaseTiles[phase][filled[phase]++] = tx * tilesPerAxis + ty;
+            }
+        }
+    }
+
+    // Grids too small for two tiles of MIN_TILE_SIZE per axis must run sequentially
+    boolean isApplicable() {
+        return tilesPerAxis >= 2;
+    }
+
+    /**
+     * Takes one turn for every agent in slots [0, agentCount) that is on the grid, and returns the newborns
+     * in tile order.
+     */
+    List<Agent> run(AgentStore store, int agentCount, AgentTurn turn) {
+        binByTile(store, agentCount);
+
+        for (int[] tiles : phaseTiles) {
+            pool.invoke(new TileBatch(store, turn, tiles, 0, tiles.length));
+        }
+
+        List<Agent> births = new ArrayList<>();
+        for (List<Agent> tile : tileBirths) {
+            births.addAll(tile);
+            tile.clear();
+        }
+        return births;
+    }
+
+    // Counting sort of slots by starting tile into order[], with tileStart[] as the offsets
+    private void binByTile(AgentStore store, int agentCount) {
+        if (order.length < agentCount) {
+            order = new int[Math.max(agentCount, order.length * 2)];
+        }
+
+        Arrays.fill(tileStart, 0);
+        for (int slot = 0; slot < agentCount; slot++) {
+            int cell = store.getCell(slot);
+            if (cell >= 0) tileStart[tileOf(cell) + 1]++;
+        }
+        for (int tile = 0; tile < tileStart.length - 1; tile++) {
+            tileStart[tile + 1] += tileStart[tile];
+        }
+
+        int[] next = tileStart.clone();
+        for (int slot = 0; slot < agentCount; slot++) {
+            int cell = store.getCell(slot);
+            if (cell >= 0) order[next[tileOf(cell)]++] = slot;
+        }
+    }
+
+    private int tileOf(int cell) {
+        int tx = (cell / gridSize) * tilesPerAxis / gridSize;
+        int ty = (cell % gridSize) * tilesPerAxis / gridSize;
+        return tx * tilesPerAxis + ty;
+    }
+
+    private class TileBatch extends RecursiveAction {
+        private final AgentStore store;
+        private final AgentTurn turn;
+        private final int[] tiles;
+        private final int from;
+        private final int to;
+
+        TileBatch(AgentStore store, AgentTurn turn, int[] tiles, int from, int to) {
+            this.store = store;
+            this.turn = turn;
+            this.tiles = tiles;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new TileBatch(store, turn, tiles, from, mid), new TileBatch(store, turn, tiles, mid, to));
+                return;
+            }
+
+            int tile = tiles[from];
+            List<Agent> births = tileBirths.get(tile);
+            for (int i = tileStart[tile]; i < tileStart[tile + 1]; i++) {
+                Agent child = turn.take(store.getAgent(order[i]));
+                if (child != null) births.add(child);
+            }
+        }
+    }
+}
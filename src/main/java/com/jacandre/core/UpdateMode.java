@@ -0,0 +1,11 @@
+package com.jacandre.core;
+
+// How Simulation.stepSimulation schedules agent turns within a tick
+public enum UpdateMode {
+    // One agent after another on the calling thread, in slot order
+    SEQUENTIAL,
+    // Agents grouped by tile and run on a ForkJoinPool in four checkerboard phases
+    TILED_PARALLEL,
+    // Every agent decides against the frozen grid in parallel, then IntentResolver commits all intents at once
+    SYNCHRONOUS
+}
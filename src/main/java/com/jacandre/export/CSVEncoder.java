@@ -0,0 +1,151 @@
+package com.jacandre.export;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes CSV text straight into a reusable byte buffer that is flushed to a FileChannel, gzip-compressed when
+ * the file name ends in ".gz". Ints and two-decimal doubles are encoded digit by digit without going through
+ * Formatter, and produce exactly what %d and %.2f would in the default locale. Values whose rounding is too
+ * close to call in binary (ties at the third decimal), very large values, negatives and non-finite values
+ * are handed to String.format, as is everything when the default locale does not format like Locale.ROOT.
+ */
+@NotThreadSafe
+public class CSVEncoder implements AutoCloseable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final double FAST_LIMIT = 1e9;     // keeps value * 100 precise to well under TIE_MARGIN
+    private static final double TIE_MARGIN = 1e-4;
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    private final WritableByteChannel sink;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final byte[] digits = new byte[20];
+    private final boolean plainLocale;
+
+    public CSVEncoder(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        if (isCompressed(path.toString())) {
+            this.sink = Channels.newChannel(new GZIPOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+        } else {
+            this.sink = channel;
+        }
+        this.plainLocale = String.format("%d,%.2f", -1234567, 1.5).equals("-1234567,1.50");
+    }
+
+    public static boolean isCompressed(String filename) {
+        return filename.endsWith(".gz");
+    }
+
+    public CSVEncoder writeInt(long value) throws IOException {
+        if (!plainLocale) {
+            return writeString(String.format("%d", value));
+        }
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                return writeString(Long.toString(value));
+            }
+            writeChar('-');
+            value = -value;
+        }
+        int length = 0;
+        do {
+            digits[length++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        ensure(length);
+        while (length > 0) {
+            buffer.put(digits[--length]);
+        }
+        return this;
+    }
+
+    // Same text as String.format("%.2f", value)
+    public CSVEncoder writeFixed2(double value) throws IOException {
+        if (plainLocale && value >= 0 && value < FAST_LIMIT && Double.doubleToRawLongBits(value) != Long.MIN_VALUE) {
+            double scaled = value * 100;
+            double whole = Math.floor(scaled);
+            double fraction = scaled - whole;
+            if (Math.abs(fraction - 0.5) > TIE_MARGIN) {
+                long hundredths = (long) whole + (fraction > 0.5 ? 1 : 0);
+                writeInt(hundredths / 100);
+                int cents = (int) (hundredths % 100);
+                ensure(3);
+                buffer.put((byte) '.').put((byte) ('0' + cents / 10)).put((byte) ('0' + cents % 10));
+                return this;
+            }
+        }
+        return writeString(String.format("%.2f", value));
+    }
+
+    public CSVEncoder writeString(String text) throws IOException {
+        int length = text.length();
+        ensure(length);
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                // Rare non-ASCII label: encode the remainder properly
+                byte[] rest = text.substring(i).getBytes(StandardCharsets.UTF_8);
+                ensure(rest.length);
+                buffer.put(rest);
+                return this;
+            }
+            buffer.put((byte) c);
+        }
+        return this;
+    }
+
+    // One quoted field: embedded quotes are doubled and line breaks become spaces, so a row stays on one line
+    public CSVEncoder writeQuoted(String text) throws IOException {
+        writeChar('"');
+        writeString(text.replace("\"", "\"\"").replace("\r\n", " ").replace('\r', ' ').replace('\n', ' '));
+        return writeChar('"');
+    }
+
+    public CSVEncoder writeChar(char c) throws IOException {
+        ensure(1);
+        buffer.put((byte) c);
+        return this;
+    }
+
+    public CSVEncoder endLine() throws IOException {
+        ensure(LINE_SEPARATOR.length);
+        buffer.put(LINE_SEPARATOR);
+        return this;
+    }
+
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            sink.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            sink.close();
+        }
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+            if (buffer.remaining() < bytes) {
+                throw new IOException("Field of " + bytes + " bytes does not fit the encoder buffer");
+            }
+        }
+    }
+}
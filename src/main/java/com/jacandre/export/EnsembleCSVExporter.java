@@ -0,0 +1,52 @@
+package com.jacandre.export;
+
+import com.jacandre.timeline.EnsembleMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+// One row per tick: the replicate count, then mean, standard deviation and 95% CI half-width of each quantity
+@Slf4j
+public class EnsembleCSVExporter {
+    public static final String HEADER = header();
+
+    // Gzip-compressed when the filename ends in .gz
+    public static void exportEnsembleToCSV(String filename, EnsembleMetrics ensemble) throws IOException {
+        try (CSVEncoder writer = new CSVEncoder(Path.of(filename))) {
+            writer.writeString(HEADER).endLine();
+
+            for (int tick = 0; tick <= ensemble.getLastTick(); tick++) {
+                long replicates = ensemble.getReplicates(tick);
+                if (replicates == 0) continue;
+
+                writer.writeInt(tick).writeChar(',').writeInt(replicates);
+                for (int q = 0; q < EnsembleMetrics.QUANTITIES; q++) {
+                    writeValue(writer, ensemble.getMean(tick, q));
+                    writeValue(writer, ensemble.getStdDev(tick, q));
+                    writeValue(writer, ensemble.getConfidenceHalfWidth(tick, q));
+                }
+                writer.endLine();
+            }
+        }
+        log.info("Ensemble metrics exported to {}", filename);
+    }
+
+    // Empty below two replicates, where spread is undefined
+    private static void writeValue(CSVEncoder writer, double value) throws IOException {
+        writer.writeChar(',');
+        if (!Double.isNaN(value)) {
+            writer.writeFixed2(value);
+        }
+    }
+
+    private static String header() {
+        StringBuilder header = new StringBuilder("Tick Number,Replicates");
+        for (String label : EnsembleMetrics.LABELS) {
+            header.append(',').append(label).append(" Mean")
+                    .append(',').append(label).append(" SD")
+                    .append(',').append(label).append(" CI95");
+        }
+        return header.toString();
+    }
+}
@@ -3,24 +3,67 @@ package com.jacandre.export;
 import com.jacandre.timeline.SimulationMetrics;
 import lombok.extern.slf4j.Slf4j;
 
+import com.jacandre.timeline.EnergyDistribution;
+
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.nio.file.Path;
 import java.util.List;
 
 @Slf4j
 public class MetricsCSVExporter {
+    static final String HEADER = "Tick Number,Average Energy,Total Births,Total Deaths,HELPER Agents,SELFISH Agents,HELPER Births,SELFISH Births,"
+            + "HELPER Energy P10,HELPER Energy P50,HELPER Energy P90,HELPER Energy P99,"
+            + "SELFISH Energy P10,SELFISH Energy P50,SELFISH Energy P90,SELFISH Energy P99,"
+            + "HELPER Energy Bins,SELFISH Energy Bins";
+
+    // Gzip-compressed when the filename ends in .gz
     public static void exportMetricsToCSV(String filename, List<SimulationMetrics> metricsHistory) {
-        try (PrintWriter writer = new PrintWriter(filename)) {
-            writer.println("Tick Number,Average Energy,Total Births,Total Deaths,HELPER Agents,SELFISH Agents,HELPER Births,SELFISH Births,Energy Snapshot");
+        try (CSVEncoder writer = new CSVEncoder(Path.of(filename))) {
+            writer.writeString(HEADER).endLine();
 
             for (SimulationMetrics metrics : metricsHistory) {
-                writer.println(metrics.toCSVRow());
+                writeRow(writer, metrics);
             }
 
-            System.out.println("Metrics exported to " + filename);
+            log.info("Metrics exported to {}", filename);
         } catch (IOException e) {
             log.error("Export to CSV failed: {}", (Object) e.getStackTrace());
         }
     }
 
+    // Same text as metrics.toCSVRow() followed by a line separator
+    static void writeRow(CSVEncoder writer, SimulationMetrics metrics) throws IOException {
+        writer.writeInt(metrics.getTick()).writeChar(',')
+                .writeFixed2(metrics.getAvgEnergy()).writeChar(',')
+                .writeInt(metrics.getTotalBirths()).writeChar(',')
+                .writeInt(metrics.getTotalDeaths()).writeChar(',')
+                .writeInt(metrics.getHelperCount()).writeChar(',')
+                .writeInt(metrics.getSelfishCount()).writeChar(',')
+                .writeInt(metrics.getHelperBirths()).writeChar(',')
+                .writeInt(metrics.getSelfishBirths());
+        writeQuantiles(writer, metrics.getHelperEnergy());
+        writeQuantiles(writer, metrics.getSelfishEnergy());
+        writeBins(writer, metrics.getHelperEnergy());
+        writeBins(writer, metrics.getSelfishEnergy());
+        writer.endLine();
+    }
+
+    private static void writeQuantiles(CSVEncoder writer, EnergyDistribution distribution) throws IOException {
+        for (double q : EnergyDistribution.REPORTED_QUANTILES) {
+            double value = distribution.quantile(q);
+            writer.writeChar(',');
+            if (!Double.isNaN(value)) {
+                writer.writeFixed2(value);
+            }
+        }
+    }
+
+    private static void writeBins(CSVEncoder writer, EnergyDistribution distribution) throws IOException {
+        writer.writeString(",\"");
+        for (int i = 0; i < EnergyDistribution.BIN_COUNT; i++) {
+            if (i > 0) writer.writeChar(',');
+            writer.writeInt(distribution.getBin(i));
+        }
+        writer.writeChar('"');
+    }
 }
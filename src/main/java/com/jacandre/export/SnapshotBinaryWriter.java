@@ -0,0 +1,204 @@
+package com.jacandre.export;
+
+import com.jacandre.models.CellState;
+import com.jacandre.models.TickSnapshot;
+import com.jacandre.timeline.SnapshotFormat;
+import lombok.extern.slf4j.Slf4j;
+import net.jcip.annotations.NotThreadSafe;
+
+import java.awt.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.List;
+
+/**
+ * Writes grid snapshots in the binary format described by SnapshotFormat, one tick at a time.
+ * The tick index is kept in memory and written into the space reserved for it when the writer closes,
+ * so at most tickCapacity ticks can be written.
+ */
+@Slf4j
+@NotThreadSafe
+public class SnapshotBinaryWriter implements AutoCloseable {
+    private final FileChannel channel;
+    private final int gridSize;
+    private final int tickCapacity;
+    private final int[] indexTicks;
+    private final long[] indexOffsets;
+    private int tickCount;
+    private long position;
+
+    private final Map<String, Byte> strategyCodes = new HashMap<>();
+    private final List<String> strategies = new ArrayList<>();
+    // Scratch for one tick, sized by its entities: agents as (cell << 32 | arrival) so sorting keeps their values
+    private long[] agentKeys = new long[64];
+    private int[] agentCells = new int[64];
+    private byte[] codes = new byte[64];
+    private float[] energies = new float[64];
+    private int[] foodCells = new int[64];
+    private ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+
+    public SnapshotBinaryWriter(Path path, int gridSize, int tickCapacity) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.gridSize = gridSize;
+        this.tickCapacity = tickCapacity;
+        this.indexTicks = new int[tickCapacity];
+        this.indexOffsets = new long[tickCapacity];
+        this.position = SnapshotFormat.dataStart(tickCapacity);
+    }
+
+    public static void exportGridSnapshots(String filename, int gridSize, int tickCount, Iterable<TickSnapshot> snapshots) {
+        try (SnapshotBinaryWriter writer = new SnapshotBinaryWriter(Path.of(filename), gridSize, tickCount)) {
+            for (TickSnapshot snapshot : snapshots) {
+                writer.writeTick(snapshot);
+            }
+        } catch (IOException e) {
+            log.error("Failed to export binary grid snapshots", e);
+        }
+    }
+
+    public void writeTick(TickSnapshot snapshot) throws IOException {
+        if (tickCount == tickCapacity) {
+            throw new IllegalStateException("Snapshot file was sized for " + tickCapacity + " ticks");
+        }
+
+        ensureCapacity(snapshot.gridState().size());
+        int agents = 0;
+        int food = 0;
+        for (Map.Entry<Point, CellState> entry : snapshot.gridState().entrySet()) {
+            Point p = entry.getKey();
+            CellState state = entry.getValue();
+            int cell = p.x * gridSize + p.y;
+            if (state.type() == CellState.Type.AGENT) {
+                agentKeys[agents] = (long) cell << 32 | agents;
+                codes[agents] = strategyCode(state.strategy());
+                energies[agents] = (float) state.energy();
+                agents++;
+            } else {
+                foodCells[food++] = cell;
+            }
+        }
+        Arrays.sort(agentKeys, 0, agents);
+        Arrays.sort(foodCells, 0, food);
+        for (int i = 0; i < agents; i++) {
+            agentCells[i] = (int) (agentKeys[i] >>> 32);
+        }
+
+        int planeLongs = SnapshotFormat.planeLongs(gridSize);
+        boolean lists = SnapshotFormat.usesCellLists(gridSize, agents + food);
+        ByteBuffer out = reserve(9 + (lists ? 4L * (agents + food) : 16L * planeLongs) + 5L * agents);
+        out.putInt(agents).putInt(food).put(lists ? SnapshotFormat.CELL_LISTS : SnapshotFormat.PLANES);
+        if (lists) {
+            for (int i = 0; i < agents; i++) out.putInt(agentCells[i]);
+            for (int i = 0; i < food; i++) out.putInt(foodCells[i]);
+        } else {
+            putPlane(out, agentCells, agents, planeLongs);
+            putPlane(out, foodCells, food, planeLongs);
+        }
+        for (int i = 0; i < agents; i++) {
+            out.put(codes[(int) agentKeys[i]]);
+        }
+        for (int i = 0; i < agents; i++) {
+            out.putFloat(energies[(int) agentKeys[i]]);
+        }
+
+        indexTicks[tickCount] = snapshot.tick();
+        indexOffsets[tickCount] = position;
+        tickCount++;
+        position += flush(out, position);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            long strategyTableOffset = position;
+            byte[][] labels = new byte[strategies.size()][];
+            long tableBytes = 4;
+            for (int i = 0; i < labels.length; i++) {
+                labels[i] = strategies.get(i).getBytes(StandardCharsets.UTF_8);
+                tableBytes += 4 + labels[i].length;
+            }
+            ByteBuffer out = reserve(tableBytes);
+            out.putInt(labels.length);
+            for (byte[] label : labels) {
+                out.putInt(label.length).put(label);
+            }
+            flush(out, strategyTableOffset);
+
+            out = reserve(SnapshotFormat.dataStart(tickCapacity));
+            out.putInt(SnapshotFormat.MAGIC)
+                    .putInt(SnapshotFormat.VERSION)
+                    .putInt(gridSize)
+                    .putInt(tickCapacity)
+                    .putInt(tickCount)
+                    .putLong(strategyTableOffset);
+            for (int i = 0; i < tickCapacity; i++) {
+                out.putInt(i < tickCount ? indexTicks[i] : -1).putLong(i < tickCount ? indexOffsets[i] : -1L);
+            }
+            flush(out, 0);
+        } finally {
+            channel.close();
+        }
+    }
+
+    // Bitplane of ascending cells, built word by word
+    private static void putPlane(ByteBuffer out, int[] cells, int count, int planeLongs) {
+        int i = 0;
+        for (int w = 0; w < planeLongs; w++) {
+            long word = 0L;
+            for (; i < count && cells[i] >>> 6 == w; i++) {
+                word |= 1L << cells[i];
+            }
+            out.putLong(word);
+        }
+    }
+
+    private void ensureCapacity(int entities) {
+        if (entities <= agentKeys.length) return;
+        int capacity = Math.max(entities, 2 * agentKeys.length);
+        agentKeys = new long[capacity];
+        agentCells = new int[capacity];
+        codes = new byte[capacity];
+        energies = new float[capacity];
+        foodCells = new int[capacity];
+    }
+
+    private byte strategyCode(String strategy) {
+        String label = strategy == null ? "" : strategy;
+        Byte code = strategyCodes.get(label);
+        if (code == null) {
+            if (strategies.size() > Byte.MAX_VALUE) {
+                throw new IllegalStateException("Too many distinct strategies");
+            }
+            code = (byte) strategies.size();
+            strategies.add(label);
+            strategyCodes.put(label, code);
+        }
+        return code;
+    }
+
+    private ByteBuffer reserve(long bytes) {
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Record of " + bytes + " bytes is too large");
+        }
+        if (buffer.capacity() < bytes) {
+            buffer = ByteBuffer.allocate((int) Math.max(bytes, 2L * buffer.capacity()));
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    private int flush(ByteBuffer out, long at) throws IOException {
+        out.flip();
+        int written = out.remaining();
+        while (out.hasRemaining()) {
+            at += channel.write(out, at);
+        }
+        return written;
+    }
+}
@@ -0,0 +1,124 @@
+package com.jacandre.export;
+
+import com.jacandre.core.SimulationListener;
+import com.jacandre.models.TickSnapshot;
+import com.jacandre.timeline.SimulationMetrics;
+import lombok.extern.slf4j.Slf4j;
+import net.jcip.annotations.ThreadSafe;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes each tick to disk while the simulation runs.
+ * onTick hands the tick to a bounded queue and a dedicated writer thread drains it into the snapshot file and
+ * the metrics CSV. The snapshot file is written in the binary format when its name ends in ".bin" and as CSV
+ * otherwise. When the writer falls behind, onTick blocks until there is
+ * room, so memory stays bounded by the queue rather than growing with the run. A write failure stops the
+ * writer and is rethrown from the next onTick or from close.
+ */
+@Slf4j
+@ThreadSafe
+public class StreamingExporter implements SimulationListener, AutoCloseable {
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+    private record TickRecord(TickSnapshot snapshot, SimulationMetrics metrics) {
+    }
+
+    private static final TickRecord END = new TickRecord(null, null);
+
+    private final BlockingQueue<TickRecord> queue;
+    private final CSVEncoder snapshotWriter; // null when writing the binary format
+    private final SnapshotBinaryWriter binaryWriter; // null when writing CSV
+    private final CSVEncoder metricsWriter;
+    private final Thread writerThread;
+    private volatile Throwable failure;
+    private boolean closed;
+
+    public StreamingExporter(String snapshotFile, String metricsCsv, int gridSize, int maxTicks) throws IOException {
+        this(snapshotFile, metricsCsv, gridSize, maxTicks, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public StreamingExporter(String snapshotFile, String metricsCsv, int gridSize, int maxTicks, int queueCapacity)
+            throws IOException {
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        if (snapshotFile.endsWith(".bin")) {
+            this.snapshotWriter = null;
+            this.binaryWriter = new SnapshotBinaryWriter(Path.of(snapshotFile), gridSize, maxTicks);
+        } else {
+            this.snapshotWriter = new CSVEncoder(Path.of(snapshotFile));
+            this.binaryWriter = null;
+            snapshotWriter.writeString(SnapshotCSVExporter.HEADER).endLine();
+        }
+        this.metricsWriter = new CSVEncoder(Path.of(metricsCsv));
+        metricsWriter.writeString(MetricsCSVExporter.HEADER).endLine();
+
+        this.writerThread = new Thread(this::drain, "snapshot-writer");
+        writerThread.start();
+    }
+
+    @Override
+    public void onTick(TickSnapshot snapshot, SimulationMetrics metrics) {
+        TickRecord record = new TickRecord(snapshot, metrics);
+        try {
+            do {
+                rethrowFailure();
+            } while (!queue.offer(record, 100, TimeUnit.MILLISECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the snapshot writer", e);
+        }
+    }
+
+    // Waits for every queued tick to be written, then closes the files
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            while (writerThread.isAlive() && !queue.offer(END, 100, TimeUnit.MILLISECONDS)) {
+                // the writer is still draining, or has died and will never make room
+            }
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writerThread.interrupt();
+        } finally {
+            try (snapshotWriter; binaryWriter; metricsWriter) {
+                // closes the open writers, keeping the first failure
+            }
+        }
+        rethrowFailure();
+        log.info("Streaming export finished");
+    }
+
+    private void drain() {
+        try {
+            for (TickRecord record = queue.take(); record != END; record = queue.take()) {
+                if (binaryWriter != null) {
+                    binaryWriter.writeTick(record.snapshot());
+                } else {
+                    SnapshotCSVExporter.writeSnapshot(snapshotWriter, record.snapshot());
+                }
+                MetricsCSVExporter.writeRow(metricsWriter, record.metrics());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Throwable t) {
+            failure = t;
+            log.error("Snapshot writer failed", t);
+        }
+    }
+
+    private void rethrowFailure() {
+        Throwable t = failure;
+        if (t != null) {
+            throw new IllegalStateException("Snapshot writer failed", t);
+        }
+    }
+}
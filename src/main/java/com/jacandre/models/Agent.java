@@ -3,9 +3,10 @@ package com.jacandre.models;
 import com.jacandre.strategy.AgentStrategy;
 import com.jacandre.strategy.HelperStrategy;
 import com.jacandre.strategy.SelfishStrategy;
-import com.jacandre.core.Constants;
 import com.jacandre.core.GridManager;
+import com.jacandre.core.SimulationConfig;
 import com.jacandre.core.SimulationContext;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -49,35 +50,136 @@ public class Agent implements GridEntity {
     private double energy;
     private int lastReproducedTick = 0;
     private AgentStrategy strategy;
+    private int cell = -1; // packed grid cell, maintained by GridManager
+    private long key = -1; // stable, reproducible identity for random streams, assigned by Simulation
+    @Setter(AccessLevel.NONE)
+    private final double lowEnergyThreshold;
+    @Getter(AccessLevel.NONE)
+    private volatile LowEnergyListener lowEnergyListener;
+
+    // While attached, the fields above are stale and the state lives in the store's slot
+    @Setter(AccessLevel.NONE)
+    private AgentStore store;
+    @Setter(AccessLevel.NONE)
+    private int slot = -1;
 
     public Agent(AgentStrategy initialStrategy) {
+        this(initialStrategy, SimulationConfig.DEFAULTS);
+    }
+
+    public Agent(AgentStrategy initialStrategy, SimulationConfig config) {
         this.id = java.util.UUID.randomUUID().toString();
         this.strategy = initialStrategy;
-        this.energy = Constants.INITIAL_ENERGY;
+        this.energy = config.getInitialEnergy();
+        this.lowEnergyThreshold = config.getLowEnergyThreshold();
     }
 
     public void act(GridManager grid, SimulationContext context) {
-        if (strategy != null) {
-            strategy.execute(this, grid, context);
+        AgentStrategy current = getStrategy();
+        if (current != null) {
+            current.execute(this, grid, context);
         }
     }
 
     // GETTERS
 
+    public double getEnergy() {
+        return store == null ? energy : store.getEnergy(slot);
+    }
+
+    public AgentStrategy getStrategy() {
+        return store == null ? strategy : store.getStrategy(slot);
+    }
+
+    public int getLastReproducedTick() {
+        return store == null ? lastReproducedTick : store.getLastReproducedTick(slot);
+    }
+
+    public int getCell() {
+        return store == null ? cell : store.getCell(slot);
+    }
+
+    public boolean isStored() {
+        return store != null;
+    }
+
     public boolean isHelper() {
-        return this.strategy instanceof HelperStrategy;
+        return getStrategy() instanceof HelperStrategy;
     }
 
     public boolean isSelfish() {
-        return this.strategy instanceof SelfishStrategy;
+        return getStrategy() instanceof SelfishStrategy;
     }
 
     // MODIFIERS
+    public void setEnergy(double energy) {
+        if (store == null) {
+            double before = this.energy;
+            this.energy = energy;
+            energyChanged(before, energy);
+        } else {
+            store.setEnergy(slot, energy);
+        }
+    }
+
+    public void setStrategy(AgentStrategy strategy) {
+        if (store == null) this.strategy = strategy;
+        else store.setStrategy(slot, strategy);
+    }
+
+    public void setLastReproducedTick(int lastReproducedTick) {
+        if (store == null) this.lastReproducedTick = lastReproducedTick;
+        else store.setLastReproducedTick(slot, lastReproducedTick);
+    }
+
+    public void setCell(int cell) {
+        if (store == null) this.cell = cell;
+        else store.setCell(slot, cell);
+    }
+
     public void decreaseEnergy(double cost) {
-        this.energy -= cost;
+        if (store == null) setEnergy(energy - cost);
+        else store.addEnergy(slot, -cost);
     }
 
     public void increaseEnergy(double reward) {
-        this.energy += reward;
+        if (store == null) setEnergy(energy + reward);
+        else store.addEnergy(slot, reward);
+    }
+
+    public boolean isLowEnergy() {
+        return isLowEnergy(getEnergy());
+    }
+
+    public boolean isLowEnergy(double energy) {
+        return energy < lowEnergyThreshold;
+    }
+
+    // Every energy write, here or in the store, reports through this so the listener sees each crossing
+    void energyChanged(double before, double after) {
+        LowEnergyListener listener = lowEnergyListener;
+        if (listener != null && isLowEnergy(before) != isLowEnergy(after)) {
+            listener.lowEnergyChanged(this, isLowEnergy(after));
+        }
+    }
+
+    // STORE BINDING (AgentStore only)
+
+    void attach(AgentStore store, int slot) {
+        this.store = store;
+        this.slot = slot;
+    }
+
+    void moveToSlot(int slot) {
+        this.slot = slot;
+    }
+
+    void detach(double energy, AgentStrategy strategy, int lastReproducedTick, int cell) {
+        this.energy = energy;
+        this.strategy = strategy;
+        this.lastReproducedTick = lastReproducedTick;
+        this.cell = cell;
+        this.store = null;
+        this.slot = -1;
     }
 }
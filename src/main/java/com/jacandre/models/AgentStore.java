@@ -0,0 +1,233 @@
+package com.jacandre.models;
+
+import com.jacandre.core.SimulationConfig;
+import com.jacandre.strategy.AgentStrategy;
+import com.jacandre.strategy.HelperStrategy;
+import com.jacandre.strategy.SelfishStrategy;
+import net.jcip.annotations.NotThreadSafe;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Struct-of-arrays storage for a population of agents.
+ * Each agent occupies a dense slot in [0, size()); its energy, strategy code, last reproduction tick
+ * and packed grid cell live in parallel primitive arrays, and the Agent object becomes a thin handle
+ * onto its slot. Removal moves the last slot into the freed one, so slots stay contiguous and whole-
+ * population passes are plain linear scans.
+ *
+ * Adding and removing agents must happen on one thread; per-slot reads and writes may be concurrent
+ * as long as no two threads touch the same slot.
+ */
+@NotThreadSafe
+public class AgentStore {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private double[] energy = new double[INITIAL_CAPACITY];
+    private byte[] strategy = new byte[INITIAL_CAPACITY];
+    private int[] lastReproducedTick = new int[INITIAL_CAPACITY];
+    private int[] cell = new int[INITIAL_CAPACITY];
+    private Agent[] handles = new Agent[INITIAL_CAPACITY];
+    private int size;
+
+    private volatile AgentStrategy[] strategyTable = {null};
+
+    private final List<Agent> view = new HandleList();
+    private final double lowEnergyThreshold;
+
+    public AgentStore() {
+        this(SimulationConfig.DEFAULTS.getLowEnergyThreshold());
+    }
+
+    // Every agent added must share the threshold, so whole-store passes can spot crossings without the handles
+    public AgentStore(double lowEnergyThreshold) {
+        this.lowEnergyThreshold = lowEnergyThreshold;
+    }
+
+    /**
+     * Moves the agent's state into a new slot at the end of the store.
+     */
+    public int add(Agent agent) {
+        if (agent.isStored()) {
+            throw new IllegalStateException("Agent " + agent.getId() + " already belongs to a store");
+        }
+        if (agent.getLowEnergyThreshold() != lowEnergyThreshold) {
+            throw new IllegalArgumentException("Agent " + agent.getId() + " has low-energy threshold "
+                    + agent.getLowEnergyThreshold() + ", the store " + lowEnergyThreshold);
+        }
+        ensureCapacity(size + 1);
+
+        int slot = size++;
+        energy[slot] = agent.getEnergy();
+        strategy[slot] = codeOf(agent.getStrategy());
+        lastReproducedTick[slot] = agent.getLastReproducedTick();
+        cell[slot] = agent.getCell();
+        handles[slot] = agent;
+        agent.attach(this, slot);
+        return slot;
+    }
+
+    /**
+     * Releases the agent's slot, copying its state back into the handle so it stays readable.
+     */
+    public void remove(Agent agent) {
+        if (agent.getStore() != this) {
+            return;
+        }
+        removeSlot(agent.getSlot());
+    }
+
+    public void removeSlot(int slot) {
+        Agent removed = handles[slot];
+        removed.detach(energy[slot], strategyTable[strategy[slot]], lastReproducedTick[slot], cell[slot]);
+
+        int last = --size;
+        if (slot != last) {
+            energy[slot] = energy[last];
+            strategy[slot] = strategy[last];
+            lastReproducedTick[slot] = lastReproducedTick[last];
+            cell[slot] = cell[last];
+            handles[slot] = handles[last];
+            handles[slot].moveToSlot(slot);
+        }
+        handles[last] = null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public Agent getAgent(int slot) {
+        return handles[slot];
+    }
+
+    // Live, read-only view of the handles in slot order
+    public List<Agent> asList() {
+        return view;
+    }
+
+    public double getEnergy(int slot) {
+        return energy[slot];
+    }
+
+    public void setEnergy(int slot, double value) {
+        double before = energy[slot];
+        energy[slot] = value;
+        handles[slot].energyChanged(before, value);
+    }
+
+    public void addEnergy(int slot, double delta) {
+        setEnergy(slot, energy[slot] + delta);
+    }
+
+    /**
+     * Subtracts the cost from every slot in [0, count).
+     */
+    public void decreaseEnergyAll(double cost, int count) {
+        double[] e = energy;
+        for (int slot = 0; slot < count; slot++) {
+            double before = e[slot];
+            double after = before - cost;
+            e[slot] = after;
+            if ((after < lowEnergyThreshold) != (before < lowEnergyThreshold)) {
+                handles[slot].energyChanged(before, after);
+            }
+        }
+    }
+
+    public AgentStrategy getStrategy(int slot) {
+        return strategyTable[strategy[slot]];
+    }
+
+    public void setStrategy(int slot, AgentStrategy value) {
+        strategy[slot] = codeOf(value);
+    }
+
+    public byte getStrategyCode(int slot) {
+        return strategy[slot];
+    }
+
+    // Code from getStrategyCode of this store
+    public void setStrategyCode(int slot, byte code) {
+        strategy[slot] = code;
+    }
+
+    public boolean isHelper(int slot) {
+        return strategyTable[strategy[slot]] instanceof HelperStrategy;
+    }
+
+    public boolean isSelfish(int slot) {
+        return strategyTable[strategy[slot]] instanceof SelfishStrategy;
+    }
+
+    public int getLastReproducedTick(int slot) {
+        return lastReproducedTick[slot];
+    }
+
+    public void setLastReproducedTick(int slot, int tick) {
+        lastReproducedTick[slot] = tick;
+    }
+
+    public int getCell(int slot) {
+        return cell[slot];
+    }
+
+    public void setCell(int slot, int value) {
+        cell[slot] = value;
+    }
+
+    /**
+     * Small code for a strategy instance, registering it on first use. Code 0 is reserved for no strategy.
+     */
+    public synchronized byte codeOf(AgentStrategy value) {
+        if (value == null) {
+            return 0;
+        }
+        AgentStrategy[] table = strategyTable;
+        for (int code = 1; code < table.length; code++) {
+            if (table[code] == value) {
+                return (byte) code;
+            }
+        }
+        if (table.length > Byte.MAX_VALUE) {
+            throw new IllegalStateException("Too many distinct strategy instances");
+        }
+        table = Arrays.copyOf(table, table.length + 1);
+        table[table.length - 1] = value;
+        strategyTable = table;
+        return (byte) (table.length - 1);
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= handles.length) {
+            return;
+        }
+        int capacity = Math.max(required, handles.length * 2);
+        energy = Arrays.copyOf(energy, capacity);
+        strategy = Arrays.copyOf(strategy, capacity);
+        lastReproducedTick = Arrays.copyOf(lastReproducedTick, capacity);
+        cell = Arrays.copyOf(cell, capacity);
+        handles = Arrays.copyOf(handles, capacity);
+    }
+
+    private class HandleList extends AbstractList<Agent> implements RandomAccess {
+        @Override
+        public Agent get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return handles[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
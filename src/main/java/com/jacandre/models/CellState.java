@@ -0,0 +1,12 @@
+package com.jacandre.models;
+
+// Immutable value of one occupied cell at the moment it was recorded
+public record CellState(Type type, String strategy, double energy) {
+    public enum Type { AGENT, FOOD }
+
+    public static final CellState FOOD = new CellState(Type.FOOD, null, 0.0);
+
+    public static CellState agent(String strategy, double energy) {
+        return new CellState(Type.AGENT, strategy, energy);
+    }
+}
@@ -1,6 +1,6 @@
 package com.jacandre.models;
 
-import com.jacandre.core.Constants;
+import com.jacandre.core.SimulationConfig;
 import lombok.Getter;
 
 import java.util.UUID;
@@ -9,20 +9,34 @@ import java.util.UUID;
 public class Food implements GridEntity {
     private final String id;
     private final double energyValue;
-    private int age;
+    private final int lifespan;
+    private int spawnTick;
 
     public Food() {
+        this(SimulationConfig.DEFAULTS);
+    }
+
+    public Food(SimulationConfig config) {
         this.id = UUID.randomUUID().toString();
-        this.energyValue = Constants.FOOD_REWARD;
-        this.age = 0;
+        this.energyValue = config.getFoodReward();
+        this.lifespan = config.getFoodLifespan();
     }
 
-    public void ageOneTick() {
-        age++;
+    // Set by GridManager when the food is placed
+    public void setSpawnTick(int spawnTick) {
+        this.spawnTick = spawnTick;
     }
 
-    public boolean isExpired() {
-        return age > Constants.FOOD_LIFESPAN;
+    public int getAge(int tick) {
+        return tick - spawnTick;
     }
-}
 
+    // First tick on which the food is gone
+    public int getExpiryTick() {
+        return spawnTick + lifespan + 1;
+    }
+
+    public boolean isExpired(int tick) {
+        return getAge(tick) > lifespan;
+    }
+}
@@ -0,0 +1,7 @@
+package com.jacandre.models;
+
+// Notified when an agent's energy crosses LOW_ENERGY_THRESHOLD, in either direction
+@FunctionalInterface
+public interface LowEnergyListener {
+    void lowEnergyChanged(Agent agent, boolean low);
+}
@@ -1,12 +1,13 @@
 package com.jacandre.models;
 
 import java.awt.*;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Map;
 
-public record TickSnapshot(int tick, Map<Point, GridEntity> gridState) {
-    public TickSnapshot(int tick, Map<Point, GridEntity> gridState) {
+// The occupied cells of the grid at the end of a tick, as values captured at that tick
+public record TickSnapshot(int tick, Map<Point, CellState> gridState) {
+    public TickSnapshot(int tick, Map<Point, CellState> gridState) {
         this.tick = tick;
-        this.gridState = new HashMap<>(gridState);
+        this.gridState = Collections.unmodifiableMap(gridState);
     }
 }
@@ -6,4 +6,13 @@ import com.jacandre.models.Agent;
 
 public interface AgentStrategy {
     void execute(Agent agent, GridManager grid, SimulationContext context);
+
+    /**
+     * Read-only counterpart of execute for SYNCHRONOUS ticks: records what the agent wants to do in intents
+     * without touching the grid or any energy. Called concurrently for different agents against a grid that
+     * does not change until every agent has decided.
+     */
+    default void decide(Agent agent, GridManager grid, SimulationContext context, IntentBuffer intents) {
+        intents.idle(agent);
+    }
 }
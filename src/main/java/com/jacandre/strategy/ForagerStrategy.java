@@ -1,41 +1,61 @@
 package com.jacandre.strategy;
 
-import com.jacandre.core.Constants;
 import com.jacandre.core.GridManager;
 import com.jacandre.core.SimulationContext;
 import com.jacandre.models.Agent;
 import com.jacandre.models.Food;
 import com.jacandre.models.GridEntity;
 
-import java.awt.*;
-import java.util.List;
-
 public class ForagerStrategy implements AgentStrategy {
     @Override
     public void execute(Agent agent, GridManager grid, SimulationContext context) {
-        Point pos = grid.getPositionOf(agent);
-        List<Point> neighbours = grid.getNeighbourPositions(pos, 1);
-
-        for (Point p : neighbours) {
-            GridEntity entity = grid.getEntityAt(p);
-            if (entity instanceof Food) {
-                grid.removeEntity(entity);
-                grid.releasePosition(p);
-                agent.increaseEnergy(Constants.FOOD_REWARD);
-
-                if (grid.moveEntity(agent, p)) {
-                    agent.decreaseEnergy(Constants.MOVE_COST);
+        int pos = grid.getCellOf(agent);
+
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                if (dx == 0 && dy == 0) continue;
+
+                int p = grid.neighbourCell(pos, dx, dy);
+                GridEntity entity = grid.getEntityAt(p);
+                if (entity instanceof Food) {
+                    grid.removeEntity(entity);
+                    agent.increaseEnergy(grid.getConfig().getFoodReward());
+
+                    if (grid.moveEntity(agent, p)) {
+                        agent.decreaseEnergy(grid.getConfig().getMoveCost());
+                    }
+                    return;
                 }
-                return;
             }
         }
 
-        List<Point> emptyNeighbours = grid.getEmptyNeighbours(pos, 1);
-        if (!emptyNeighbours.isEmpty()) {
-            Point target = emptyNeighbours.get(context.random().nextInt(emptyNeighbours.size()));
-            if (grid.moveEntity(agent, target)) {
-                agent.decreaseEnergy(Constants.MOVE_COST);
+        int target = grid.randomEmptyNeighbour(pos, context.random());
+        if (target >= 0 && grid.moveEntity(agent, target)) {
+            agent.decreaseEnergy(grid.getConfig().getMoveCost());
+        }
+    }
+
+    @Override
+    public void decide(Agent agent, GridManager grid, SimulationContext context, IntentBuffer intents) {
+        int pos = grid.getCellOf(agent);
+
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                if (dx == 0 && dy == 0) continue;
+
+                int p = grid.neighbourCell(pos, dx, dy);
+                if (grid.getEntityAt(p) instanceof Food) {
+                    intents.consume(agent, p);
+                    return;
+                }
             }
         }
+
+        int target = grid.randomEmptyNeighbour(pos, context.random());
+        if (target >= 0) {
+            intents.move(agent, target);
+        } else {
+            intents.idle(agent);
+        }
     }
 }
@@ -1,40 +1,28 @@
 package com.jacandre.strategy;
 
-import com.jacandre.core.Constants;
 import com.jacandre.core.GridManager;
 import com.jacandre.core.SimulationContext;
 import com.jacandre.models.Agent;
 import com.jacandre.models.GridEntity;
 import lombok.extern.slf4j.Slf4j;
 
-import java.awt.*;
-import java.util.Comparator;
-import java.util.List;
-import java.util.Optional;
-
 @Slf4j
 public class HelperStrategy implements AgentStrategy {
 
     @Override
     public void execute(Agent agent, GridManager grid, SimulationContext context) {
-        Point pos = grid.getPositionOf(agent);
-        if (pos == null) return;
+        int pos = grid.getCellOf(agent);
+        if (pos < 0) return;
 
         // 1. Scan for low-energy agents within vision radius
-        List<Point> candidates = grid.getEntitiesOfType(pos, Constants.VISION_RADIUS, Agent.class);
-        Optional<Point> nearestLowEnergy = candidates.stream()
-                .filter(p -> {
-                    GridEntity entity = grid.getEntityAt(p);
-                    return entity instanceof Agent other && other.getEnergy() < Constants.LOW_ENERGY_THRESHOLD;
-                })
-                .min(Comparator.comparingDouble(pos::distanceSq));
+        int nearestLowEnergy = grid.findNearestLowEnergyAgent(pos, grid.getConfig().getVisionRadius());
 
-        if (nearestLowEnergy.isPresent()) {
-            Point target = grid.stepToward(pos, nearestLowEnergy.get());
-            GridEntity entity = grid.getEntityAt(nearestLowEnergy.get());
+        if (nearestLowEnergy >= 0) {
+            int target = grid.stepToward(pos, nearestLowEnergy);
+            GridEntity entity = grid.getEntityAt(nearestLowEnergy);
 
-            if (entity instanceof Agent other && pos.distance(nearestLowEnergy.get()) <= 1.0) {
-                double transfer = Constants.ASSIST_COST;
+            if (entity instanceof Agent other && grid.planarDistanceSq(pos, nearestLowEnergy) <= 1) {
+                double transfer = grid.getConfig().getAssistCost();
 
                 if (agent.getEnergy() > transfer) {
                     agent.decreaseEnergy(transfer);
@@ -47,18 +35,49 @@ public class HelperStrategy implements AgentStrategy {
             }
 
             if (!grid.isOccupied(target) && grid.moveEntity(agent, target)) {
-                agent.decreaseEnergy(Constants.MOVE_COST);
+                agent.decreaseEnergy(grid.getConfig().getMoveCost());
                 return;
             }
         }
 
         // 2. Fallback to random movement
-        List<Point> emptyNeighbours = grid.getEmptyNeighbours(pos, 1);
-        if (!emptyNeighbours.isEmpty()) {
-            Point target = emptyNeighbours.get(context.random().nextInt(emptyNeighbours.size()));
-            if (grid.moveEntity(agent, target)) {
-                agent.decreaseEnergy(Constants.MOVE_COST);
+        int target = grid.randomEmptyNeighbour(pos, context.random());
+        if (target >= 0 && grid.moveEntity(agent, target)) {
+            agent.decreaseEnergy(grid.getConfig().getMoveCost());
+        }
+    }
+
+    @Override
+    public void decide(Agent agent, GridManager grid, SimulationContext context, IntentBuffer intents) {
+        int pos = grid.getCellOf(agent);
+        if (pos < 0) {
+            intents.idle(agent);
+            return;
+        }
+
+        int nearestLowEnergy = grid.findNearestLowEnergyAgent(pos, grid.getConfig().getVisionRadius());
+        if (nearestLowEnergy >= 0) {
+            if (grid.planarDistanceSq(pos, nearestLowEnergy) <= 1) {
+                if (agent.getEnergy() > grid.getConfig().getAssistCost()) {
+                    intents.assist(agent, nearestLowEnergy);
+                } else {
+                    intents.idle(agent);
+                }
+                return;
             }
+
+            int target = grid.stepToward(pos, nearestLowEnergy);
+            if (!grid.isOccupied(target)) {
+                intents.move(agent, target);
+                return;
+            }
+        }
+
+        int target = grid.randomEmptyNeighbour(pos, context.random());
+        if (target >= 0) {
+            intents.move(agent, target);
+        } else {
+            intents.idle(agent);
         }
     }
 }
@@ -0,0 +1,12 @@
+package com.jacandre.strategy;
+
+// What an agent asks to do in a SYNCHRONOUS tick; the target cell is recorded alongside in IntentBuffer
+public enum Intent {
+    IDLE,
+    // Step into an empty neighbouring cell
+    MOVE,
+    // Eat the food in a neighbouring cell and step into it
+    CONSUME,
+    // Give ASSIST_COST energy to the agent in a neighbouring cell
+    ASSIST
+}
@@ -0,0 +1,68 @@
+package com.jacandre.strategy;
+
+import com.jacandre.models.Agent;
+
+import java.util.Arrays;
+
+/**
+ * Per-slot record of the intents agents emit during the read phase of a SYNCHRONOUS tick.
+ * Each agent writes only its own AgentStore slot, so different agents may decide concurrently.
+ */
+public class IntentBuffer {
+    private byte[] intents = new byte[0];
+    private int[] targets = new int[0];
+    private int[] birthTargets = new int[0];
+    private static final Intent[] INTENTS = Intent.values();
+
+    // Clears the first agentCount slots to IDLE with no birth
+    public void reset(int agentCount) {
+        if (intents.length < agentCount) {
+            int capacity = Math.max(agentCount, intents.length * 2);
+            intents = new byte[capacity];
+            targets = new int[capacity];
+            birthTargets = new int[capacity];
+        }
+        Arrays.fill(intents, 0, agentCount, (byte) Intent.IDLE.ordinal());
+        Arrays.fill(targets, 0, agentCount, -1);
+        Arrays.fill(birthTargets, 0, agentCount, -1);
+    }
+
+    public void idle(Agent agent) {
+        set(agent, Intent.IDLE, -1);
+    }
+
+    public void move(Agent agent, int cell) {
+        set(agent, Intent.MOVE, cell);
+    }
+
+    public void consume(Agent agent, int foodCell) {
+        set(agent, Intent.CONSUME, foodCell);
+    }
+
+    public void assist(Agent agent, int recipientCell) {
+        set(agent, Intent.ASSIST, recipientCell);
+    }
+
+    public void reproduce(Agent agent, int childCell) {
+        birthTargets[agent.getSlot()] = childCell;
+    }
+
+    public Intent getIntent(int slot) {
+        return INTENTS[intents[slot]];
+    }
+
+    public int getTarget(int slot) {
+        return targets[slot];
+    }
+
+    // Cell the agent wants to place a child in, or -1
+    public int getBirthTarget(int slot) {
+        return birthTargets[slot];
+    }
+
+    private void set(Agent agent, Intent intent, int cell) {
+        int slot = agent.getSlot();
+        intents[slot] = (byte) intent.ordinal();
+        targets[slot] = cell;
+    }
+}
@@ -0,0 +1,16 @@
+package com.jacandre.termination;
+
+import com.jacandre.timeline.SimulationMetrics;
+
+// Stops once either strategy has died out; with both gone the run has gone extinct
+public class FixationDetector implements TerminationDetector {
+    @Override
+    public String onTick(SimulationMetrics metrics) {
+        int helpers = metrics.getHelperCount();
+        int selfish = metrics.getSelfishCount();
+        if (helpers == 0 && selfish == 0) return "extinction";
+        if (selfish == 0) return "fixation: HELPER";
+        if (helpers == 0) return "fixation: SELFISH";
+        return null;
+    }
+}
@@ -0,0 +1,29 @@
+package com.jacandre.termination;
+
+import com.jacandre.timeline.SimulationMetrics;
+import net.jcip.annotations.NotThreadSafe;
+
+import java.util.Locale;
+
+// Stops once the population has stayed within a fraction (tolerance) of its peak over the last window ticks
+@NotThreadSafe
+public class PopulationStabilityDetector implements TerminationDetector {
+    private final int window;
+    private final double tolerance;
+    private final SlidingRange range;
+
+    public PopulationStabilityDetector(int window, double tolerance) {
+        this.window = window;
+        this.tolerance = tolerance;
+        this.range = new SlidingRange(window);
+    }
+
+    @Override
+    public String onTick(SimulationMetrics metrics) {
+        range.add(metrics.getHelperCount() + metrics.getSelfishCount());
+        if (range.isFull() && range.max() > 0 && range.max() - range.min() <= tolerance * range.max()) {
+            return String.format(Locale.ROOT, "stable population: %d-%d agents over %d ticks", (int) range.min(), (int) range.max(), window);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,34 @@
+package com.jacandre.termination;
+
+import com.jacandre.timeline.SimulationMetrics;
+import net.jcip.annotations.NotThreadSafe;
+
+import java.util.Locale;
+
+// Stops once the HELPER share of the population has stayed within epsilon over the last window ticks
+@NotThreadSafe
+public class RatioStabilityDetector implements TerminationDetector {
+    private final int window;
+    private final double epsilon;
+    private final SlidingRange range;
+
+    public RatioStabilityDetector(int window, double epsilon) {
+        this.window = window;
+        this.epsilon = epsilon;
+        this.range = new SlidingRange(window);
+    }
+
+    @Override
+    public String onTick(SimulationMetrics metrics) {
+        int total = metrics.getHelperCount() + metrics.getSelfishCount();
+        if (total == 0) {
+            range.clear(); // no ratio to speak of
+            return null;
+        }
+        range.add((double) metrics.getHelperCount() / total);
+        if (range.isFull() && range.max() - range.min() <= epsilon) {
+            return String.format(Locale.ROOT, "stable ratio: HELPER share %.3f-%.3f over %d ticks", range.min(), range.max(), window);
+        }
+        return null;
+    }
+}
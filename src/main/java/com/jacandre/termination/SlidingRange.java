@@ -0,0 +1,61 @@
+package com.jacandre.termination;
+
+import net.jcip.annotations.NotThreadSafe;
+
+/**
+ * Minimum and maximum of the last n values, kept with two monotonic queues so each add is amortised O(1).
+ */
+@NotThreadSafe
+class SlidingRange {
+    private final int window;
+    private final double[] values;
+    private final long[] minQueue; // positions whose values increase from head to tail
+    private final long[] maxQueue; // positions whose values decrease from head to tail
+    private long minHead, minTail, maxHead, maxTail;
+    private long added;
+
+    SlidingRange(int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("Window must hold at least one tick, got " + window);
+        }
+        this.window = window;
+        this.values = new double[window];
+        this.minQueue = new long[window];
+        this.maxQueue = new long[window];
+    }
+
+    void add(double value) {
+        long position = added++;
+        values[(int) (position % window)] = value;
+
+        long oldest = position - window + 1;
+        if (minHead < minTail && minQueue[(int) (minHead % window)] < oldest) minHead++;
+        if (maxHead < maxTail && maxQueue[(int) (maxHead % window)] < oldest) maxHead++;
+
+        while (minHead < minTail && valueAt(minQueue[(int) ((minTail - 1) % window)]) >= value) minTail--;
+        minQueue[(int) (minTail++ % window)] = position;
+        while (maxHead < maxTail && valueAt(maxQueue[(int) ((maxTail - 1) % window)]) <= value) maxTail--;
+        maxQueue[(int) (maxTail++ % window)] = position;
+    }
+
+    void clear() {
+        added = 0;
+        minHead = minTail = maxHead = maxTail = 0;
+    }
+
+    boolean isFull() {
+        return added >= window;
+    }
+
+    double min() {
+        return valueAt(minQueue[(int) (minHead % window)]);
+    }
+
+    double max() {
+        return valueAt(maxQueue[(int) (maxHead % window)]);
+    }
+
+    private double valueAt(long position) {
+        return values[(int) (position % window)];
+    }
+}
@@ -0,0 +1,4 @@
+package com.jacandre.termination;
+
+// Why a run stopped and the last tick it completed
+public record Termination(int tick, String reason) {}
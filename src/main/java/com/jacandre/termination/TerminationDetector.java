@@ -0,0 +1,13 @@
+package com.jacandre.termination;
+
+import com.jacandre.timeline.SimulationMetrics;
+
+/**
+ * Watches a run tick by tick and decides when it has nothing left to show.
+ * Detectors keep their own incremental state, so each run needs its own instances.
+ */
+@FunctionalInterface
+public interface TerminationDetector {
+    // Returns why the run should stop after this tick, or null to carry on
+    String onTick(SimulationMetrics metrics);
+}
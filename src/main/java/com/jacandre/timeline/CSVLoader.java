@@ -1,32 +1,21 @@
 package com.jacandre.timeline;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.zip.GZIPInputStream;
 
 public class CSVLoader {
     public static List<GridSnapshot> loadSnapshots(String filename) throws IOException {
         Map<Integer, List<RenderableEntity>> tickMap = new HashMap<>();
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
+        try (BufferedReader reader = openReader(filename)) {
             reader.readLine(); // skip header
             String line;
             while ((line = reader.readLine()) != null) {
                 String[] parts = line.split(",");
                 int tick = Integer.parseInt(parts[0]);
-                int x = Integer.parseInt(parts[1]);
-                int y = Integer.parseInt(parts[2]);
-                double energy = parts[3].isEmpty() ? 0.0 : Double.parseDouble(parts[3]);
-                String strategy = parts[4];
-                String type = parts[5];
-
-                RenderableEntity entity = new RenderableEntity();
-                entity.x = x;
-                entity.y = y;
-                entity.energy = energy;
-                entity.strategy = strategy;
-                entity.type = type;
-
-                tickMap.computeIfAbsent(tick, t -> new ArrayList<>()).add(entity);
+                tickMap.computeIfAbsent(tick, t -> new ArrayList<>()).add(parseEntity(parts));
             }
         }
 
@@ -38,4 +27,26 @@ public class CSVLoader {
         snapshots.sort(Comparator.comparingInt(s -> s.tick));
         return snapshots;
     }
+
+    // Decompresses on the fly when the filename ends in .gz
+    public static BufferedReader openReader(String filename) throws IOException {
+        return new BufferedReader(new InputStreamReader(openStream(filename), StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    // Raw bytes, decompressed when the filename ends in .gz; callers do their own buffering
+    public static InputStream openStream(String filename) throws IOException {
+        InputStream in = new FileInputStream(filename);
+        return filename.endsWith(".gz") ? new GZIPInputStream(in, 1 << 16) : in;
+    }
+
+    // One snapshot CSV row, already split on commas: tick,x,y,energy,strategy,type
+    static RenderableEntity parseEntity(String[] parts) {
+        RenderableEntity entity = new RenderableEntity();
+        entity.x = Integer.parseInt(parts[1]);
+        entity.y = Integer.parseInt(parts[2]);
+        entity.energy = parts[3].isEmpty() ? 0.0 : Double.parseDouble(parts[3]);
+        entity.strategy = parts[4];
+        entity.type = parts[5];
+        return entity;
+    }
 }
@@ -0,0 +1,117 @@
+package com.jacandre.timeline;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Energy of one group of agents at one tick: counts in fixed-width bins plus a quantile sketch.
+ * Its size does not depend on how many agents were added. Only the bins and REPORTED_QUANTILES are exported,
+ * so a distribution read back from CSV carries those values but no sketch and cannot be merged further.
+ */
+@NotThreadSafe
+public class EnergyDistribution {
+    public static final int BIN_COUNT = 10;
+    public static final double BIN_WIDTH = 10.0; // the last bin also holds everything above its range
+    public static final double[] REPORTED_QUANTILES = {0.10, 0.50, 0.90, 0.99};
+
+    private final int[] bins;
+    private final QuantileSketch sketch;
+    private final double[] reported; // only set when read back without a sketch
+
+    public EnergyDistribution() {
+        this.bins = new int[BIN_COUNT];
+        this.sketch = new QuantileSketch();
+        this.reported = null;
+    }
+
+    private EnergyDistribution(int[] bins, QuantileSketch sketch) {
+        this.bins = bins;
+        this.sketch = sketch;
+        this.reported = null;
+    }
+
+    private EnergyDistribution(int[] bins, double[] reported) {
+        this.bins = bins;
+        this.sketch = null;
+        this.reported = reported;
+    }
+
+    // Rebuilds an exported distribution from its bins and its REPORTED_QUANTILES values
+    public static EnergyDistribution fromSummary(int[] bins, double[] reportedQuantiles) {
+        if (bins.length != BIN_COUNT || reportedQuantiles.length != REPORTED_QUANTILES.length) {
+            throw new IllegalArgumentException("Expected " + BIN_COUNT + " bins and "
+                    + REPORTED_QUANTILES.length + " quantiles");
+        }
+        return new EnergyDistribution(bins.clone(), reportedQuantiles.clone());
+    }
+
+    // Binary form of a live distribution; the copy read back can still be merged
+    public void writeTo(DataOutput out) throws IOException {
+        if (sketch == null) {
+            throw new IllegalStateException("Distributions read back from CSV cannot be written");
+        }
+        for (int bin : bins) {
+            out.writeInt(bin);
+        }
+        sketch.writeTo(out);
+    }
+
+    public static EnergyDistribution readFrom(DataInput in) throws IOException {
+        int[] bins = new int[BIN_COUNT];
+        for (int i = 0; i < BIN_COUNT; i++) {
+            bins[i] = in.readInt();
+        }
+        return new EnergyDistribution(bins, QuantileSketch.readFrom(in));
+    }
+
+    public void add(double energy) {
+        bins[binOf(energy)]++;
+        sketch.add(energy);
+    }
+
+    public void merge(EnergyDistribution other) {
+        if (sketch == null || other.sketch == null) {
+            throw new IllegalStateException("Distributions read back from CSV cannot be merged");
+        }
+        for (int i = 0; i < BIN_COUNT; i++) {
+            bins[i] += other.bins[i];
+        }
+        sketch.merge(other.sketch);
+    }
+
+    public int getBin(int bin) {
+        return bins[bin];
+    }
+
+    public int getCount() {
+        int total = 0;
+        for (int count : bins) {
+            total += count;
+        }
+        return total;
+    }
+
+    public double quantile(double q) {
+        if (sketch != null) {
+            return sketch.quantile(q);
+        }
+        for (int i = 0; i < REPORTED_QUANTILES.length; i++) {
+            if (REPORTED_QUANTILES[i] == q) {
+                return reported[i];
+            }
+        }
+        throw new IllegalArgumentException("Only the reported quantiles were kept: " + q);
+    }
+
+    public static String binLabel(int bin) {
+        long from = Math.round(bin * BIN_WIDTH);
+        return bin == BIN_COUNT - 1 ? from + "+" : from + "-" + Math.round((bin + 1) * BIN_WIDTH);
+    }
+
+    private static int binOf(double energy) {
+        return Math.max(0, Math.min((int) (energy / BIN_WIDTH), BIN_COUNT - 1));
+    }
+}
@@ -0,0 +1,169 @@
+package com.jacandre.timeline;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.Arrays;
+
+/**
+ * Per-tick mean and variance of the headline metrics across replicate runs of one configuration.
+ * Each replicate's SimulationMetrics is folded into running Welford accumulators for its tick as soon as the
+ * tick completes, so memory grows with the number of ticks and not with the number of replicates.
+ *
+ * A replicate that stops early, by extinction or a termination detector, has to be carried on to the last tick
+ * with hold, or the later means would describe only the replicates still running. Held replicates keep their
+ * final values: an extinct one counts as zero agents with zero average energy, and its births and deaths stay
+ * where they ended.
+ */
+@ThreadSafe
+public class EnsembleMetrics {
+    public static final int AVG_ENERGY = 0;
+    public static final int TOTAL_BIRTHS = 1;
+    public static final int TOTAL_DEATHS = 2;
+    public static final int HELPER_COUNT = 3;
+    public static final int SELFISH_COUNT = 4;
+    public static final int HELPER_BIRTHS = 5;
+    public static final int SELFISH_BIRTHS = 6;
+    public static final int QUANTITIES = 7;
+    public static final String[] LABELS = {
+            "Average Energy", "Total Births", "Total Deaths", "HELPER Agents", "SELFISH Agents", "HELPER Births", "SELFISH Births"
+    };
+
+    // Two-sided 95% Student t critical values for 1..30 degrees of freedom; the normal value beyond
+    private static final double[] T_95 = {
+            12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+            2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086,
+            2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042
+    };
+    private static final double Z_95 = 1.960;
+
+    @GuardedBy("this")
+    private long[] replicates = new long[64];              // indexed by tick
+    @GuardedBy("this")
+    private double[] means = new double[64 * QUANTITIES];  // tick * QUANTITIES + quantity
+    @GuardedBy("this")
+    private double[] squaredDeviations = new double[64 * QUANTITIES];
+    @GuardedBy("this")
+    private int lastTick;
+
+    public void add(SimulationMetrics metrics) {
+        add(metrics.getTick(), valuesOf(metrics));
+    }
+
+    // Carries a replicate that stopped at last's tick forward, repeating its final values up to and including `through`
+    public synchronized void hold(SimulationMetrics last, int through) {
+        double[] values = valuesOf(last);
+        for (int tick = last.getTick() + 1; tick <= through; tick++) {
+            add(tick, values);
+        }
+    }
+
+    private static double[] valuesOf(SimulationMetrics metrics) {
+        double[] values = new double[QUANTITIES];
+        values[AVG_ENERGY] = metrics.getAvgEnergy();
+        values[TOTAL_BIRTHS] = metrics.getTotalBirths();
+        values[TOTAL_DEATHS] = metrics.getTotalDeaths();
+        values[HELPER_COUNT] = metrics.getHelperCount();
+        values[SELFISH_COUNT] = metrics.getSelfishCount();
+        values[HELPER_BIRTHS] = metrics.getHelperBirths();
+        values[SELFISH_BIRTHS] = metrics.getSelfishBirths();
+        return values;
+    }
+
+    public synchronized void add(int tick, double[] values) {
+        ensureTick(tick);
+        long n = ++replicates[tick];
+        int base = tick * QUANTITIES;
+        for (int q = 0; q < QUANTITIES; q++) {
+            double delta = values[q] - means[base + q];
+            means[base + q] += delta / n;
+            squaredDeviations[base + q] += delta * (values[q] - means[base + q]);
+        }
+    }
+
+    // Folds in another ensemble's replicates tick by tick (Chan et al.'s pairwise combination)
+    public void merge(EnsembleMetrics other) {
+        long[] otherReplicates;
+        double[] otherMeans;
+        double[] otherDeviations;
+        int otherLast;
+        synchronized (other) {
+            otherReplicates = other.replicates.clone();
+            otherMeans = other.means.clone();
+            otherDeviations = other.squaredDeviations.clone();
+            otherLast = other.lastTick;
+        }
+
+        synchronized (this) {
+            ensureTick(otherLast);
+            for (int tick = 0; tick <= otherLast; tick++) {
+                long m = otherReplicates[tick];
+                if (m == 0) continue;
+                long n = replicates[tick];
+                long total = n + m;
+                int base = tick * QUANTITIES;
+                for (int q = 0; q < QUANTITIES; q++) {
+                    double delta = otherMeans[base + q] - means[base + q];
+                    means[base + q] += delta * m / total;
+                    squaredDeviations[base + q] += otherDeviations[base + q] + delta * delta * n * m / total;
+                }
+                replicates[tick] = total;
+            }
+        }
+    }
+
+    // Restores a tick from an exported summary; the sample variance is recovered from the standard deviation
+    public synchronized void putSummary(int tick, long replicateCount, double[] tickMeans, double[] stdDevs) {
+        ensureTick(tick);
+        replicates[tick] = replicateCount;
+        int base = tick * QUANTITIES;
+        for (int q = 0; q < QUANTITIES; q++) {
+            means[base + q] = tickMeans[q];
+            squaredDeviations[base + q] = Double.isNaN(stdDevs[q]) ? 0 : stdDevs[q] * stdDevs[q] * (replicateCount - 1);
+        }
+    }
+
+    public synchronized int getLastTick() {
+        return lastTick;
+    }
+
+    public synchronized long getReplicates(int tick) {
+        return tick <= lastTick ? replicates[tick] : 0;
+    }
+
+    public synchronized double getMean(int tick, int quantity) {
+        return getReplicates(tick) == 0 ? Double.NaN : means[tick * QUANTITIES + quantity];
+    }
+
+    // Sample variance; NaN below two replicates
+    public synchronized double getVariance(int tick, int quantity) {
+        long n = getReplicates(tick);
+        return n < 2 ? Double.NaN : squaredDeviations[tick * QUANTITIES + quantity] / (n - 1);
+    }
+
+    public double getStdDev(int tick, int quantity) {
+        return Math.sqrt(getVariance(tick, quantity));
+    }
+
+    // Half-width of the 95% confidence interval for the mean
+    public synchronized double getConfidenceHalfWidth(int tick, int quantity) {
+        long n = getReplicates(tick);
+        if (n < 2) return Double.NaN;
+        double t = n - 1 <= T_95.length ? T_95[(int) (n - 2)] : Z_95;
+        return t * Math.sqrt(getVariance(tick, quantity) / n);
+    }
+
+    @GuardedBy("this")
+    private void ensureTick(int tick) {
+        if (tick < 0) {
+            throw new IllegalArgumentException("Negative tick " + tick);
+        }
+        if (tick >= replicates.length) {
+            int capacity = Math.max(tick + 1, replicates.length * 2);
+            replicates = Arrays.copyOf(replicates, capacity);
+            means = Arrays.copyOf(means, capacity * QUANTITIES);
+            squaredDeviations = Arrays.copyOf(squaredDeviations, capacity * QUANTITIES);
+        }
+        lastTick = Math.max(lastTick, tick);
+    }
+}
@@ -0,0 +1,277 @@
+package com.jacandre.timeline;
+
+import lombok.extern.slf4j.Slf4j;
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads a snapshot CSV (as written by SnapshotCSVExporter) one tick at a time.
+ * A background thread scans the file once and records the byte offset at which each tick's rows start; a tick
+ * is read by fetching just its byte range and parsing those rows. Opening returns immediately, and ticks
+ * become readable as the scan passes them. Rows of one tick must be contiguous and ticks must ascend, which
+ * is how the exporter writes them. The CSV does not record the grid size, so the scan also notes the largest
+ * coordinate it passes.
+ *
+ * A gzipped CSV (name ending in ".gz") cannot be read by byte range, so the scan decompresses it once into a
+ * temporary file, which is deleted again on close, and the offsets point into that copy.
+ */
+@Slf4j
+@ThreadSafe
+public class IndexedCSVSnapshotReader implements TickSource {
+    private final Path path;
+    private final FileChannel channel;
+    private final Thread indexer;
+
+    @GuardedBy("this")
+    private int[] ticks = new int[1024];
+    @GuardedBy("this")
+    private long[] offsets = new long[1024];
+    @GuardedBy("this")
+    private int indexed;
+    @GuardedBy("this")
+    private int gridSize;
+    @GuardedBy("this")
+    private long endOffset = -1; // set once the scan reaches the end of the file
+    @GuardedBy("this")
+    private IOException failure;
+
+    public IndexedCSVSnapshotReader(Path path) throws IOException {
+        this.path = path;
+        this.channel = isCompressed(path)
+                ? FileChannel.open(Files.createTempFile("snapshots", ".csv"), StandardOpenOption.READ,
+                        StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE)
+                : FileChannel.open(path, StandardOpenOption.READ);
+        this.indexer = new Thread(this::buildIndex, "csv-indexer");
+        indexer.setDaemon(true);
+        indexer.start();
+    }
+
+    // A tick is readable once the next tick has been found or the file has been scanned to the end
+    @Override
+    public synchronized int getTickCount() {
+        return endOffset >= 0 ? indexed : Math.max(indexed - 1, 0);
+    }
+
+    @Override
+    public synchronized int getGridSize() {
+        return gridSize;
+    }
+
+    public synchronized boolean isIndexComplete() {
+        return endOffset >= 0 || failure != null;
+    }
+
+    // Blocks until the whole file has been indexed
+    public synchronized void awaitIndex() throws IOException, InterruptedException {
+        while (endOffset < 0 && failure == null) {
+            wait();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    // Blocks until at least one tick is readable or the scan has ended
+    public synchronized void awaitFirstTick() throws IOException, InterruptedException {
+        while (getTickCount() == 0 && endOffset < 0 && failure == null) {
+            wait();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public synchronized int tickAt(int index) {
+        checkIndex(index);
+        return ticks[index];
+    }
+
+    @Override
+    public GridSnapshot read(int index) {
+        int tick;
+        long start;
+        long end;
+        synchronized (this) {
+            checkIndex(index);
+            tick = ticks[index];
+            start = offsets[index];
+            end = index + 1 < indexed ? offsets[index + 1] : endOffset;
+        }
+
+        try {
+            ByteBuffer bytes = ByteBuffer.allocate((int) (end - start));
+            while (bytes.hasRemaining()) {
+                if (channel.read(bytes, start + bytes.position()) < 0) {
+                    throw new IOException("Snapshot CSV ended inside tick " + tick);
+                }
+            }
+            String rows = new String(bytes.array(), StandardCharsets.UTF_8);
+            List<RenderableEntity> entities = new ArrayList<>();
+            for (String line : rows.split("\\R")) {
+                if (!line.isEmpty()) {
+                    entities.add(CSVLoader.parseEntity(line.split(",", -1)));
+                }
+            }
+            return new GridSnapshot(tick, entities);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        indexer.interrupt();
+        channel.close();
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= getTickCount()) {
+            throw new IndexOutOfBoundsException("Tick index " + index + " is not readable yet");
+        }
+    }
+
+    private static boolean isCompressed(Path path) {
+        return path.toString().endsWith(".gz");
+    }
+
+    // Scans the (decompressed) bytes once, noting where each new tick value first appears at the start of a line
+    // and the largest x or y on any line
+    private void buildIndex() {
+        InputStream source;
+        try {
+            source = isCompressed(path)
+                    ? new CopyingInputStream(CSVLoader.openStream(path.toString()), channel)
+                    : Files.newInputStream(path);
+        } catch (IOException e) {
+            log.error("Failed to open snapshot CSV", e);
+            finish(-1, e);
+            return;
+        }
+        try (InputStream in = new BufferedInputStream(source, 1 << 16)) {
+            long offset = 0;
+            int b;
+            while ((b = in.read()) != -1 && b != '\n') {
+                offset++; // header
+            }
+            offset++;
+
+            int lastTick = Integer.MIN_VALUE;
+            int extent = 0;
+            while (!Thread.currentThread().isInterrupted()) {
+                long lineStart = offset;
+                int tick = 0;
+                boolean digits = false;
+                while ((b = in.read()) >= '0' && b <= '9') {
+                    tick = tick * 10 + (b - '0');
+                    digits = true;
+                    offset++;
+                }
+                if (b == -1) {
+                    break;
+                }
+                offset++;
+                if (digits && tick != lastTick) {
+                    if (tick < lastTick) {
+                        throw new IOException("Ticks are not in ascending order at byte " + lineStart);
+                    }
+                    append(tick, lineStart);
+                    lastTick = tick;
+                }
+                int field = 1; // x, then y
+                int value = 0;
+                while (b != '\n' && (b = in.read()) != -1) {
+                    offset++;
+                    if (field > 2) continue;
+                    if (b >= '0' && b <= '9') {
+                        value = value * 10 + (b - '0');
+                    } else if (b == ',') {
+                        if (value >= extent) {
+                            extent = value + 1;
+                            growGridSize(extent);
+                        }
+                        field++;
+                        value = 0;
+                    }
+                }
+            }
+            if (!Thread.currentThread().isInterrupted()) {
+                finish(offset, null);
+            }
+        } catch (IOException e) {
+            if (!channel.isOpen()) {
+                return; // closed while the scan was still copying a gzipped file
+            }
+            log.error("Failed to index snapshot CSV", e);
+            finish(-1, e);
+        }
+    }
+
+    private synchronized void append(int tick, long offset) {
+        if (indexed == ticks.length) {
+            ticks = Arrays.copyOf(ticks, indexed * 2);
+            offsets = Arrays.copyOf(offsets, indexed * 2);
+        }
+        ticks[indexed] = tick;
+        offsets[indexed] = offset;
+        indexed++;
+        if (indexed == 2) {
+            notifyAll();
+        }
+    }
+
+    private synchronized void growGridSize(int size) {
+        gridSize = size;
+    }
+
+    private synchronized void finish(long end, IOException e) {
+        endOffset = e == null ? end : -1;
+        failure = e;
+        notifyAll();
+    }
+
+    // Writes every byte it passes on to the end of the copy first, so a tick the scan has found is already
+    // readable from the copy
+    private static final class CopyingInputStream extends FilterInputStream {
+        private final FileChannel copy;
+        private long written;
+
+        CopyingInputStream(InputStream in, FileChannel copy) {
+            super(in);
+            this.copy = copy;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) {
+                ByteBuffer bytes = ByteBuffer.wrap(b, off, n);
+                while (bytes.hasRemaining()) {
+                    written += copy.write(bytes, written);
+                }
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.jacandre.timeline;
+
+import lombok.Getter;
+import net.jcip.annotations.ThreadSafe;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads a binary snapshot file (see SnapshotFormat) through memory mapping.
+ * Opening reads only the header, the tick index and the strategy table; each tick is mapped and decoded
+ * when it is asked for, so opening costs the same whatever the size of the run and any tick is one seek away.
+ */
+@ThreadSafe
+public class MappedSnapshotReader implements TickSource {
+    private final FileChannel channel;
+    @Getter
+    private final int gridSize;
+    private final int[] ticks;
+    private final long[] offsets; // offsets[tickCount] is the end of the last tick
+    private final String[] strategies;
+
+    public MappedSnapshotReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, SnapshotFormat.HEADER_BYTES);
+            if (header.getInt() != SnapshotFormat.MAGIC) {
+                throw new IOException(path + " is not a snapshot file");
+            }
+            int version = header.getInt();
+            if (version != SnapshotFormat.VERSION) {
+                throw new IOException("Unsupported snapshot file version " + version);
+            }
+            this.gridSize = header.getInt();
+            int tickCapacity = header.getInt();
+            int tickCount = header.getInt();
+            long strategyTableOffset = header.getLong();
+
+            MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, SnapshotFormat.HEADER_BYTES,
+                    (long) tickCount * SnapshotFormat.INDEX_ENTRY_BYTES);
+            this.ticks = new int[tickCount];
+            this.offsets = new long[tickCount + 1];
+            for (int i = 0; i < tickCount; i++) {
+                ticks[i] = index.getInt();
+                offsets[i] = index.getLong();
+            }
+            offsets[tickCount] = strategyTableOffset;
+
+            MappedByteBuffer table = channel.map(FileChannel.MapMode.READ_ONLY, strategyTableOffset,
+                    channel.size() - strategyTableOffset);
+            this.strategies = new String[table.getInt()];
+            for (int i = 0; i < strategies.length; i++) {
+                byte[] label = new byte[table.getInt()];
+                table.get(label);
+                strategies[i] = new String(label, StandardCharsets.UTF_8);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int getTickCount() {
+        return ticks.length;
+    }
+
+    @Override
+    public int tickAt(int index) {
+        return ticks[index];
+    }
+
+    // Index of the given tick, or -1 if the file does not contain it
+    public int indexOfTick(int tick) {
+        int index = Arrays.binarySearch(ticks, tick);
+        return index < 0 ? -1 : index;
+    }
+
+    @Override
+    public GridSnapshot read(int index) {
+        try {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, offsets[index], offsets[index + 1] - offsets[index]);
+            int agents = in.getInt();
+            int food = in.getInt();
+            boolean lists = in.get() == SnapshotFormat.CELL_LISTS;
+            int planeLongs = SnapshotFormat.planeLongs(gridSize);
+            int agentPlane = in.position();
+            int foodPlane = agentPlane + (lists ? agents * 4 : planeLongs * 8);
+            int codes = foodPlane + (lists ? food * 4 : planeLongs * 8);
+            int energies = codes + agents;
+
+            List<RenderableEntity> entities = new ArrayList<>(agents + food);
+            if (lists) {
+                for (int agent = 0; agent < agents; agent++) {
+                    RenderableEntity entity = entityAt(in.getInt(agentPlane + agent * 4), "AGENT");
+                    entity.strategy = strategies[in.get(codes + agent)];
+                    entity.energy = in.getFloat(energies + agent * 4);
+                    entities.add(entity);
+                }
+                for (int i = 0; i < food; i++) {
+                    RenderableEntity entity = entityAt(in.getInt(foodPlane + i * 4), "FOOD");
+                    entity.strategy = "";
+                    entities.add(entity);
+                }
+                return new GridSnapshot(ticks[index], entities);
+            }
+            int agent = 0;
+            for (int w = 0; w < planeLongs; w++) {
+                for (long bits = in.getLong(agentPlane + w * 8); bits != 0; bits &= bits - 1, agent++) {
+                    RenderableEntity entity = entityAt((w << 6) + Long.numberOfTrailingZeros(bits), "AGENT");
+                    entity.strategy = strategies[in.get(codes + agent)];
+                    entity.energy = in.getFloat(energies + agent * 4);
+                    entities.add(entity);
+                }
+            }
+            for (int w = 0; w < planeLongs; w++) {
+                for (long bits = in.getLong(foodPlane + w * 8); bits != 0; bits &= bits - 1) {
+                    RenderableEntity entity = entityAt((w << 6) + Long.numberOfTrailingZeros(bits), "FOOD");
+                    entity.strategy = "";
+                    entities.add(entity);
+                }
+            }
+            return new GridSnapshot(ticks[index], entities);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private RenderableEntity entityAt(int cell, String type) {
+        RenderableEntity entity = new RenderableEntity();
+        entity.x = cell / gridSize;
+        entity.y = cell % gridSize;
+        entity.type = type;
+        return entity;
+    }
+}
@@ -0,0 +1,158 @@
+package com.jacandre.timeline;
+
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.NotThreadSafe;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The metrics of a whole run stored by column: one primitive array per field (or per group of fields),
+ * indexed by row, instead of one SimulationMetrics object per tick.
+ */
+@Immutable
+public final class MetricsSeries {
+    public static final int TOTAL_BIRTHS = 0;
+    public static final int TOTAL_DEATHS = 1;
+    public static final int HELPER_COUNT = 2;
+    public static final int SELFISH_COUNT = 3;
+    public static final int HELPER_BIRTHS = 4;
+    public static final int SELFISH_BIRTHS = 5;
+    public static final int COUNT_COLUMNS = 6;
+
+    public static final int HELPER = 0;
+    public static final int SELFISH = 1;
+    private static final int QUANTILES = EnergyDistribution.REPORTED_QUANTILES.length;
+    private static final int BINS = EnergyDistribution.BIN_COUNT;
+
+    private final int size;
+    private final int[] ticks;
+    private final double[] avgEnergy;
+    private final int[] counts;       // row * COUNT_COLUMNS + column
+    private final double[] quantiles; // (row * 2 + strategy) * QUANTILES + quantile; NaN for an empty group
+    private final int[] bins;         // (row * 2 + strategy) * BINS + bin
+
+    // Takes over the builder's columns as they are; any spare capacity past size is never read
+    private MetricsSeries(Builder builder) {
+        this.size = builder.size;
+        this.ticks = builder.ticks;
+        this.avgEnergy = builder.avgEnergy;
+        this.counts = builder.counts;
+        this.quantiles = builder.quantiles;
+        this.bins = builder.bins;
+    }
+
+    public static MetricsSeries of(List<SimulationMetrics> metricsHistory) {
+        Builder builder = new Builder(metricsHistory.size());
+        int[] rowCounts = new int[COUNT_COLUMNS];
+        double[] rowQuantiles = new double[2 * QUANTILES];
+        int[] rowBins = new int[2 * BINS];
+        for (SimulationMetrics metrics : metricsHistory) {
+            rowCounts[TOTAL_BIRTHS] = metrics.getTotalBirths();
+            rowCounts[TOTAL_DEATHS] = metrics.getTotalDeaths();
+            rowCounts[HELPER_COUNT] = metrics.getHelperCount();
+            rowCounts[SELFISH_COUNT] = metrics.getSelfishCount();
+            rowCounts[HELPER_BIRTHS] = metrics.getHelperBirths();
+            rowCounts[SELFISH_BIRTHS] = metrics.getSelfishBirths();
+            EnergyDistribution[] groups = {metrics.getHelperEnergy(), metrics.getSelfishEnergy()};
+            for (int g = 0; g < 2; g++) {
+                for (int q = 0; q < QUANTILES; q++) {
+                    rowQuantiles[g * QUANTILES + q] = groups[g].quantile(EnergyDistribution.REPORTED_QUANTILES[q]);
+                }
+                for (int b = 0; b < BINS; b++) {
+                    rowBins[g * BINS + b] = groups[g].getBin(b);
+                }
+            }
+            builder.addRow(metrics.getTick(), metrics.getAvgEnergy(), rowCounts, rowQuantiles, rowBins);
+        }
+        return builder.build();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int getTick(int row) {
+        return ticks[row];
+    }
+
+    public double getAvgEnergy(int row) {
+        return avgEnergy[row];
+    }
+
+    public int getCount(int row, int column) {
+        return counts[row * COUNT_COLUMNS + column];
+    }
+
+    // quantile indexes EnergyDistribution.REPORTED_QUANTILES
+    public double getQuantile(int row, int strategy, int quantile) {
+        return quantiles[(row * 2 + strategy) * QUANTILES + quantile];
+    }
+
+    public int getBin(int row, int strategy, int bin) {
+        return bins[(row * 2 + strategy) * BINS + bin];
+    }
+
+    /**
+     * Appends rows from per-row scratch arrays, growing the columns by doubling once the expected row count is
+     * passed. A good estimate means each column is allocated once and never copied. Single use: build hands the
+     * columns to the series.
+     */
+    @NotThreadSafe
+    public static final class Builder {
+        private int size;
+        private int[] ticks;
+        private double[] avgEnergy;
+        private int[] counts;
+        private double[] quantiles;
+        private int[] bins;
+
+        public Builder() {
+            this(1024);
+        }
+
+        public Builder(int expectedRows) {
+            int capacity = Math.max(expectedRows, 16);
+            this.ticks = new int[capacity];
+            this.avgEnergy = new double[capacity];
+            this.counts = new int[capacity * COUNT_COLUMNS];
+            this.quantiles = new double[capacity * 2 * QUANTILES];
+            this.bins = new int[capacity * 2 * BINS];
+        }
+
+        // rowQuantiles and rowBins hold HELPER then SELFISH
+        public void addRow(int tick, double avg, int[] rowCounts, double[] rowQuantiles, int[] rowBins) {
+            if (size == ticks.length) {
+                int capacity = size * 2;
+                ticks = Arrays.copyOf(ticks, capacity);
+                avgEnergy = Arrays.copyOf(avgEnergy, capacity);
+                counts = Arrays.copyOf(counts, capacity * COUNT_COLUMNS);
+                quantiles = Arrays.copyOf(quantiles, capacity * 2 * QUANTILES);
+                bins = Arrays.copyOf(bins, capacity * 2 * BINS);
+            }
+            ticks[size] = tick;
+            avgEnergy[size] = avg;
+            System.arraycopy(rowCounts, 0, counts, size * COUNT_COLUMNS, COUNT_COLUMNS);
+            System.arraycopy(rowQuantiles, 0, quantiles, size * 2 * QUANTILES, 2 * QUANTILES);
+            System.arraycopy(rowBins, 0, bins, size * 2 * BINS, 2 * BINS);
+            size++;
+        }
+
+        public MetricsSeries build() {
+            if (ticks == null) {
+                throw new IllegalStateException("Builder already used");
+            }
+            MetricsSeries series = new MetricsSeries(this);
+            ticks = null;
+            avgEnergy = null;
+            counts = null;
+            quantiles = null;
+            bins = null;
+            return series;
+        }
+    }
+}
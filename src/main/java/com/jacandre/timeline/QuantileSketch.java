@@ -0,0 +1,132 @@
+package com.jacandre.timeline;
+
+import lombok.Getter;
+import net.jcip.annotations.NotThreadSafe;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Mergeable quantile sketch with bounded relative error (the DDSketch construction).
+ * A value x > 0 is counted in logarithmic bucket ceil(log_gamma(x)) with gamma = (1 + a) / (1 - a), and a
+ * quantile is answered with the midpoint of its bucket, so every estimate is within a relative error a of a
+ * value at that rank. Values at or below zero share one bucket and report 0. Two sketches with the same
+ * accuracy merge exactly by adding bucket counts, whatever order the values arrived in.
+ */
+@NotThreadSafe
+public class QuantileSketch {
+    public static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+    private static final double MIN_POSITIVE = 1e-9;
+
+    @Getter
+    private final double relativeAccuracy;
+    private final double gamma;
+    private final double logGamma;
+    private int[] counts = new int[0];
+    private int offset; // bucket index of counts[0]
+    private long zeroCount;
+    @Getter
+    private long count;
+
+    public QuantileSketch() {
+        this(DEFAULT_RELATIVE_ACCURACY);
+    }
+
+    public QuantileSketch(double relativeAccuracy) {
+        if (relativeAccuracy <= 0 || relativeAccuracy >= 1) {
+            throw new IllegalArgumentException("Relative accuracy must be in (0, 1): " + relativeAccuracy);
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+    }
+
+    public void add(double value) {
+        count++;
+        if (value <= MIN_POSITIVE) {
+            zeroCount++;
+            return;
+        }
+        int bucket = (int) Math.ceil(Math.log(value) / logGamma);
+        ensureBucket(bucket);
+        counts[bucket - offset]++;
+    }
+
+    public void merge(QuantileSketch other) {
+        if (other.relativeAccuracy != relativeAccuracy) {
+            throw new IllegalArgumentException("Cannot merge sketches of different accuracy");
+        }
+        if (other.counts.length > 0) {
+            ensureBucket(other.offset);
+            ensureBucket(other.offset + other.counts.length - 1);
+            for (int i = 0; i < other.counts.length; i++) {
+                counts[other.offset + i - offset] += other.counts[i];
+            }
+        }
+        zeroCount += other.zeroCount;
+        count += other.count;
+    }
+
+    // Exact binary form, so a sketch built in another process merges as if it had been built here
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeDouble(relativeAccuracy);
+        out.writeInt(offset);
+        out.writeInt(counts.length);
+        for (int bucketCount : counts) {
+            out.writeInt(bucketCount);
+        }
+        out.writeLong(zeroCount);
+        out.writeLong(count);
+    }
+
+    public static QuantileSketch readFrom(DataInput in) throws IOException {
+        QuantileSketch sketch = new QuantileSketch(in.readDouble());
+        sketch.offset = in.readInt();
+        sketch.counts = new int[in.readInt()];
+        for (int i = 0; i < sketch.counts.length; i++) {
+            sketch.counts[i] = in.readInt();
+        }
+        sketch.zeroCount = in.readLong();
+        sketch.count = in.readLong();
+        return sketch;
+    }
+
+    // Estimate of the value at rank q * (count - 1); NaN when empty
+    public double quantile(double q) {
+        if (q < 0 || q > 1) {
+            throw new IllegalArgumentException("Quantile must be in [0, 1]: " + q);
+        }
+        if (count == 0) {
+            return Double.NaN;
+        }
+        long rank = (long) (q * (count - 1));
+        if (rank < zeroCount) {
+            return 0.0;
+        }
+        long seen = zeroCount;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen > rank) {
+                return 2 * Math.pow(gamma, offset + i) / (gamma + 1);
+            }
+        }
+        return 2 * Math.pow(gamma, offset + counts.length - 1) / (gamma + 1);
+    }
+
+    private void ensureBucket(int bucket) {
+        if (counts.length == 0) {
+            counts = new int[16];
+            offset = bucket - 8;
+        } else if (bucket < offset) {
+            int grow = Math.max(offset - bucket, counts.length / 2);
+            int[] grown = new int[counts.length + grow];
+            System.arraycopy(counts, 0, grown, grow, counts.length);
+            counts = grown;
+            offset -= grow;
+        } else if (bucket >= offset + counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(bucket - offset + 1, counts.length + counts.length / 2));
+        }
+    }
+}
@@ -4,9 +4,6 @@ import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.List;
-import java.util.stream.Collectors;
-
 @Getter
 @Setter
 @Slf4j
@@ -19,7 +16,8 @@ public class SimulationMetrics {
     int selfishCount;
     int helperBirths;
     int selfishBirths;
-    private List<Double> energySnapshot;
+    private EnergyDistribution helperEnergy = new EnergyDistribution();
+    private EnergyDistribution selfishEnergy = new EnergyDistribution();
 
     public SimulationMetrics() {
 
@@ -35,13 +33,33 @@ public class SimulationMetrics {
     }
 
     public String toCSVRow() {
-        String snapshotString = energySnapshot == null || energySnapshot.isEmpty() ? "" :
-                energySnapshot.stream()
-                        .map(e -> String.format("%.2f", e))
-                        .collect(Collectors.joining(","));
-
-        return String.format("%d,%.2f,%d,%d,%d,%d,%d,%d,\"%s\"",
+        StringBuilder row = new StringBuilder(String.format("%d,%.2f,%d,%d,%d,%d,%d,%d",
                 tick, avgEnergy, totalBirths, totalDeaths,
-                helperCount, selfishCount, helperBirths, selfishBirths, snapshotString);
+                helperCount, selfishCount, helperBirths, selfishBirths));
+        appendQuantiles(row, helperEnergy);
+        appendQuantiles(row, selfishEnergy);
+        appendBins(row, helperEnergy);
+        appendBins(row, selfishEnergy);
+        return row.toString();
+    }
+
+    // Empty when the group had no agents
+    private static void appendQuantiles(StringBuilder row, EnergyDistribution distribution) {
+        for (double q : EnergyDistribution.REPORTED_QUANTILES) {
+            double value = distribution.quantile(q);
+            row.append(',');
+            if (!Double.isNaN(value)) {
+                row.append(String.format("%.2f", value));
+            }
+        }
+    }
+
+    private static void appendBins(StringBuilder row, EnergyDistribution distribution) {
+        row.append(",\"");
+        for (int i = 0; i < EnergyDistribution.BIN_COUNT; i++) {
+            if (i > 0) row.append(',');
+            row.append(distribution.getBin(i));
+        }
+        row.append('"');
     }
 }
\ No newline at end of file
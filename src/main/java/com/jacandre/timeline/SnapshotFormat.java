@@ -0,0 +1,42 @@
+package com.jacandre.timeline;
+
+/**
+ * Layout of the binary grid snapshot file (big-endian).
+ *
+ * Header:  int magic, int version, int gridSize, int tickCapacity, int tickCount, long strategyTableOffset
+ * Index:   tickCapacity entries of (int tick, long offset); the first tickCount are used
+ * Ticks:   int agentCount, int foodCount, byte encoding, then the occupied cells as either
+ *            PLANES: agent bitplane and food bitplane (ceil(cells / 64) longs each, bit c set if cell c is
+ *                    occupied), or
+ *            CELL_LISTS: agentCount int agent cells, then foodCount int food cells, each ascending,
+ *          then one strategy code byte per agent, then one float energy per agent, both in cell order
+ *          The writer picks whichever encoding of the tick is smaller, so a sparse tick on a huge grid costs
+ *          bytes in proportion to its entities rather than to the grid.
+ * Strategy table: int count, then per code an int byte length and the UTF-8 bytes of its label
+ *
+ * The index sits in front of the tick data so a reader can seek to any tick straight after the header;
+ * the writer reserves tickCapacity entries up front and fills them in when it closes.
+ */
+public final class SnapshotFormat {
+    public static final int MAGIC = 0x45475453; // "EGTS"
+    public static final int VERSION = 2;
+    public static final int HEADER_BYTES = 28;
+    public static final int INDEX_ENTRY_BYTES = 12;
+    public static final byte PLANES = 0;
+    public static final byte CELL_LISTS = 1;
+
+    private SnapshotFormat() {
+    }
+
+    public static int planeLongs(int gridSize) {
+        return (int) (((long) gridSize * gridSize + 63) >>> 6);
+    }
+
+    public static boolean usesCellLists(int gridSize, int entities) {
+        return 4L * entities < 16L * planeLongs(gridSize);
+    }
+
+    public static long dataStart(int tickCapacity) {
+        return HEADER_BYTES + (long) tickCapacity * INDEX_ENTRY_BYTES;
+    }
+}
@@ -0,0 +1,119 @@
+package com.jacandre.timeline;
+
+import lombok.extern.slf4j.Slf4j;
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded LRU cache of decoded ticks in front of a TickSource.
+ * Each get also moves the prefetch position: a single background thread decodes the next prefetchAhead ticks
+ * so playback rarely waits on the source. When the position jumps (e.g. the slider is dragged), the prefetcher
+ * abandons the old run and starts from the new position. At most capacity ticks are held at once.
+ */
+@Slf4j
+@ThreadSafe
+public class TickCache implements AutoCloseable {
+    public static final int DEFAULT_CAPACITY = 256;
+    public static final int DEFAULT_PREFETCH_AHEAD = 32;
+
+    private final TickSource source;
+    private final int prefetchAhead;
+    @GuardedBy("this")
+    private final Map<Integer, GridSnapshot> entries;
+    private final ExecutorService prefetcher;
+    private final AtomicInteger position = new AtomicInteger();
+    private final AtomicBoolean prefetchScheduled = new AtomicBoolean();
+
+    public TickCache(TickSource source) {
+        this(source, DEFAULT_CAPACITY, DEFAULT_PREFETCH_AHEAD);
+    }
+
+    public TickCache(TickSource source, int capacity, int prefetchAhead) {
+        if (prefetchAhead >= capacity) {
+            throw new IllegalArgumentException("Prefetch window must be smaller than the cache");
+        }
+        this.source = source;
+        this.prefetchAhead = prefetchAhead;
+        this.entries = new LinkedHashMap<>(capacity * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, GridSnapshot> eldest) {
+                return size() > capacity;
+            }
+        };
+        this.prefetcher = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "tick-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public int getTickCount() {
+        return source.getTickCount();
+    }
+
+    public GridSnapshot get(int index) {
+        GridSnapshot snapshot = cached(index);
+        if (snapshot == null) {
+            snapshot = source.read(index);
+            store(index, snapshot);
+        }
+        prefetchFrom(index + 1);
+        return snapshot;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        prefetcher.shutdownNow();
+        source.close();
+    }
+
+    private synchronized GridSnapshot cached(int index) {
+        return entries.get(index);
+    }
+
+    private synchronized boolean contains(int index) {
+        return entries.containsKey(index);
+    }
+
+    private synchronized void store(int index, GridSnapshot snapshot) {
+        entries.put(index, snapshot);
+    }
+
+    private void prefetchFrom(int index) {
+        position.set(index);
+        if (!prefetchScheduled.getAndSet(true)) {
+            prefetcher.execute(this::prefetch);
+        }
+    }
+
+    // Loads ahead of the latest position, restarting whenever the position moves
+    private void prefetch() {
+        prefetchScheduled.set(false);
+        try {
+            int start;
+            do {
+                start = position.get();
+                int end = Math.min(start + prefetchAhead, source.getTickCount());
+                for (int i = start; i < end && position.get() == start; i++) {
+                    if (!contains(i)) {
+                        store(i, source.read(i));
+                    }
+                }
+            } while (position.get() != start && !Thread.currentThread().isInterrupted());
+        } catch (RuntimeException e) {
+            log.warn("Prefetch failed", e);
+        }
+    }
+}
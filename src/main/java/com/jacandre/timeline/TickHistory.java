@@ -1,32 +1,329 @@
 package com.jacandre.timeline;
 
+import com.jacandre.models.CellState;
 import com.jacandre.models.TickSnapshot;
 import lombok.Getter;
+import net.jcip.annotations.NotThreadSafe;
 
-import java.util.ArrayList;
+import java.awt.*;
+import java.util.*;
 import java.util.List;
 
+/**
+ * Grid history of a run, one frame per consecutive tick.
+ * A tick is recorded by beginTick, one recordAgent/recordFood per occupied cell, and endTick. Every
+ * keyframeInterval-th frame stores all occupied cells; the frames in between store only the cells that
+ * changed since the previous tick (with cleared cells marked empty), so memory grows with churn rather
+ * than with ticks x cells. Values are copied at record time, so later changes to the agents do not leak
+ * into past ticks.
+ *
+ * Any tick is found by index in O(1) and rebuilt from its keyframe plus at most keyframeInterval - 1
+ * deltas; iterating the whole history applies each delta once. The working state is keyed by occupied cell,
+ * so recording and rebuilding cost memory and time in proportion to the occupied cells, not the grid.
+ */
+@NotThreadSafe
+public class TickHistory implements Iterable<TickSnapshot> {
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 32;
 
-@Getter
-public class TickHistory {
-    private final List<TickSnapshot> snapshots = new ArrayList<>();
+    private static final byte EMPTY = 0;
+    private static final byte AGENT = 1;
+    private static final byte FOOD = 2;
 
-    public void addSnapshot(TickSnapshot snapshot) {
-        snapshots.add(snapshot);
+    private final int keyframeInterval;
+    private final List<Frame> frames = new ArrayList<>();
+    private final List<String> strategies = new ArrayList<>();
+    @Getter
+    private int gridSize = -1;
+    private int firstTick;
+
+    // State of the tick being recorded and of the previous one
+    private SparseFrame current;
+    private SparseFrame previous;
+    private int recordingTick = Integer.MIN_VALUE;
+
+    public TickHistory() {
+        this(DEFAULT_KEYFRAME_INTERVAL);
+    }
+
+    public TickHistory(int keyframeInterval) {
+        if (keyframeInterval < 1) {
+            throw new IllegalArgumentException("Keyframe interval must be positive: " + keyframeInterval);
+        }
+        this.keyframeInterval = keyframeInterval;
+    }
+
+    public void beginTick(int tick, int gridSize) {
+        if (this.gridSize < 0) {
+            this.gridSize = gridSize;
+            this.firstTick = tick;
+            this.current = new SparseFrame();
+            this.previous = new SparseFrame();
+        } else if (gridSize != this.gridSize) {
+            throw new IllegalArgumentException("Grid size changed from " + this.gridSize + " to " + gridSize);
+        } else if (tick != firstTick + frames.size()) {
+            throw new IllegalArgumentException("Expected tick " + (firstTick + frames.size()) + " but got " + tick);
+        }
+        recordingTick = tick;
+    }
+
+    public void recordAgent(int cell, String strategy, double energy) {
+        current.set(cell, AGENT, strategyCode(strategy), energy);
+    }
+
+    public void recordFood(int cell) {
+        current.set(cell, FOOD, (byte) -1, 0.0);
+    }
+
+    public void endTick() {
+        if (recordingTick == Integer.MIN_VALUE) {
+            throw new IllegalStateException("endTick without beginTick");
+        }
+
+        boolean keyframe = frames.size() % keyframeInterval == 0;
+        frames.add(keyframe ? current.toKeyframe(recordingTick) : current.deltaFrom(previous, recordingTick));
+
+        previous.clear();
+        SparseFrame swap = previous;
+        previous = current;
+        current = swap;
+        recordingTick = Integer.MIN_VALUE;
     }
 
     public TickSnapshot getSnapshotAt(int tick) {
-        return snapshots.stream()
-                .filter(s -> s.tick() == tick)
-                .findFirst()
-                .orElse(null);
+        int index = tick - firstTick;
+        if (index < 0 || index >= frames.size()) {
+            return null;
+        }
+
+        SparseFrame scratch = new SparseFrame();
+        for (int i = index - index % keyframeInterval; i <= index; i++) {
+            frames.get(i).applyTo(scratch);
+        }
+        return scratch.toSnapshot(tick);
+    }
+
+    // Snapshots in tick order, rebuilt one delta at a time
+    @Override
+    public Iterator<TickSnapshot> iterator() {
+        return new Iterator<>() {
+            private final SparseFrame scratch = new SparseFrame();
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < frames.size();
+            }
+
+            @Override
+            public TickSnapshot next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Frame frame = frames.get(next++);
+                if (frame.keyframe) {
+                    scratch.clear();
+                }
+                frame.applyTo(scratch);
+                return scratch.toSnapshot(frame.tick);
+            }
+        };
     }
 
     public int getTickCount() {
-        return snapshots.size();
+        return frames.size();
     }
 
     public boolean isEmpty() {
-        return snapshots.isEmpty();
+        return frames.isEmpty();
+    }
+
+    private byte strategyCode(String strategy) {
+        for (int i = 0; i < strategies.size(); i++) {
+            if (strategies.get(i).equals(strategy)) {
+                return (byte) i;
+            }
+        }
+        if (strategies.size() > Byte.MAX_VALUE) {
+            throw new IllegalStateException("Too many distinct strategies");
+        }
+        strategies.add(strategy);
+        return (byte) (strategies.size() - 1);
+    }
+
+    // Sparse cell list; in a delta, EMPTY marks a cell that was cleared
+    private record Frame(int tick, boolean keyframe, int[] cells, byte[] types, byte[] strategies, double[] energies) {
+        void applyTo(SparseFrame target) {
+            for (int i = 0; i < cells.length; i++) {
+                if (types[i] == EMPTY) {
+                    target.remove(cells[i]);
+                } else {
+                    target.set(cells[i], types[i], strategies[i], energies[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * The occupied cells of one tick in an open-addressing table keyed by cell (linear probing, backward-shift
+     * removal), so it takes memory in proportion to the occupied cells and not to the grid.
+     */
+    private class SparseFrame {
+        private int[] keys; // cell + 1; 0 marks a free slot
+        private byte[] types;
+        private byte[] strategyCodes;
+        private double[] energies;
+        private int size;
+
+        SparseFrame() {
+            allocate(16);
+        }
+
+        void set(int cell, byte type, byte strategy, double energy) {
+            int slot = slotOf(cell);
+            if (keys[slot] == 0) {
+                if (2 * (size + 1) > keys.length) {
+                    grow();
+                    slot = slotOf(cell);
+                }
+                keys[slot] = cell + 1;
+                size++;
+            }
+            types[slot] = type;
+            strategyCodes[slot] = strategy;
+            energies[slot] = energy;
+        }
+
+        void remove(int cell) {
+            int hole = slotOf(cell);
+            if (keys[hole] == 0) return;
+            size--;
+            int mask = keys.length - 1;
+            for (int next = (hole + 1) & mask; keys[next] != 0; next = (next + 1) & mask) {
+                // An entry may fill the hole only if the hole lies between its home slot and where it sits
+                int home = hash(keys[next] - 1) & mask;
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    copySlot(next, hole);
+                    hole = next;
+                }
+            }
+            keys[hole] = 0;
+        }
+
+        void clear() {
+            Arrays.fill(keys, 0);
+            size = 0;
+        }
+
+        boolean sameAs(SparseFrame other, int slot) {
+            int otherSlot = other.slotOf(keys[slot] - 1);
+            return other.keys[otherSlot] != 0
+                    && types[slot] == other.types[otherSlot]
+                    && strategyCodes[slot] == other.strategyCodes[otherSlot]
+                    && Double.doubleToRawLongBits(energies[slot]) == Double.doubleToRawLongBits(other.energies[otherSlot]);
+        }
+
+        boolean contains(int cell) {
+            return keys[slotOf(cell)] != 0;
+        }
+
+        Frame toKeyframe(int tick) {
+            int[] cells = new int[size];
+            byte[] t = new byte[size];
+            byte[] s = new byte[size];
+            double[] e = new double[size];
+            int n = 0;
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] == 0) continue;
+                cells[n] = keys[slot] - 1;
+                t[n] = types[slot];
+                s[n] = strategyCodes[slot];
+                e[n] = energies[slot];
+                n++;
+            }
+            return new Frame(tick, true, cells, t, s, e);
+        }
+
+        Frame deltaFrom(SparseFrame before, int tick) {
+            int changed = 0;
+            int[] cells = new int[size + before.size];
+            byte[] t = new byte[cells.length];
+            byte[] s = new byte[cells.length];
+            double[] e = new double[cells.length];
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] == 0 || sameAs(before, slot)) continue;
+                cells[changed] = keys[slot] - 1;
+                t[changed] = types[slot];
+                s[changed] = strategyCodes[slot];
+                e[changed] = energies[slot];
+                changed++;
+            }
+            for (int slot = 0; slot < before.keys.length; slot++) {
+                int key = before.keys[slot];
+                if (key == 0 || contains(key - 1)) continue;
+                cells[changed] = key - 1;
+                t[changed] = EMPTY;
+                changed++;
+            }
+            return new Frame(tick, false, Arrays.copyOf(cells, changed), Arrays.copyOf(t, changed),
+                    Arrays.copyOf(s, changed), Arrays.copyOf(e, changed));
+        }
+
+        TickSnapshot toSnapshot(int tick) {
+            Map<Point, CellState> state = new HashMap<>(size * 2);
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] == 0) continue;
+                int cell = keys[slot] - 1;
+                Point position = new Point(cell / gridSize, cell % gridSize);
+                state.put(position, types[slot] == FOOD
+                        ? CellState.FOOD
+                        : CellState.agent(strategies.get(strategyCodes[slot]), energies[slot]));
+            }
+            return new TickSnapshot(tick, state);
+        }
+
+        // The slot holding the cell, or the free slot where it would go
+        private int slotOf(int cell) {
+            int mask = keys.length - 1;
+            int slot = hash(cell) & mask;
+            while (keys[slot] != 0 && keys[slot] != cell + 1) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void copySlot(int from, int to) {
+            keys[to] = keys[from];
+            types[to] = types[from];
+            strategyCodes[to] = strategyCodes[from];
+            energies[to] = energies[from];
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            byte[] oldTypes = types;
+            byte[] oldStrategies = strategyCodes;
+            double[] oldEnergies = energies;
+            allocate(oldKeys.length * 2);
+            for (int slot = 0; slot < oldKeys.length; slot++) {
+                if (oldKeys[slot] == 0) continue;
+                int target = slotOf(oldKeys[slot] - 1);
+                keys[target] = oldKeys[slot];
+                types[target] = oldTypes[slot];
+                strategyCodes[target] = oldStrategies[slot];
+                energies[target] = oldEnergies[slot];
+            }
+        }
+
+        private void allocate(int capacity) {
+            keys = new int[capacity];
+            types = new byte[capacity];
+            strategyCodes = new byte[capacity];
+            energies = new double[capacity];
+        }
+
+        private static int hash(int cell) {
+            int h = cell * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
     }
 }
@@ -0,0 +1,23 @@
+package com.jacandre.timeline;
+
+import java.io.IOException;
+
+/**
+ * Random access to the recorded ticks of a run, by position in tick order.
+ * Implementations decode a tick only when it is read and must allow reads from more than one thread.
+ */
+public interface TickSource extends AutoCloseable {
+    // Ticks that can be read right now; may grow while an index is still being built
+    int getTickCount();
+
+    int tickAt(int index);
+
+    // Side of the recorded grid. A format that does not store it reports the smallest grid holding every cell
+    // scanned so far, which can grow while an index is still being built.
+    int getGridSize();
+
+    GridSnapshot read(int index);
+
+    @Override
+    void close() throws IOException;
+}
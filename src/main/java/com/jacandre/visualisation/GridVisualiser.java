@@ -1,8 +1,9 @@
 package com.jacandre.visualisation;
 
-import com.jacandre.core.Constants;
-import com.jacandre.timeline.CSVLoader;
-import com.jacandre.timeline.GridSnapshot;
+import com.jacandre.timeline.IndexedCSVSnapshotReader;
+import com.jacandre.timeline.MappedSnapshotReader;
+import com.jacandre.timeline.TickCache;
+import com.jacandre.timeline.TickSource;
 import javafx.animation.Animation;
 import javafx.animation.KeyFrame;
 import javafx.animation.Timeline;
@@ -16,10 +17,17 @@ import javafx.scene.layout.*;
 import javafx.stage.Stage;
 import javafx.util.Duration;
 
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 
 public class GridVisualiser extends Application {
-    private List<GridSnapshot> snapshots;
+    private static final List<String> SNAPSHOT_FILES = List.of("simulation_grid_snapshots.bin", "simulation_grid_snapshots.csv",
+            "simulation_grid_snapshots.csv.gz");
+
+    private TickCache snapshots;
     private SimulationCanvas canvas;
     private int currentTick = 0;
 
@@ -29,12 +37,22 @@ public class GridVisualiser extends Application {
 
     @Override
     public void start(Stage stage) throws Exception {
-        snapshots = CSVLoader.loadSnapshots("simulation_grid_snapshots.csv");
-
-        canvas = new SimulationCanvas(Constants.GRID_SIZE);
+        // Ticks are decoded on demand through the cache; the CSV is indexed in the background while it plays
+        Path file = latestSnapshotFile();
+        TickSource source;
+        if (file.toString().endsWith(".bin")) {
+            source = new MappedSnapshotReader(file);
+        } else {
+            IndexedCSVSnapshotReader reader = new IndexedCSVSnapshotReader(file);
+            reader.awaitFirstTick();
+            source = reader;
+        }
+        snapshots = new TickCache(source);
+
+        canvas = new SimulationCanvas(source.getGridSize());
         canvas.render(snapshots.get(currentTick));
 
-        Slider tickSlider = new Slider(0, snapshots.size() - 1, 0);
+        Slider tickSlider = new Slider(0, Math.max(snapshots.getTickCount() - 1, 0), 0);
         tickSlider.setMajorTickUnit(1);
         tickSlider.setSnapToTicks(true);
         tickSlider.setShowTickLabels(true);
@@ -51,7 +69,7 @@ public class GridVisualiser extends Application {
 
         KeyFrame frame = new KeyFrame(Duration.millis(100), e -> {
             int nextTick = (int) (tickSlider.getValue() + 1);
-            if (nextTick < snapshots.size()) {
+            if (nextTick < snapshots.getTickCount()) {
                 tickSlider.setValue(nextTick);
             } else {
                 playbackTimeline.stop();
@@ -71,6 +89,19 @@ public class GridVisualiser extends Application {
 
         playbackTimeline.getKeyFrames().add(frame);
 
+        if (source instanceof IndexedCSVSnapshotReader csv && !csv.isIndexComplete()) {
+            Timeline indexProgress = new Timeline();
+            indexProgress.setCycleCount(Timeline.INDEFINITE);
+            indexProgress.getKeyFrames().add(new KeyFrame(Duration.millis(500), e -> {
+                tickSlider.setMax(Math.max(snapshots.getTickCount() - 1, 0));
+                canvas.setGridSize(csv.getGridSize()); // the size is known for certain only once the scan is done
+                if (csv.isIndexComplete()) {
+                    indexProgress.stop();
+                }
+            }));
+            indexProgress.play();
+        }
+
         Group canvasGroup = new Group(canvas);
         ScrollPane scrollPane = new ScrollPane(canvasGroup);
         scrollPane.setPannable(true);
@@ -116,6 +147,29 @@ public class GridVisualiser extends Application {
         stage.show();
     }
 
+    @Override
+    public void stop() throws Exception {
+        if (snapshots != null) {
+            snapshots.close();
+        }
+    }
+
+    // A run writes its snapshots in one format, so an older file in the other format is left over from a previous run
+    private static Path latestSnapshotFile() throws IOException {
+        Path latest = null;
+        for (String name : SNAPSHOT_FILES) {
+            Path file = Path.of(name);
+            if (Files.exists(file) && (latest == null
+                    || Files.getLastModifiedTime(file).compareTo(Files.getLastModifiedTime(latest)) > 0)) {
+                latest = file;
+            }
+        }
+        if (latest == null) {
+            throw new FileNotFoundException("No snapshot file found: " + String.join(", ", SNAPSHOT_FILES));
+        }
+        return latest;
+    }
+
     public static void main(String[] args) {
         launch();
     }
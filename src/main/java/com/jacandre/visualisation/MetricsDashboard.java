@@ -1,6 +1,8 @@
 package com.jacandre.visualisation;
 
-import com.jacandre.timeline.SimulationMetrics;
+import com.jacandre.timeline.EnergyDistribution;
+import com.jacandre.timeline.EnsembleMetrics;
+import com.jacandre.timeline.MetricsSeries;
 import javafx.animation.Animation;
 import javafx.animation.KeyFrame;
 import javafx.animation.Timeline;
@@ -16,33 +18,55 @@ import javafx.stage.Stage;
 import javafx.util.Duration;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Collections;
-import java.util.List;
 
 @Slf4j
 public class MetricsDashboard extends Application {
+    // Modena's default series colours, so each band matches its mean
+    private static final String[] SERIES_COLOURS = {"#f3622d", "#fba71b", "#57b757", "#41a9c9", "#4258c9", "#9a42c8"};
+
     @Override
-    public void start(Stage stage) {
+    public void start(Stage stage) throws IOException {
         stage.setTitle("Simulation Metrics");
 
-        List<SimulationMetrics> metricsHistory = SimulationMetricsLoader.loadFromCSV("simulation_metrics.csv");
-
         TabPane tabPane = new TabPane();
-        tabPane.getTabs().addAll(
-                new Tab("Agent Count", plotHelperVsSelfish(metricsHistory)),
-                new Tab("Energy", plotEnergyOverTime(metricsHistory)),
-                new Tab("Births/Deaths", plotBirthsVsDeaths(metricsHistory)),
-                new Tab("Strategy Births", plotStrategyBirths(metricsHistory)),
-                new Tab("Strategy Ratio", plotStrategyRatio(metricsHistory)),
-                new Tab("Energy Distribution", plotEnergyDistribution(metricsHistory))
-        );
+        String metricsFile = existing("simulation_metrics.csv");
+        if (metricsFile != null) {
+            MetricsSeries metricsHistory = SimulationMetricsLoader.loadSeries(metricsFile);
+            tabPane.getTabs().addAll(
+                    new Tab("Agent Count", plotHelperVsSelfish(metricsHistory)),
+                    new Tab("Energy", plotEnergyOverTime(metricsHistory)),
+                    new Tab("Births/Deaths", plotBirthsVsDeaths(metricsHistory)),
+                    new Tab("Strategy Births", plotStrategyBirths(metricsHistory)),
+                    new Tab("Strategy Ratio", plotStrategyRatio(metricsHistory)),
+                    new Tab("Energy Quantiles", plotEnergyQuantiles(metricsHistory)),
+                    new Tab("Energy Distribution", plotEnergyDistribution(metricsHistory))
+            );
+        }
+
+        // Written by SweepRunner --ensemble
+        String ensembleFile = existing("simulation_ensemble.csv");
+        if (ensembleFile != null) {
+            EnsembleMetrics ensemble = SimulationMetricsLoader.loadEnsemble(ensembleFile);
+            tabPane.getTabs().addAll(
+                    new Tab("Ensemble Agents", plotEnsemble(ensemble, "HELPER vs SELFISH Agents", "Agent Count",
+                            EnsembleMetrics.HELPER_COUNT, EnsembleMetrics.SELFISH_COUNT)),
+                    new Tab("Ensemble Energy", plotEnsemble(ensemble, "Average Energy Over Time", "Avg Energy",
+                            EnsembleMetrics.AVG_ENERGY)),
+                    new Tab("Ensemble Births/Deaths", plotEnsemble(ensemble, "Births vs Deaths", "Count",
+                            EnsembleMetrics.TOTAL_BIRTHS, EnsembleMetrics.TOTAL_DEATHS))
+            );
+        }
 
         Scene scene = new Scene(tabPane, 800, 600);
         stage.setScene(scene);
         stage.show();
     }
 
-    private LineChart<Number, Number> plotHelperVsSelfish(List<SimulationMetrics> metricsHistory) {
+    private LineChart<Number, Number> plotHelperVsSelfish(MetricsSeries metricsHistory) {
         NumberAxis xAxis = new NumberAxis();
         xAxis.setLabel("Tick");
 
@@ -58,16 +82,17 @@ public class MetricsDashboard extends Application {
         XYChart.Series<Number, Number> selfishSeries = new XYChart.Series<>();
         selfishSeries.setName("SELFISH");
 
-        for (SimulationMetrics metrics : metricsHistory) {
-            helperSeries.getData().add(new XYChart.Data<>(metrics.getTick(), metrics.getHelperCount()));
-            selfishSeries.getData().add(new XYChart.Data<>(metrics.getTick(), metrics.getSelfishCount()));
+        for (int row = 0; row < metricsHistory.size(); row++) {
+            int tick = metricsHistory.getTick(row);
+            helperSeries.getData().add(new XYChart.Data<>(tick, metricsHistory.getCount(row, MetricsSeries.HELPER_COUNT)));
+            selfishSeries.getData().add(new XYChart.Data<>(tick, metricsHistory.getCount(row, MetricsSeries.SELFISH_COUNT)));
         }
 
         Collections.addAll(lineChart.getData(), helperSeries, selfishSeries);
         return lineChart;
     }
 
-    private LineChart<Number, Number> plotEnergyOverTime(List<SimulationMetrics> metricsHistory) {
+    private LineChart<Number, Number> plotEnergyOverTime(MetricsSeries metricsHistory) {
         NumberAxis xAxis = new NumberAxis();
         xAxis.setLabel("Tick");
 
@@ -80,15 +105,15 @@ public class MetricsDashboard extends Application {
         XYChart.Series<Number, Number> energySeries = new XYChart.Series<>();
         energySeries.setName("Avg Energy");
 
-        for (SimulationMetrics metrics : metricsHistory) {
-            energySeries.getData().add(new XYChart.Data<>(metrics.getTick(), metrics.getAvgEnergy()));
+        for (int row = 0; row < metricsHistory.size(); row++) {
+            energySeries.getData().add(new XYChart.Data<>(metricsHistory.getTick(row), metricsHistory.getAvgEnergy(row)));
         }
 
         Collections.addAll(energyChart.getData(), energySeries);
         return energyChart;
     }
 
-    private LineChart<Number, Number> plotBirthsVsDeaths(List<SimulationMetrics> metricsHistory) {
+    private LineChart<Number, Number> plotBirthsVsDeaths(MetricsSeries metricsHistory) {
         NumberAxis xAxis = new NumberAxis();
         xAxis.setLabel("Tick");
 
@@ -104,16 +129,17 @@ public class MetricsDashboard extends Application {
         XYChart.Series<Number, Number> deathSeries = new XYChart.Series<>();
         deathSeries.setName("Total Deaths");
 
-        for (SimulationMetrics metrics : metricsHistory) {
-            birthSeries.getData().add(new XYChart.Data<>(metrics.getTick(), metrics.getTotalBirths()));
-            deathSeries.getData().add(new XYChart.Data<>(metrics.getTick(), metrics.getTotalDeaths()));
+        for (int row = 0; row < metricsHistory.size(); row++) {
+            int tick = metricsHistory.getTick(row);
+            birthSeries.getData().add(new XYChart.Data<>(tick, metricsHistory.getCount(row, MetricsSeries.TOTAL_BIRTHS)));
+            deathSeries.getData().add(new XYChart.Data<>(tick, metricsHistory.getCount(row, MetricsSeries.TOTAL_DEATHS)));
         }
 
         Collections.addAll(birthDeathChart.getData(), birthSeries, deathSeries);
         return birthDeathChart;
     }
 
-    private LineChart<Number, Number> plotStrategyBirths(List<SimulationMetrics> metricsHistory) {
+    private LineChart<Number, Number> plotStrategyBirths(MetricsSeries metricsHistory) {
         NumberAxis xAxis = new NumberAxis();
         xAxis.setLabel("Tick");
 
@@ -129,16 +155,17 @@ public class MetricsDashboard extends Application {
         XYChart.Series<Number, Number> selfishBirths = new XYChart.Series<>();
         selfishBirths.setName("SELFISH Births");
 
-        for (SimulationMetrics metrics : metricsHistory) {
-            helperBirths.getData().add(new XYChart.Data<>(metrics.getTick(), metrics.getHelperBirths()));
-            selfishBirths.getData().add(new XYChart.Data<>(metrics.getTick(), metrics.getSelfishBirths()));
+        for (int row = 0; row < metricsHistory.size(); row++) {
+            int tick = metricsHistory.getTick(row);
+            helperBirths.getData().add(new XYChart.Data<>(tick, metricsHistory.getCount(row, MetricsSeries.HELPER_BIRTHS)));
+            selfishBirths.getData().add(new XYChart.Data<>(tick, metricsHistory.getCount(row, MetricsSeries.SELFISH_BIRTHS)));
         }
 
         Collections.addAll(chart.getData(), helperBirths, selfishBirths);
         return chart;
     }
 
-    private LineChart<Number, Number> plotStrategyRatio(List<SimulationMetrics> metricsHistory) {
+    private LineChart<Number, Number> plotStrategyRatio(MetricsSeries metricsHistory) {
         NumberAxis xAxis = new NumberAxis();
         xAxis.setLabel("Tick");
 
@@ -154,13 +181,15 @@ public class MetricsDashboard extends Application {
         XYChart.Series<Number, Number> selfishRatio = new XYChart.Series<>();
         selfishRatio.setName("SELFISH %");
 
-        for (SimulationMetrics metrics : metricsHistory) {
-            int total = metrics.getHelperCount() + metrics.getSelfishCount();
+        for (int row = 0; row < metricsHistory.size(); row++) {
+            int helpers = metricsHistory.getCount(row, MetricsSeries.HELPER_COUNT);
+            int selfish = metricsHistory.getCount(row, MetricsSeries.SELFISH_COUNT);
+            int total = helpers + selfish;
             if (total > 0) {
-                double helperPercent = 100.0 * metrics.getHelperCount() / total;
-                double selfishPercent = 100.0 * metrics.getSelfishCount() / total;
-                helperRatio.getData().add(new XYChart.Data<>(metrics.getTick(), helperPercent));
-                selfishRatio.getData().add(new XYChart.Data<>(metrics.getTick(), selfishPercent));
+                double helperPercent = 100.0 * helpers / total;
+                double selfishPercent = 100.0 * selfish / total;
+                helperRatio.getData().add(new XYChart.Data<>(metricsHistory.getTick(row), helperPercent));
+                selfishRatio.getData().add(new XYChart.Data<>(metricsHistory.getTick(row), selfishPercent));
             }
         }
 
@@ -168,7 +197,40 @@ public class MetricsDashboard extends Application {
         return chart;
     }
 
-    public VBox plotEnergyDistribution(List<SimulationMetrics> metricsHistory) {
+    private LineChart<Number, Number> plotEnergyQuantiles(MetricsSeries metricsHistory) {
+        NumberAxis xAxis = new NumberAxis();
+        xAxis.setLabel("Tick");
+
+        NumberAxis yAxis = new NumberAxis();
+        yAxis.setLabel("Energy");
+
+        LineChart<Number, Number> chart = new LineChart<>(xAxis, yAxis);
+        chart.setTitle("Energy Quantiles by Strategy");
+        chart.setCreateSymbols(false);
+
+        for (int q = 0; q < EnergyDistribution.REPORTED_QUANTILES.length; q++) {
+            String name = "P" + Math.round(EnergyDistribution.REPORTED_QUANTILES[q] * 100);
+            XYChart.Series<Number, Number> helperSeries = new XYChart.Series<>();
+            helperSeries.setName("HELPER " + name);
+            XYChart.Series<Number, Number> selfishSeries = new XYChart.Series<>();
+            selfishSeries.setName("SELFISH " + name);
+
+            for (int row = 0; row < metricsHistory.size(); row++) {
+                double helper = metricsHistory.getQuantile(row, MetricsSeries.HELPER, q);
+                double selfish = metricsHistory.getQuantile(row, MetricsSeries.SELFISH, q);
+                if (!Double.isNaN(helper)) {
+                    helperSeries.getData().add(new XYChart.Data<>(metricsHistory.getTick(row), helper));
+                }
+                if (!Double.isNaN(selfish)) {
+                    selfishSeries.getData().add(new XYChart.Data<>(metricsHistory.getTick(row), selfish));
+                }
+            }
+            Collections.addAll(chart.getData(), helperSeries, selfishSeries);
+        }
+        return chart;
+    }
+
+    public VBox plotEnergyDistribution(MetricsSeries metricsHistory) {
         CategoryAxis xAxis = new CategoryAxis();
         xAxis.setLabel("Energy Range");
 
@@ -192,8 +254,7 @@ public class MetricsDashboard extends Application {
         tickSlider.valueProperty().addListener((obs, oldVal, newVal) -> {
             int tickIndex = newVal.intValue();
             tickLabel.setText("Tick: " + tickIndex);
-            SimulationMetrics metrics = metricsHistory.get(tickIndex);
-            updateHistogram(histogram, metrics);
+            updateHistogram(histogram, metricsHistory, tickIndex);
         });
 
         // Play button
@@ -226,11 +287,11 @@ public class MetricsDashboard extends Application {
         Button refreshButton = new Button("Refresh");
         refreshButton.setOnAction(e -> {
             tickSlider.setValue(0);
-            updateHistogram(histogram, metricsHistory.getFirst());
+            updateHistogram(histogram, metricsHistory, 0);
             tickLabel.setText("Tick: 0");
         });
 
-        updateHistogram(histogram, metricsHistory.getFirst());
+        updateHistogram(histogram, metricsHistory, 0);
 
         HBox controls = new HBox(10, tickLabel, tickSlider, playButton, refreshButton);
         controls.setAlignment(Pos.CENTER);
@@ -242,26 +303,70 @@ public class MetricsDashboard extends Application {
     }
 
 
-    private void updateHistogram(BarChart<String, Number> chart, SimulationMetrics metrics) {
+    private void updateHistogram(BarChart<String, Number> chart, MetricsSeries metricsHistory, int row) {
         chart.getData().clear();
-        XYChart.Series<String, Number> series = new XYChart.Series<>();
-        series.setName("Tick " + metrics.getTick());
+        XYChart.Series<String, Number> helpers = new XYChart.Series<>();
+        helpers.setName("HELPER");
+        XYChart.Series<String, Number> selfish = new XYChart.Series<>();
+        selfish.setName("SELFISH");
+
+        // The simulation already binned each strategy's energy, so a redraw is just BIN_COUNT bars per series
+        for (int i = 0; i < EnergyDistribution.BIN_COUNT; i++) {
+            String label = EnergyDistribution.binLabel(i);
+            helpers.getData().add(new XYChart.Data<>(label, metricsHistory.getBin(row, MetricsSeries.HELPER, i)));
+            selfish.getData().add(new XYChart.Data<>(label, metricsHistory.getBin(row, MetricsSeries.SELFISH, i)));
+        }
 
-        int binSize = 10;
-        int binCount = 10;
-        int[] bins = new int[binCount];
+        Collections.addAll(chart.getData(), helpers, selfish);
+    }
 
-        for (double energy : metrics.getEnergySnapshot()) {
-            int index = Math.min((int)(energy / binSize), binCount - 1);
-            bins[index]++;
-        }
+    // Mean of each quantity across replicates, between dashed lines bounding its 95% confidence interval
+    private LineChart<Number, Number> plotEnsemble(EnsembleMetrics ensemble, String title, String yLabel, int... quantities) {
+        NumberAxis xAxis = new NumberAxis();
+        xAxis.setLabel("Tick");
 
-        for (int i = 0; i < bins.length; i++) {
-            String label = (i * binSize) + "-" + ((i + 1) * binSize);
-            series.getData().add(new XYChart.Data<>(label, bins[i]));
+        NumberAxis yAxis = new NumberAxis();
+        yAxis.setLabel(yLabel);
+
+        LineChart<Number, Number> chart = new LineChart<>(xAxis, yAxis);
+        chart.setTitle(title + " (mean and 95% CI)");
+        chart.setCreateSymbols(false);
+
+        for (int i = 0; i < quantities.length; i++) {
+            int quantity = quantities[i];
+            String label = EnsembleMetrics.LABELS[quantity];
+            XYChart.Series<Number, Number> mean = new XYChart.Series<>();
+            mean.setName(label);
+            XYChart.Series<Number, Number> lower = new XYChart.Series<>();
+            lower.setName(label + " CI low");
+            XYChart.Series<Number, Number> upper = new XYChart.Series<>();
+            upper.setName(label + " CI high");
+
+            for (int tick = 0; tick <= ensemble.getLastTick(); tick++) {
+                if (ensemble.getReplicates(tick) == 0) continue;
+                double centre = ensemble.getMean(tick, quantity);
+                mean.getData().add(new XYChart.Data<>(tick, centre));
+                double halfWidth = ensemble.getConfidenceHalfWidth(tick, quantity);
+                if (!Double.isNaN(halfWidth)) {
+                    lower.getData().add(new XYChart.Data<>(tick, centre - halfWidth));
+                    upper.getData().add(new XYChart.Data<>(tick, centre + halfWidth));
+                }
+            }
+
+            Collections.addAll(chart.getData(), mean, lower, upper);
+            String colour = SERIES_COLOURS[i % SERIES_COLOURS.length];
+            mean.getNode().setStyle("-fx-stroke: " + colour + "; -fx-stroke-width: 2px;");
+            lower.getNode().setStyle("-fx-stroke: " + colour + "; -fx-stroke-width: 1px; -fx-stroke-dash-array: 4 4;");
+            upper.getNode().setStyle("-fx-stroke: " + colour + "; -fx-stroke-width: 1px; -fx-stroke-dash-array: 4 4;");
         }
+        return chart;
+    }
 
-        chart.getData().add(series);
+    // The plain name if present, else its gzipped form, else null
+    private static String existing(String filename) {
+        if (Files.exists(Path.of(filename))) return filename;
+        if (Files.exists(Path.of(filename + ".gz"))) return filename + ".gz";
+        return null;
     }
 
     public static void main(String[] args) {
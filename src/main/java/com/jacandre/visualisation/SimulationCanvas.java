@@ -13,6 +13,11 @@ public class SimulationCanvas extends Canvas {
         super(gridSize * CELL_SIZE, gridSize * CELL_SIZE);
     }
 
+    public void setGridSize(int gridSize) {
+        setWidth(gridSize * CELL_SIZE);
+        setHeight(gridSize * CELL_SIZE);
+    }
+
     public void render(GridSnapshot snapshot) {
         GraphicsContext gc = getGraphicsContext2D();
         gc.clearRect(0, 0, getWidth(), getHeight());
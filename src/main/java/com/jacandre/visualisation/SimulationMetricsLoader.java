@@ -1,64 +1,244 @@
 package com.jacandre.visualisation;
 
-import com.jacandre.timeline.SimulationMetrics;
-import com.opencsv.CSVReader;
-import com.opencsv.exceptions.CsvValidationException;
-import lombok.extern.slf4j.Slf4j;
+import com.jacandre.export.CSVEncoder;
+import com.jacandre.timeline.CSVLoader;
+import com.jacandre.timeline.EnergyDistribution;
+import com.jacandre.timeline.EnsembleMetrics;
+import com.jacandre.timeline.MetricsSeries;
 
-import java.io.FileReader;
+import java.io.BufferedReader;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
-@Slf4j
+/**
+ * Streams a metrics CSV (as written by MetricsCSVExporter, optionally gzipped) into a MetricsSeries.
+ * Fields are parsed from the raw bytes into reused per-row arrays, so loading allocates nothing per row
+ * beyond the growth of the columns themselves.
+ */
 public class SimulationMetricsLoader {
-    public static List<SimulationMetrics> loadFromCSV(String filename) {
-        List<SimulationMetrics> metricsList = new ArrayList<>();
-        try (CSVReader reader = new CSVReader(new FileReader(filename))) {
-            reader.readNext(); // skip header
-            String[] parts;
-            while ((parts = reader.readNext()) != null) {
-                SimulationMetrics metrics = getSimulationMetrics(parts);
-                metricsList.add(metrics);
-            }
-        } catch (IOException | CsvValidationException e) {
-            log.error("Failed to load CSV: {}", (Object) e.getStackTrace());
+    private static final int QUANTILES = EnergyDistribution.REPORTED_QUANTILES.length;
+    private static final int BINS = EnergyDistribution.BIN_COUNT;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+    };
+
+    public static MetricsSeries loadSeries(String filename) throws IOException {
+        long fileSize = CSVEncoder.isCompressed(filename) ? -1 : Files.size(Path.of(filename));
+        try (InputStream in = CSVLoader.openStream(filename)) {
+            return new RowParser(in).parse(fileSize);
         }
-        return metricsList;
     }
 
-    private static SimulationMetrics getSimulationMetrics(String[] parts) {
-        SimulationMetrics metrics = new SimulationMetrics();
-        metrics.setTick(Integer.parseInt(parts[0]));
-        metrics.setAvgEnergy(Double.parseDouble(parts[1]));
-        metrics.setTotalBirths(Integer.parseInt(parts[2]));
-        metrics.setTotalDeaths(Integer.parseInt(parts[3]));
-        metrics.setHelperCount(Integer.parseInt(parts[4]));
-        metrics.setSelfishCount(Integer.parseInt(parts[5]));
-        metrics.setHelperBirths(Integer.parseInt(parts[6]));
-        metrics.setSelfishBirths(Integer.parseInt(parts[7]));
-
-        // Rejoin all remaining parts for snapshot
-        String snapshotRaw = String.join(",", Arrays.copyOfRange(parts, 8, parts.length));
-        metrics.setEnergySnapshot(parseEnergySnapshot(snapshotRaw));
-
-        log.info("Raw snapshot string: {}", snapshotRaw);
-        log.info("Parsed snapshot size: {}", metrics.getEnergySnapshot().size());
-
-        return metrics;
+    // Reads an ensemble CSV (as written by EnsembleCSVExporter); one row per tick, so plain splitting will do
+    public static EnsembleMetrics loadEnsemble(String filename) throws IOException {
+        EnsembleMetrics ensemble = new EnsembleMetrics();
+        double[] means = new double[EnsembleMetrics.QUANTITIES];
+        double[] stdDevs = new double[EnsembleMetrics.QUANTITIES];
+        try (BufferedReader reader = CSVLoader.openReader(filename)) {
+            reader.readLine(); // header
+            String line;
+            int lineNumber = 1;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isEmpty()) continue;
+                String[] fields = line.split(",", -1);
+                if (fields.length != 2 + 3 * EnsembleMetrics.QUANTITIES) {
+                    throw new IOException("Expected " + (2 + 3 * EnsembleMetrics.QUANTITIES) + " fields on line "
+                            + lineNumber + " of the ensemble CSV");
+                }
+                try {
+                    for (int q = 0; q < EnsembleMetrics.QUANTITIES; q++) {
+                        means[q] = Double.parseDouble(fields[2 + 3 * q]);
+                        stdDevs[q] = fields[3 + 3 * q].isEmpty() ? Double.NaN : Double.parseDouble(fields[3 + 3 * q]);
+                    }
+                    ensemble.putSummary(Integer.parseInt(fields[0]), Long.parseLong(fields[1]), means, stdDevs);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Malformed number on line " + lineNumber + " of the ensemble CSV", e);
+                }
+            }
+        }
+        return ensemble;
     }
 
-    private static List<Double> parseEnergySnapshot(String snapshotString) {
-        if (snapshotString == null || snapshotString.isEmpty()) return Collections.emptyList();
+    private static final class RowParser {
+        private final InputStream in;
+        private final byte[] buffer = new byte[1 << 16];
+        private int position;
+        private int limit;
+        private int line = 1;
+
+        private final int[] counts = new int[MetricsSeries.COUNT_COLUMNS];
+        private final double[] quantiles = new double[2 * QUANTILES];
+        private final int[] bins = new int[2 * BINS];
+        private final byte[] field = new byte[64];
+
+        RowParser(InputStream in) {
+            this.in = in;
+        }
+
+        MetricsSeries parse(long fileSize) throws IOException {
+            skipLine(); // header
+            MetricsSeries.Builder series = new MetricsSeries.Builder(expectedRows(fileSize));
+            while (peek() != -1) {
+                line++;
+                if (peek() == '\n' || peek() == '\r') {
+                    skipLine();
+                    continue;
+                }
+                int tick = (int) readLong();
+                expect(',');
+                double avg = readDouble();
+                for (int c = 0; c < MetricsSeries.COUNT_COLUMNS; c++) {
+                    expect(',');
+                    counts[c] = (int) readLong();
+                }
+                for (int q = 0; q < quantiles.length; q++) {
+                    expect(',');
+                    quantiles[q] = readDouble();
+                }
+                for (int g = 0; g < 2; g++) {
+                    expect(',');
+                    expect('"');
+                    for (int b = 0; b < BINS; b++) {
+                        if (b > 0) expect(',');
+                        bins[g * BINS + b] = (int) readLong();
+                    }
+                    expect('"');
+                }
+                skipLine();
+                series.addRow(tick, avg, counts, quantiles, bins);
+            }
+            return series.build();
+        }
 
-        snapshotString = snapshotString.replaceAll("^\"|\"$", "");
+        // Extrapolates the row count from the rows in the first buffer, so the columns are sized once
+        private int expectedRows(long fileSize) {
+            int rows = 0;
+            for (int i = position; i < limit; i++) {
+                if (buffer[i] == '\n') rows++;
+            }
+            if (fileSize < 0 || rows == 0) {
+                return 1024;
+            }
+            double bytesPerRow = (double) (limit - position) / rows;
+            return (int) Math.min(Integer.MAX_VALUE / 32, fileSize / bytesPerRow * 1.02 + 16);
+        }
+
+        private long readLong() throws IOException {
+            int c = next();
+            boolean negative = c == '-';
+            if (negative) c = next();
+            long value = 0;
+            int digits = 0;
+            for (; c >= '0' && c <= '9'; c = next()) {
+                value = value * 10 + (c - '0');
+                digits++;
+            }
+            unread(c);
+            if (digits == 0) {
+                throw error("Expected a number");
+            }
+            return negative ? -value : value;
+        }
+
+        // Plain decimals of up to 15 digits are exact as long / 10^k; anything else goes to Double.parseDouble
+        private double readDouble() throws IOException {
+            int length = 0;
+            int c = next();
+            for (; c != ',' && c != '\n' && c != '\r' && c != -1; c = next()) {
+                if (length == field.length) {
+                    throw error("Field too long");
+                }
+                field[length++] = (byte) c;
+            }
+            unread(c);
+            if (length == 0) {
+                return Double.NaN; // group had no agents
+            }
+
+            int start = field[0] == '-' ? 1 : 0;
+            long mantissa = 0;
+            int digits = 0;
+            int decimals = -1;
+            for (int k = start; k < length; k++) {
+                c = field[k];
+                if (c >= '0' && c <= '9' && digits < 15) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    digits++;
+                    if (decimals >= 0) decimals++;
+                } else if (c == '.' && decimals < 0) {
+                    decimals = 0;
+                } else {
+                    return parseSlowly(length);
+                }
+            }
+            if (digits == 0) {
+                return parseSlowly(length);
+            }
+            double value = decimals > 0 ? mantissa / POWERS_OF_TEN[decimals] : mantissa;
+            return start == 1 ? -value : value;
+        }
 
-        return Arrays.stream(snapshotString.split(","))
-                .map(String::trim)
-                .map(s -> s.isEmpty() ? 0.0 : Double.parseDouble(s)) // If position is empty, fill with placeholder to avoid misaligned plotting
-                .collect(Collectors.toList());
+        private double parseSlowly(int length) throws IOException {
+            String text = new String(field, 0, length, StandardCharsets.US_ASCII);
+            try {
+                return Double.parseDouble(text);
+            } catch (NumberFormatException e) {
+                throw error("Malformed number '" + text + "'");
+            }
+        }
+
+        private void expect(char expected) throws IOException {
+            if (peek() != expected) {
+                throw error("Expected '" + expected + "'");
+            }
+            next();
+        }
+
+        private void skipLine() throws IOException {
+            int c;
+            while ((c = next()) != -1 && c != '\n') {
+                // rest of the line
+            }
+        }
+
+        // Steps back over the byte next() just returned; the buffer is never refilled in between
+        private void unread(int c) {
+            if (c != -1) {
+                position--;
+            }
+        }
+
+        // Kept tiny so they inline; fill() is the rare slow path
+        private int peek() throws IOException {
+            if (position < limit || fill()) {
+                return buffer[position] & 0xFF;
+            }
+            return -1;
+        }
+
+        private int next() throws IOException {
+            if (position < limit || fill()) {
+                return buffer[position++] & 0xFF;
+            }
+            return -1;
+        }
+
+        private boolean fill() throws IOException {
+            int read = in.read(buffer, 0, buffer.length);
+            if (read <= 0) {
+                return false;
+            }
+            position = 0;
+            limit = read;
+            return true;
+        }
+
+        private IOException error(String message) {
+            return new IOException(message + " on line " + line + " of the metrics CSV");
+        }
     }
 }
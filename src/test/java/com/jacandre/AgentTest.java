@@ -0,0 +1,68 @@
+package com.jacandre;
+
+import com.jacandre.models.Agent;
+import com.jacandre.models.AgentStore;
+import com.jacandre.strategy.AgentStrategy;
+import com.jacandre.strategy.HelperStrategy;
+import com.jacandre.strategy.SelfishStrategy;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AgentTest {
+
+    private final AgentStrategy helperStrategy = new HelperStrategy();
+    private final AgentStrategy selfishStrategy = new SelfishStrategy();
+
+    @Test
+    void storedAgentReadsAndWritesThroughItsSlot() {
+        AgentStore store = new AgentStore();
+        Agent agent = new Agent(helperStrategy);
+        agent.setEnergy(42.0);
+        agent.setLastReproducedTick(7);
+
+        int slot = store.add(agent);
+
+        assertTrue(agent.isStored());
+        assertEquals(42.0, store.getEnergy(slot));
+        assertEquals(7, store.getLastReproducedTick(slot));
+        assertTrue(store.isHelper(slot));
+
+        agent.decreaseEnergy(2.0);
+        store.addEnergy(slot, -10.0);
+        agent.setStrategy(selfishStrategy);
+
+        assertEquals(30.0, agent.getEnergy());
+        assertTrue(agent.isSelfish());
+        assertTrue(store.isSelfish(slot));
+    }
+
+    @Test
+    void removingAgentCompactsSlotsAndDetachesHandle() {
+        AgentStore store = new AgentStore();
+        Agent first = new Agent(helperStrategy);
+        Agent second = new Agent(selfishStrategy);
+        Agent third = new Agent(helperStrategy);
+        first.setEnergy(1.0);
+        second.setEnergy(2.0);
+        third.setEnergy(3.0);
+        store.add(first);
+        store.add(second);
+        store.add(third);
+
+        store.remove(first);
+
+        assertEquals(2, store.size());
+        assertFalse(first.isStored());
+        assertEquals(1.0, first.getEnergy(), "Detached handle should keep its last state");
+
+        // The last agent fills the freed slot and still resolves to its own state
+        assertEquals(0, third.getSlot());
+        assertSame(third, store.getAgent(0));
+        assertEquals(3.0, third.getEnergy());
+        assertEquals(2.0, second.getEnergy());
+        assertEquals(List.of(third, second), store.asList());
+    }
+}
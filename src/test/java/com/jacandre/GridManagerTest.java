@@ -0,0 +1,246 @@
+package com.jacandre;
+
+import com.jacandre.core.Constants;
+import com.jacandre.core.GridBackend;
+import com.jacandre.core.GridManager;
+import com.jacandre.models.Agent;
+import com.jacandre.models.AgentStore;
+import com.jacandre.models.Food;
+import com.jacandre.models.GridEntity;
+import com.jacandre.strategy.HelperStrategy;
+import com.jacandre.strategy.SelfishStrategy;
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GridManagerTest {
+
+    @Test
+    void indexedRadiusQueryMatchesFullScan() {
+        int gridSize = 23;
+        GridManager grid = new GridManager(gridSize);
+        Random random = new Random(7);
+
+        for (int i = 0; i < 120; i++) {
+            GridEntity entity = random.nextBoolean() ? new Agent(new SelfishStrategy()) : new Food();
+            grid.placeEntity(entity, new Point(random.nextInt(gridSize), random.nextInt(gridSize)));
+        }
+
+        // Shuffle some agents around so the index has to follow moves and removals
+        for (Point p : grid.getAgentEntities().keySet()) {
+            GridEntity agent = grid.getEntityAt(p);
+            if (random.nextInt(3) == 0) {
+                grid.removeEntity(agent);
+            } else {
+                grid.moveEntity(agent, new Point(p.x + random.nextInt(3) - 1, p.y + random.nextInt(3) - 1));
+            }
+        }
+
+        for (int radius : new int[]{0, 1, 3, 7, 11, 12, 30, 100}) {
+            for (int i = 0; i < 20; i++) {
+                Point centre = new Point(random.nextInt(gridSize), random.nextInt(gridSize));
+                for (Class<? extends GridEntity> type : List.of(Agent.class, Food.class)) {
+                    Set<Point> expected = new HashSet<>();
+                    for (Point p : grid.getNeighbourPositions(centre, radius)) {
+                        if (!p.equals(centre) && type.isInstance(grid.getEntityAt(p))) {
+                            expected.add(p);
+                        }
+                    }
+
+                    List<Point> actual = grid.getEntitiesOfType(centre, radius, type);
+                    assertEquals(expected.size(), actual.size(), "Each match should be reported exactly once");
+                    assertEquals(expected, new HashSet<>(actual));
+                }
+            }
+        }
+    }
+
+    @Test
+    void foodDistanceFieldTracksPlacementAndRemoval() {
+        int gridSize = 19;
+        GridManager grid = new GridManager(gridSize);
+        Random random = new Random(11);
+        List<Food> placed = new ArrayList<>();
+
+        for (int round = 0; round < 200; round++) {
+            if (placed.isEmpty() || random.nextInt(3) > 0) {
+                Food food = new Food();
+                if (grid.placeEntity(food, new Point(random.nextInt(gridSize), random.nextInt(gridSize)))) {
+                    placed.add(food);
+                }
+            } else {
+                grid.removeEntity(placed.remove(random.nextInt(placed.size())));
+            }
+
+            for (int cell = 0; cell < gridSize * gridSize; cell++) {
+                int expected = Integer.MAX_VALUE;
+                boolean besideFood = false;
+                for (Food food : placed) {
+                    int foodCell = grid.getCellOf(food);
+                    int dx = Math.abs(grid.cellX(cell) - grid.cellX(foodCell));
+                    int dy = Math.abs(grid.cellY(cell) - grid.cellY(foodCell));
+                    dx = Math.min(dx, gridSize - dx);
+                    dy = Math.min(dy, gridSize - dy);
+                    expected = Math.min(expected, Math.max(dx, dy));
+                    besideFood |= dx + dy == 1;
+                }
+                assertEquals(expected, grid.foodDistanceAt(cell), "Distance at " + grid.pointOf(cell) + " in round " + round);
+
+                int step = grid.stepTowardFood(cell);
+                if (expected == Integer.MAX_VALUE || expected == 0) continue;
+                if (expected == 1 && !besideFood) {
+                    // Food only diagonal to the cell is approached from a cell beside it
+                    assertEquals(1, grid.foodDistanceAt(step), "Step should lead beside diagonal food");
+                    continue;
+                }
+                assertEquals(expected - 1, grid.foodDistanceAt(step), "Step should lead one move closer to food");
+            }
+        }
+    }
+
+    @Test
+    void needyIndexFollowsEnergyCrossingsAndMoves() {
+        int gridSize = 17;
+        GridManager grid = new GridManager(gridSize);
+        AgentStore store = new AgentStore();
+        Random random = new Random(5);
+
+        for (int i = 0; i < 60; i++) {
+            Agent agent = new Agent(new HelperStrategy());
+            agent.setEnergy(random.nextDouble() * 2 * Constants.LOW_ENERGY_THRESHOLD);
+            if (grid.placeEntity(agent, new Point(random.nextInt(gridSize), random.nextInt(gridSize)))) {
+                store.add(agent);
+            }
+        }
+
+        for (int round = 0; round < 50; round++) {
+            for (Agent agent : List.copyOf(store.asList())) {
+                switch (random.nextInt(4)) {
+                    case 0 -> agent.increaseEnergy(random.nextDouble() * Constants.LOW_ENERGY_THRESHOLD);
+                    case 1 -> agent.decreaseEnergy(random.nextDouble() * Constants.LOW_ENERGY_THRESHOLD);
+                    case 2 -> grid.moveEntity(agent, grid.neighbourCell(grid.getCellOf(agent), random.nextInt(3) - 1, random.nextInt(3) - 1));
+                    default -> {
+                        if (random.nextInt(10) == 0) {
+                            grid.removeEntity(agent);
+                            store.remove(agent);
+                        }
+                    }
+                }
+            }
+            store.decreaseEnergyAll(0.5, store.size());
+
+            long needy = store.asList().stream().filter(a -> a.getEnergy() < Constants.LOW_ENERGY_THRESHOLD).count();
+            assertEquals(needy, grid.getLowEnergyAgentCount(), "Round " + round);
+
+            int centre = random.nextInt(gridSize * gridSize);
+            long expected = Long.MAX_VALUE;
+            for (Agent agent : store.asList()) {
+                int cell = grid.getCellOf(agent);
+                if (cell != centre && agent.getEnergy() < Constants.LOW_ENERGY_THRESHOLD) {
+                    expected = Math.min(expected, grid.planarDistanceSq(centre, cell));
+                }
+            }
+            int nearest = grid.findNearestLowEnergyAgent(centre, gridSize);
+            if (expected == Long.MAX_VALUE) {
+                assertEquals(-1, nearest);
+            } else {
+                assertEquals(expected, grid.planarDistanceSq(centre, nearest), "Round " + round);
+            }
+        }
+    }
+
+    @Test
+    void atomicBackendKeepsAgentsConsistentUnderConcurrentMoves() throws Exception {
+        int gridSize = 24;
+        GridManager grid = new GridManager(gridSize, GridBackend.ATOMIC);
+        Random random = new Random(3);
+        List<Agent> agents = new ArrayList<>();
+        while (agents.size() < 200) {
+            Agent agent = new Agent(new SelfishStrategy());
+            if (grid.placeEntity(agent, random.nextInt(gridSize * gridSize))) {
+                agents.add(agent);
+            }
+        }
+
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> runs = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            List<Agent> own = agents.subList(t * 50, (t + 1) * 50);
+            Random threadRandom = new Random(t);
+            runs.add(executor.submit(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    Agent agent = own.get(threadRandom.nextInt(own.size()));
+                    int cell = grid.getCellOf(agent);
+                    grid.moveEntity(agent, grid.neighbourCell(cell, threadRandom.nextInt(3) - 1, threadRandom.nextInt(3) - 1));
+                }
+            }));
+        }
+        for (Future<?> run : runs) {
+            run.get();
+        }
+        executor.shutdown();
+
+        assertEquals(agents.size(), grid.getAgentCount());
+        assertEquals(agents.size(), grid.getAgentEntities().size(), "No agent should be left in two cells");
+        for (Agent agent : agents) {
+            assertSame(agent, grid.getEntityAt(grid.getCellOf(agent)));
+        }
+    }
+
+    @Test
+    void hugeSparseGridOnlyAllocatesTheChunksItUses() {
+        int gridSize = 10_000;
+        GridManager grid = new GridManager(gridSize);
+        assertEquals(0, grid.getAllocatedChunkCount());
+
+        Agent agent = new Agent(new SelfishStrategy());
+        assertTrue(grid.placeEntity(agent, grid.cellOf(gridSize - 1, gridSize - 1)));
+        Food food = new Food();
+        assertTrue(grid.placeEntity(food, grid.cellOf(1, 1)));
+        assertEquals(2, grid.getAllocatedChunkCount());
+
+        // Moving across the wrap into the food's chunk empties the agent's old one
+        assertTrue(grid.moveEntity(agent, grid.cellOf(0, 0)));
+        assertEquals(1, grid.foodDistanceAt(grid.getCellOf(agent)));
+        // The food is diagonal, so the step goes beside it rather than onto it
+        assertEquals(grid.cellOf(1, 0), grid.stepTowardFood(grid.getCellOf(agent)));
+        assertEquals(Map.of(new Point(0, 0), agent), grid.getAgentEntities());
+        assertEquals(2, grid.getAllocatedChunkCount());
+        grid.releaseEmptyChunks();
+        assertEquals(1, grid.getAllocatedChunkCount());
+
+        for (int i = 0; i < 100; i++) {
+            int cell = grid.getNextAvailableCell();
+            assertTrue(grid.placeEntity(new Agent(new SelfishStrategy()), cell));
+        }
+        assertEquals(gridSize * gridSize - 102, grid.availableCount());
+    }
+
+    @Test
+    void freeCellsAreFoundUntilTheGridIsFull() {
+        int gridSize = 37;
+        for (GridBackend backend : GridBackend.values()) {
+            GridManager grid = new GridManager(gridSize, backend);
+            Set<Integer> filled = new HashSet<>();
+            int cell;
+            while ((cell = grid.getNextAvailableCell()) >= 0) {
+                assertTrue(filled.add(cell), "Cell " + cell + " was handed out while occupied");
+                assertTrue(grid.placeEntity(new Agent(new SelfishStrategy()), cell));
+            }
+            assertEquals(gridSize * gridSize, filled.size());
+            assertEquals(0, grid.availableCount());
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.jacandre;
+
+import com.jacandre.core.Simulation;
+import com.jacandre.export.CSVEncoder;
+import com.jacandre.export.MetricsCSVExporter;
+import com.jacandre.timeline.CSVLoader;
+import com.jacandre.timeline.EnergyDistribution;
+import com.jacandre.timeline.MetricsSeries;
+import com.jacandre.timeline.SimulationMetrics;
+import com.jacandre.visualisation.SimulationMetricsLoader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsExportTest {
+
+    @Test
+    void csvEncoderMatchesFormatterByteForByte(@TempDir Path dir) throws Exception {
+        Random random = new Random(3);
+        List<Double> values = new ArrayList<>(List.of(0.0, -0.0, 0.005, 0.015, 0.125, 1.005, 2.675, 99.995,
+                -3.14159, 1e12 + 0.125, Double.NaN, Double.POSITIVE_INFINITY, 123456.785));
+        for (int i = 0; i < 20_000; i++) {
+            values.add(random.nextDouble() * Math.pow(10, random.nextInt(8)));
+            values.add(random.nextInt(1_000_000) / 1000.0); // exact thousandths, many of them ties
+        }
+
+        Path plain = dir.resolve("values.csv");
+        StringBuilder expected = new StringBuilder();
+        try (CSVEncoder encoder = new CSVEncoder(plain)) {
+            for (double value : values) {
+                long whole = (long) value;
+                encoder.writeFixed2(value).writeChar(',').writeInt(whole).writeChar(',').writeInt(-whole).endLine();
+                expected.append(String.format("%.2f,%d,%d%n", value, whole, -whole));
+            }
+        }
+        assertEquals(expected.toString(), Files.readString(plain));
+
+        Simulation sim = SeededWorld.simulation(9);
+        for (int i = 0; i < 5; i++) {
+            sim.stepSimulation();
+        }
+        Path metrics = dir.resolve("metrics.csv.gz");
+        MetricsCSVExporter.exportMetricsToCSV(metrics.toString(), sim.getMetricsHistory());
+        try (BufferedReader reader = CSVLoader.openReader(metrics.toString())) {
+            reader.readLine();
+            for (SimulationMetrics row : sim.getMetricsHistory()) {
+                assertEquals(row.toCSVRow(), reader.readLine());
+            }
+            assertNull(reader.readLine());
+        }
+    }
+
+
+    @Test
+    void quotedFieldsEscapeQuotesAndLineBreaks(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("quoted.csv");
+        try (CSVEncoder encoder = new CSVEncoder(file)) {
+            encoder.writeQuoted("ratio \"settled\"\r\nafter 40 ticks").writeChar(',').writeQuoted("").endLine();
+        }
+        assertEquals(List.of("\"ratio \"\"settled\"\" after 40 ticks\",\"\""), Files.readAllLines(file));
+    }
+
+    @Test
+    void metricsSeriesLoadsWhatWasExported(@TempDir Path dir) throws Exception {
+        Simulation sim = SeededWorld.simulation(11);
+        for (int i = 0; i < 25; i++) {
+            sim.stepSimulation();
+        }
+        MetricsSeries expected = MetricsSeries.of(sim.getMetricsHistory());
+
+        for (String name : new String[]{"metrics.csv", "metrics.csv.gz"}) {
+            Path file = dir.resolve(name);
+            MetricsCSVExporter.exportMetricsToCSV(file.toString(), sim.getMetricsHistory());
+            MetricsSeries loaded = SimulationMetricsLoader.loadSeries(file.toString());
+
+            assertEquals(expected.size(), loaded.size());
+            for (int row = 0; row < loaded.size(); row++) {
+                assertEquals(expected.getTick(row), loaded.getTick(row));
+                assertEquals(twoDecimals(expected.getAvgEnergy(row)), loaded.getAvgEnergy(row));
+                for (int c = 0; c < MetricsSeries.COUNT_COLUMNS; c++) {
+                    assertEquals(expected.getCount(row, c), loaded.getCount(row, c));
+                }
+                for (int g : new int[]{MetricsSeries.HELPER, MetricsSeries.SELFISH}) {
+                    for (int q = 0; q < EnergyDistribution.REPORTED_QUANTILES.length; q++) {
+                        assertEquals(twoDecimals(expected.getQuantile(row, g, q)), loaded.getQuantile(row, g, q));
+                    }
+                    for (int b = 0; b < EnergyDistribution.BIN_COUNT; b++) {
+                        assertEquals(expected.getBin(row, g, b), loaded.getBin(row, g, b));
+                    }
+                }
+            }
+        }
+    }
+
+    private static double twoDecimals(double value) {
+        return Double.isNaN(value) ? value : Double.parseDouble(String.format("%.2f", value));
+    }
+}
@@ -0,0 +1,57 @@
+package com.jacandre;
+
+import com.jacandre.core.GridBackend;
+import com.jacandre.core.GridManager;
+import com.jacandre.core.Simulation;
+import com.jacandre.core.SimulationConfig;
+import com.jacandre.models.Agent;
+import com.jacandre.models.Food;
+import com.jacandre.strategy.AgentStrategy;
+import com.jacandre.strategy.HelperStrategy;
+import com.jacandre.strategy.SelfishStrategy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Populated worlds for the tests that need a run with some history behind it. The same seed always gives
+ * the same world.
+ */
+final class SeededWorld {
+    static final SimulationConfig DEFAULT = SimulationConfig.builder()
+            .gridSize(30)
+            .numAgents(150)
+            .maxFoodSources(60)
+            .seed(0)
+            .build();
+
+    private static final AgentStrategy HELPER = new HelperStrategy();
+    private static final AgentStrategy SELFISH = new SelfishStrategy();
+
+    private SeededWorld() {
+    }
+
+    static Simulation simulation(long seed) {
+        return simulation(seed, DEFAULT);
+    }
+
+    // Up to numAgents agents of random strategy and energy and up to maxFoodSources food, at random cells
+    static Simulation simulation(long seed, SimulationConfig config) {
+        Random random = new Random(seed);
+        int gridSize = config.getGridSize();
+        GridManager grid = new GridManager(config, GridBackend.LOCKING);
+        List<Agent> agents = new ArrayList<>();
+        for (int i = 0; i < config.getNumAgents(); i++) {
+            Agent agent = new Agent(random.nextBoolean() ? HELPER : SELFISH);
+            agent.setEnergy(1 + random.nextInt(80));
+            if (grid.placeEntity(agent, grid.cellOf(random.nextInt(gridSize), random.nextInt(gridSize)))) {
+                agents.add(agent);
+            }
+        }
+        for (int i = 0; i < config.getMaxFoodSources(); i++) {
+            grid.placeEntity(new Food(), grid.cellOf(random.nextInt(gridSize), random.nextInt(gridSize)));
+        }
+        return new Simulation(grid, agents, List.of(), random);
+    }
+}
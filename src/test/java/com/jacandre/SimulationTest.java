@@ -1,16 +1,41 @@
 package com.jacandre;
 
+import com.jacandre.core.Checkpoint;
 import com.jacandre.core.Constants;
+import com.jacandre.core.FermiTable;
+import com.jacandre.core.GridBackend;
 import com.jacandre.core.GridManager;
+import com.jacandre.core.ShardCoordinator;
 import com.jacandre.core.Simulation;
+import com.jacandre.core.SimulationConfig;
+import com.jacandre.core.SweepRunner;
+import com.jacandre.core.UpdateMode;
+import com.jacandre.export.EnsembleCSVExporter;
 import com.jacandre.models.*;
 import com.jacandre.strategy.AgentStrategy;
 import com.jacandre.strategy.HelperStrategy;
 import com.jacandre.strategy.SelfishStrategy;
+import com.jacandre.termination.FixationDetector;
+import com.jacandre.termination.RatioStabilityDetector;
+import com.jacandre.termination.Termination;
+import com.jacandre.timeline.EnergyDistribution;
+import com.jacandre.timeline.EnsembleMetrics;
+import com.jacandre.timeline.QuantileSketch;
+import com.jacandre.timeline.SimulationMetrics;
+import com.jacandre.timeline.TickHistory;
+import com.jacandre.visualisation.SimulationMetricsLoader;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.awt.*;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -40,6 +65,28 @@ class SimulationTest {
         assertInstanceOf(Agent.class, grid.getEntityAt(foodPos), "Food should be consumed and removed and replaced with Agent");
     }
 
+    @Test
+    void agentConsumesFoodAcrossTheWrap() {
+        GridManager grid = new GridManager(10);
+        Agent beside = new Agent(selfishStrategy);
+        Agent diagonal = new Agent(selfishStrategy);
+        Point besideFood = new Point(9, 5);
+        Point diagonalFood = new Point(9, 9);
+
+        grid.placeEntity(beside, new Point(0, 5));
+        grid.placeEntity(new Food(), besideFood);
+        grid.placeEntity(diagonal, new Point(0, 0));
+        grid.placeEntity(new Food(), diagonalFood);
+
+        Simulation sim = new Simulation(grid, List.of(beside, diagonal), List.of(), new Random(42));
+        sim.stepSimulation();
+        assertSame(beside, grid.getEntityAt(besideFood), "Food beside the agent across the seam should be eaten");
+
+        // Diagonal food is reached through a cell beside it, then eaten
+        sim.stepSimulation();
+        assertSame(diagonal, grid.getEntityAt(diagonalFood), "Food diagonal to the agent across both seams should be eaten");
+    }
+
     @Test
     void helperAssistsLowEnergyAgent() {
         GridManager grid = new GridManager(5);
@@ -130,7 +177,9 @@ class SimulationTest {
             sim.stepSimulation();
         }
 
-        assertNull(grid.getEntityAt(pos), "Food should be removed after expiration");
+        // Fresh food may be generated on the freed cell, so look for this food rather than an empty cell
+        assertNull(grid.getPositionOf(food), "Food should be removed after expiration");
+        assertNotSame(food, grid.getEntityAt(pos));
     }
 
     @Test
@@ -157,4 +206,412 @@ class SimulationTest {
         assertEquals(2, sim.getLivingAgents().size(), "Agent should reproduce after cooldown");
     }
 
+    @Test
+    void tiledParallelModeKeepsGridAndPopulationConsistent() {
+        GridManager grid = new GridManager(40);
+        Random random = new Random(42);
+        List<Agent> agents = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            Agent agent = new Agent(random.nextBoolean() ? helperStrategy : selfishStrategy);
+            if (grid.placeEntity(agent, new Point(random.nextInt(40), random.nextInt(40)))) {
+                agents.add(agent);
+            }
+        }
+        for (int i = 0; i < 150; i++) {
+            grid.placeEntity(new Food(), new Point(random.nextInt(40), random.nextInt(40)));
+        }
+
+        Simulation sim = new Simulation(grid, agents, List.of(), random);
+        sim.setUpdateMode(UpdateMode.TILED_PARALLEL);
+        sim.setThreads(4);
+
+        for (int i = 0; i < 30; i++) {
+            sim.stepSimulation();
+
+            assertEquals(sim.getLivingAgents().size(), grid.getAgentCount(), "Every living agent should hold exactly one cell");
+            for (Agent agent : sim.getLivingAgents()) {
+                assertSame(agent, grid.getEntityAt(grid.getCellOf(agent)), "Agent should be where the grid says it is");
+            }
+        }
+    }
+
+    @Test
+    void synchronousModeGivesContestedFoodToStrongerAgent() {
+        GridManager grid = new GridManager(9);
+        Agent weaker = new Agent(selfishStrategy);
+        Agent stronger = new Agent(selfishStrategy);
+        weaker.setEnergy(30.0);
+        stronger.setEnergy(40.0);
+        Point foodPos = new Point(4, 4);
+
+        grid.placeEntity(weaker, new Point(3, 4));
+        grid.placeEntity(stronger, new Point(5, 4));
+        grid.placeEntity(new Food(), foodPos);
+
+        Simulation sim = new Simulation(grid, List.of(weaker, stronger), List.of(), new Random(42));
+        sim.setUpdateMode(UpdateMode.SYNCHRONOUS);
+        sim.setThreads(2);
+        sim.stepSimulation();
+
+        // Both agents decided to eat before either acted; only the stronger one gets the food
+        assertSame(stronger, grid.getEntityAt(foodPos), "Stronger agent should eat and step onto the food");
+        assertEquals(40.0 + Constants.FOOD_REWARD - Constants.MOVE_COST - Constants.COST_OF_LIVING, stronger.getEnergy(), 1e-9);
+        assertEquals(30.0 - Constants.COST_OF_LIVING, weaker.getEnergy(), 1e-9, "Losing contender should get nothing");
+    }
+
+    @Test
+    void sameSeedReplaysRunWhateverTheThreadCount() {
+        List<Double> reference = null;
+        for (int threads : new int[]{1, 3}) {
+            Simulation sim = SeededWorld.simulation(99);
+            sim.setUpdateMode(UpdateMode.SYNCHRONOUS);
+            sim.setThreads(threads);
+            for (int i = 0; i < 40; i++) {
+                sim.stepSimulation();
+            }
+
+            List<Double> energies = sim.getLivingAgents().stream().map(Agent::getEnergy).toList();
+            if (reference == null) {
+                reference = energies;
+            } else {
+                assertEquals(reference, energies, "Same seed should give the same population on " + threads + " threads");
+            }
+        }
+    }
+
+    @Test
+    void timelineKeepsEachTickAsItWas() {
+        Simulation sim = SeededWorld.simulation(7);
+        GridManager grid = sim.getGridManager();
+        List<Map<Point, Double>> expected = new ArrayList<>();
+
+        for (int i = 0; i < 75; i++) {
+            sim.stepSimulation();
+            Map<Point, Double> energies = new HashMap<>();
+            for (Agent agent : sim.getLivingAgents()) {
+                energies.put(grid.getPositionOf(agent), agent.getEnergy());
+            }
+            expected.add(energies);
+        }
+
+        TickHistory timeline = sim.getTimeline();
+        assertEquals(75, timeline.getTickCount());
+
+        int tick = 1;
+        for (TickSnapshot snapshot : timeline) {
+            assertEquals(tick, snapshot.tick());
+            assertEquals(snapshot.gridState(), timeline.getSnapshotAt(tick).gridState(), "Indexed and sequential reads should agree");
+
+            Map<Point, Double> recorded = new HashMap<>();
+            snapshot.gridState().forEach((p, state) -> {
+                if (state.type() == CellState.Type.AGENT) recorded.put(p, state.energy());
+            });
+            assertEquals(expected.get(tick - 1), recorded, "Tick " + tick + " should keep the energies it had then");
+            tick++;
+        }
+    }
+
+    @Test
+    void metricsSummariseEnergyPerStrategy() {
+        Simulation sim = SeededWorld.simulation(5);
+        sim.stepSimulation();
+        SimulationMetrics metrics = sim.getMetricsHistory().getLast();
+
+        List<Double> helpers = new ArrayList<>();
+        for (Agent agent : sim.getLivingAgents()) {
+            if (agent.isHelper()) {
+                helpers.add(agent.getEnergy());
+            }
+        }
+        helpers.sort(null);
+        EnergyDistribution helperEnergy = metrics.getHelperEnergy();
+        assertEquals(metrics.getHelperCount(), helperEnergy.getCount());
+        for (double q : EnergyDistribution.REPORTED_QUANTILES) {
+            double exact = helpers.get((int) (q * (helpers.size() - 1)));
+            assertEquals(exact, helperEnergy.quantile(q), exact * QuantileSketch.DEFAULT_RELATIVE_ACCURACY + 1e-9);
+        }
+
+        // Merging sketches of two halves answers like one sketch of the whole
+        QuantileSketch whole = new QuantileSketch();
+        QuantileSketch low = new QuantileSketch();
+        QuantileSketch high = new QuantileSketch();
+        for (int i = 1; i <= 1000; i++) {
+            whole.add(i * 0.37);
+            (i % 2 == 0 ? low : high).add(i * 0.37);
+        }
+        low.merge(high);
+        assertEquals(1000, low.getCount());
+        for (double q : new double[]{0.0, 0.1, 0.5, 0.99, 1.0}) {
+            assertEquals(whole.quantile(q), low.quantile(q));
+        }
+    }
+
+    @Test
+    void resumedCheckpointContinuesTheSameRun(@TempDir Path dir) throws Exception {
+        Simulation original = SeededWorld.simulation(23);
+        for (int i = 0; i < 30; i++) {
+            original.stepSimulation();
+        }
+        Path file = dir.resolve("run.ckpt");
+        Checkpoint.save(original, file);
+        Simulation resumed = Checkpoint.load(file);
+
+        assertEquals(30, resumed.getTick());
+        assertEquals(original.getLivingAgents().size(), resumed.getLivingAgents().size());
+        for (int i = 0; i < 30; i++) {
+            original.stepSimulation();
+            resumed.stepSimulation();
+        }
+
+        assertEquals(original.getTick(), resumed.getTick());
+        assertEquals(original.getTotalDeaths(), resumed.getTotalDeaths());
+        assertEquals(original.getHelperBirths(), resumed.getHelperBirths());
+        assertEquals(original.getSelfishBirths(), resumed.getSelfishBirths());
+        assertEquals(30, resumed.getTimeline().getTickCount());
+        for (TickSnapshot snapshot : resumed.getTimeline()) {
+            assertEquals(original.getTimeline().getSnapshotAt(snapshot.tick()).gridState(), snapshot.gridState(),
+                    "Tick " + snapshot.tick() + " should match the uninterrupted run");
+        }
+        List<Agent> expected = original.getLivingAgents();
+        List<Agent> actual = resumed.getLivingAgents();
+        assertEquals(expected.size(), actual.size());
+        for (int slot = 0; slot < expected.size(); slot++) {
+            assertEquals(expected.get(slot).getKey(), actual.get(slot).getKey());
+            assertEquals(expected.get(slot).getEnergy(), actual.get(slot).getEnergy());
+        }
+
+        // Resuming for a number of ticks moves the tick limit past the checkpoint
+        Simulation extended = Checkpoint.resume(file, 4);
+        while (!extended.isTerminated()) {
+            extended.stepSimulation();
+        }
+        assertEquals(34, extended.getTick());
+    }
+
+    @Test
+    void sweepRunsEachConfigAsItWouldRunAlone() throws Exception {
+        SimulationConfig base = SimulationConfig.builder().gridSize(20).numAgents(60).maxTicks(40).build();
+        SweepRunner sweep = new SweepRunner(base)
+                .vary("foodReward", 20, 100)
+                .vary("reproductionCooldown", 10, 40)
+                .seeds(3, 4)
+                .threads(3);
+        List<SimulationConfig> configs = sweep.configs();
+        assertEquals(8, configs.size());
+
+        List<SweepRunner.RunSummary> summaries = new ArrayList<>();
+        sweep.run(summaries::add);
+        assertEquals(8, summaries.size());
+
+        for (SweepRunner.RunSummary summary : summaries) {
+            SimulationConfig config = configs.get(summary.run());
+            assertEquals(config, summary.config());
+            Simulation alone = new Simulation(config, GridBackend.LOCKING);
+            while (alone.getTick() < config.getMaxTicks() && !alone.getLivingAgents().isEmpty()) {
+                alone.stepSimulation();
+            }
+            assertEquals(alone.getTick(), summary.finalTick());
+            assertEquals(alone.getLivingAgents().size(), summary.agents());
+            assertEquals(alone.getHelperBirths() + alone.getSelfishBirths(), summary.helperBirths() + summary.selfishBirths());
+            assertEquals(alone.getAvgEnergy(), summary.avgEnergy());
+        }
+        assertNotEquals(summaries.stream().filter(r -> r.config().getFoodReward() == 20).mapToInt(SweepRunner.RunSummary::agents).sum(),
+                summaries.stream().filter(r -> r.config().getFoodReward() == 100).mapToInt(SweepRunner.RunSummary::agents).sum(),
+                "The varied parameter should reach the runs");
+    }
+
+    @Test
+    void ensembleAggregatesReplicatesTickByTick(@TempDir Path dir) throws Exception {
+        // Few agents with little energy, so replicates fixate on one strategy after different numbers of ticks
+        SimulationConfig base = SimulationConfig.builder().gridSize(20).numAgents(8).initialEnergy(20).maxTicks(30).build();
+        long[] seeds = {5, 6, 7, 8};
+        EnsembleMetrics ensemble = new SweepRunner(base).seeds(seeds).threads(2).terminateWhen(FixationDetector::new).runEnsemble();
+
+        List<List<SimulationMetrics>> replicates = new ArrayList<>();
+        for (long seed : seeds) {
+            Simulation sim = new Simulation(base.toBuilder().seed(seed).build(), GridBackend.LOCKING);
+            sim.addTerminationDetector(new FixationDetector());
+            while (!sim.isTerminated() && !sim.getLivingAgents().isEmpty()) {
+                sim.stepSimulation();
+            }
+            replicates.add(sim.getMetricsHistory());
+        }
+        int lastTick = replicates.stream().mapToInt(List::size).max().orElseThrow();
+        assertTrue(replicates.stream().anyMatch(m -> m.size() < lastTick), "Some replicate should stop before the others");
+        assertEquals(lastTick, ensemble.getLastTick());
+
+        EnsembleMetrics halves = new EnsembleMetrics();
+        EnsembleMetrics secondHalf = new EnsembleMetrics();
+        for (int r = 0; r < replicates.size(); r++) {
+            EnsembleMetrics half = r < 2 ? halves : secondHalf;
+            replicates.get(r).forEach(half::add);
+            half.hold(replicates.get(r).getLast(), lastTick);
+        }
+        halves.merge(secondHalf);
+
+        // A replicate that stopped early counts with its final values at every later tick
+        for (int tick = 1; tick <= lastTick; tick++) {
+            int index = tick - 1;
+            double[] helpers = replicates.stream()
+                    .mapToDouble(m -> m.get(Math.min(index, m.size() - 1)).getHelperCount()).toArray();
+            double mean = Arrays.stream(helpers).average().orElse(Double.NaN);
+            double variance = Arrays.stream(helpers).map(h -> (h - mean) * (h - mean)).sum() / (helpers.length - 1);
+
+            assertEquals(helpers.length, ensemble.getReplicates(tick));
+            assertEquals(mean, ensemble.getMean(tick, EnsembleMetrics.HELPER_COUNT), 1e-9);
+            assertEquals(variance, ensemble.getVariance(tick, EnsembleMetrics.HELPER_COUNT), 1e-9);
+            assertEquals(mean, halves.getMean(tick, EnsembleMetrics.HELPER_COUNT), 1e-9);
+            assertEquals(variance, halves.getVariance(tick, EnsembleMetrics.HELPER_COUNT), 1e-9);
+        }
+
+        Path file = dir.resolve("ensemble.csv");
+        EnsembleCSVExporter.exportEnsembleToCSV(file.toString(), ensemble);
+        EnsembleMetrics loaded = SimulationMetricsLoader.loadEnsemble(file.toString());
+        assertEquals(ensemble.getLastTick(), loaded.getLastTick());
+        for (int tick = 1; tick <= loaded.getLastTick(); tick++) {
+            assertEquals(ensemble.getReplicates(tick), loaded.getReplicates(tick));
+            for (int q = 0; q < EnsembleMetrics.QUANTITIES; q++) {
+                assertEquals(ensemble.getMean(tick, q), loaded.getMean(tick, q), 0.005);
+                assertEquals(ensemble.getStdDev(tick, q), loaded.getStdDev(tick, q), 0.005);
+            }
+        }
+    }
+
+    @Test
+    void terminationDetectorsStopTheRunAndSayWhy() {
+        GridManager grid = new GridManager(10);
+        List<Agent> helpers = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Agent agent = new Agent(helperStrategy);
+            grid.placeEntity(agent, new Point(2 * i, 3));
+            helpers.add(agent);
+        }
+        Simulation sim = new Simulation(grid, helpers, List.of(), new Random(1));
+        sim.addTerminationDetector(new FixationDetector());
+        sim.stepSimulation();
+        sim.stepSimulation();
+        assertTrue(sim.isTerminated());
+        assertEquals(new Termination(1, "fixation: HELPER"), sim.getTermination());
+        assertEquals(1, sim.getTick(), "A terminated run should not step further");
+
+        // The ratio detector should fire on exactly the first tick whose window is within epsilon
+        Random random = new Random(3);
+        int window = 6;
+        double epsilon = 0.05;
+        RatioStabilityDetector detector = new RatioStabilityDetector(window, epsilon);
+        List<Double> shares = new ArrayList<>();
+        int firedAt = -1;
+        for (int tick = 1; tick <= 2000 && firedAt < 0; tick++) {
+            SimulationMetrics metrics = new SimulationMetrics();
+            metrics.setTick(tick);
+            metrics.setHelperCount(40 + random.nextInt(tick < 1500 ? 40 : 3));
+            metrics.setSelfishCount(60);
+            shares.add((double) metrics.getHelperCount() / (metrics.getHelperCount() + 60));
+
+            boolean expected = false;
+            if (shares.size() >= window) {
+                List<Double> last = shares.subList(shares.size() - window, shares.size());
+                expected = Collections.max(last) - Collections.min(last) <= epsilon;
+            }
+            String reason = detector.onTick(metrics);
+            assertEquals(expected, reason != null, "Tick " + tick);
+            if (expected) {
+                assertTrue(reason.startsWith("stable ratio"));
+                firedAt = tick;
+            }
+        }
+        assertTrue(firedAt > 0, "A settled ratio should be detected");
+    }
+
+    @Test
+    void fermiTableMatchesTheExactRule() {
+        for (double beta : new double[]{0.01, 0.1, 1, 5}) {
+            FermiTable table = new FermiTable(beta);
+            for (double delta = -200; delta <= 200; delta += 0.37) {
+                assertEquals(1 / (1 + Math.exp(-beta * delta)), table.probability(delta), 1e-5, "beta " + beta + ", delta " + delta);
+            }
+        }
+    }
+
+    @Test
+    void imitationSwitchesStrategiesTheSameWayOnAnyThreadCount() {
+        SimulationConfig imitating = SeededWorld.DEFAULT.toBuilder().imitationInterval(1).beta(0.5).build();
+        List<Boolean> reference = null;
+        for (int threads : new int[]{1, 3}) {
+            Simulation sim = SeededWorld.simulation(31, imitating);
+            sim.setUpdateMode(UpdateMode.SYNCHRONOUS);
+            sim.setThreads(threads);
+
+            Map<Long, Boolean> before = new HashMap<>();
+            sim.getLivingAgents().forEach(agent -> before.put(agent.getKey(), agent.isHelper()));
+            sim.stepSimulation();
+            assertTrue(sim.getLivingAgents().stream()
+                            .anyMatch(agent -> before.containsKey(agent.getKey()) && before.get(agent.getKey()) != agent.isHelper()),
+                    "Some agents should have imitated a neighbour");
+
+            for (int i = 0; i < 20; i++) {
+                sim.stepSimulation();
+            }
+            List<Boolean> strategies = sim.getLivingAgents().stream().map(Agent::isHelper).toList();
+            if (reference == null) {
+                reference = strategies;
+            } else {
+                assertEquals(reference, strategies, "Imitation on " + threads + " threads should switch the same agents");
+            }
+        }
+    }
+
+    @Test
+    void shardedRunMatchesASingleProcessRun() throws Exception {
+        SimulationConfig config = SimulationConfig.builder().gridSize(45).numAgents(400).visionRadius(4)
+                .maxFoodSources(60).foodSpawnProbability(0.9).imitationInterval(3).beta(0.5).seed(42).build();
+        Simulation single = new Simulation(config, GridBackend.LOCKING);
+        single.setUpdateMode(UpdateMode.SYNCHRONOUS);
+        single.setThreads(2);
+        single.setKeepHistory(false);
+        List<SimulationMetrics> singleMetrics = new ArrayList<>();
+        single.addListener((snapshot, metrics) -> singleMetrics.add(metrics));
+
+        ShardCoordinator.FinalState state;
+        List<SimulationMetrics> shardedMetrics;
+        try (ShardCoordinator sharded = new ShardCoordinator(config, 3, ShardCoordinator.Launch.THREADS, 2)) {
+            for (int i = 0; i < 60; i++) {
+                single.stepSimulation();
+                sharded.stepSimulation();
+            }
+            state = sharded.finish();
+            shardedMetrics = sharded.getMetricsHistory();
+        }
+
+        for (int i = 0; i < singleMetrics.size(); i++) {
+            SimulationMetrics expected = singleMetrics.get(i);
+            SimulationMetrics actual = shardedMetrics.get(i);
+            assertEquals(expected.getHelperCount(), actual.getHelperCount(), "helpers at tick " + expected.getTick());
+            assertEquals(expected.getSelfishCount(), actual.getSelfishCount(), "selfish at tick " + expected.getTick());
+            assertEquals(expected.getTotalDeaths(), actual.getTotalDeaths(), "deaths at tick " + expected.getTick());
+            assertEquals(expected.getHelperBirths() + expected.getSelfishBirths(),
+                    actual.getHelperBirths() + actual.getSelfishBirths(), "births at tick " + expected.getTick());
+            assertEquals(expected.getAvgEnergy(), actual.getAvgEnergy(), 1e-9, "average energy at tick " + expected.getTick());
+            assertEquals(expected.getHelperEnergy().quantile(0.5), actual.getHelperEnergy().quantile(0.5));
+        }
+        assertTrue(singleMetrics.get(59).getHelperBirths() + singleMetrics.get(59).getSelfishBirths() > 0,
+                "The run should be long enough for births");
+
+        List<Agent> expected = new ArrayList<>(single.getLivingAgents());
+        expected.sort(Comparator.comparingLong(Agent::getKey));
+        assertEquals(expected.size(), state.agents().size());
+        for (int i = 0; i < expected.size(); i++) {
+            Agent want = expected.get(i);
+            Agent got = state.agents().get(i);
+            assertEquals(want.getKey(), got.getKey());
+            assertEquals(want.getCell(), got.getCell(), "cell of agent " + want.getKey());
+            assertEquals(want.getEnergy(), got.getEnergy(), "energy of agent " + want.getKey());
+            assertEquals(want.isHelper(), got.isHelper(), "strategy of agent " + want.getKey());
+            assertEquals(want.getLastReproducedTick(), got.getLastReproducedTick());
+        }
+
+        List<Integer> food = new ArrayList<>();
+        single.getGridManager().forEachFoodCell(food::add);
+        assertArrayEquals(food.stream().mapToInt(Integer::intValue).sorted().toArray(), state.foodCells());
+    }
 }
@@ -0,0 +1,174 @@
+package com.jacandre;
+
+import com.jacandre.core.Simulation;
+import com.jacandre.core.SimulationConfig;
+import com.jacandre.export.SnapshotBinaryWriter;
+import com.jacandre.export.SnapshotCSVExporter;
+import com.jacandre.export.StreamingExporter;
+import com.jacandre.models.CellState;
+import com.jacandre.timeline.GridSnapshot;
+import com.jacandre.timeline.IndexedCSVSnapshotReader;
+import com.jacandre.timeline.MappedSnapshotReader;
+import com.jacandre.timeline.RenderableEntity;
+import com.jacandre.timeline.TickCache;
+import com.jacandre.timeline.TickHistory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotExportTest {
+
+    @Test
+    void binarySnapshotsReadBackAsRecorded(@TempDir Path dir) throws Exception {
+        Simulation sim = SeededWorld.simulation(13);
+        for (int i = 0; i < 20; i++) {
+            sim.stepSimulation();
+        }
+        TickHistory timeline = sim.getTimeline();
+        Path file = dir.resolve("snapshots.bin");
+        int gridSize = sim.getGridManager().getGridSize();
+        SnapshotBinaryWriter.exportGridSnapshots(file.toString(), gridSize, timeline.getTickCount(), timeline);
+
+        try (MappedSnapshotReader reader = new MappedSnapshotReader(file)) {
+            assertEquals(gridSize, reader.getGridSize());
+            assertEquals(20, reader.getTickCount());
+
+            for (int tick : new int[]{20, 1, 13}) {
+                GridSnapshot read = reader.read(reader.indexOfTick(tick));
+                Map<Point, CellState> expected = timeline.getSnapshotAt(tick).gridState();
+
+                assertEquals(tick, read.tick);
+                assertEquals(expected.size(), read.entities.size());
+                for (RenderableEntity entity : read.entities) {
+                    CellState state = expected.get(new Point(entity.x, entity.y));
+                    assertNotNull(state, "Unexpected entity at " + entity.x + "," + entity.y);
+                    assertEquals(state.type().name(), entity.type);
+                    if (state.type() == CellState.Type.AGENT) {
+                        assertEquals(state.strategy(), entity.strategy);
+                        assertEquals((float) state.energy(), entity.energy);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void sparseTicksOnHugeGridsAreStoredAsCellLists(@TempDir Path dir) throws Exception {
+        SimulationConfig config = SeededWorld.DEFAULT.toBuilder().gridSize(5000).numAgents(40).maxFoodSources(20).build();
+        Simulation sim = SeededWorld.simulation(23, config);
+        for (int i = 0; i < 6; i++) {
+            sim.stepSimulation();
+        }
+        TickHistory timeline = sim.getTimeline();
+        Path file = dir.resolve("sparse.bin");
+        SnapshotBinaryWriter.exportGridSnapshots(file.toString(), 5000, timeline.getTickCount(), timeline);
+
+        // Bitplanes of a 5000x5000 grid alone would take over 3 MB per tick
+        assertTrue(Files.size(file) < 64 * 1024, "File is " + Files.size(file) + " bytes");
+        try (MappedSnapshotReader reader = new MappedSnapshotReader(file)) {
+            for (int index = 0; index < reader.getTickCount(); index++) {
+                GridSnapshot read = reader.read(index);
+                Map<Point, CellState> expected = timeline.getSnapshotAt(read.tick).gridState();
+                assertEquals(expected.size(), read.entities.size());
+                for (RenderableEntity entity : read.entities) {
+                    CellState state = expected.get(new Point(entity.x, entity.y));
+                    assertNotNull(state, "Unexpected entity at " + entity.x + "," + entity.y);
+                    assertEquals(state.type().name(), entity.type);
+                    if (state.type() == CellState.Type.AGENT) {
+                        assertEquals(state.strategy(), entity.strategy);
+                        assertEquals((float) state.energy(), entity.energy);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void streamingExportMatchesRecordedHistory(@TempDir Path dir) throws Exception {
+        Simulation recorded = SeededWorld.simulation(21);
+        Simulation streamed = SeededWorld.simulation(21);
+        streamed.setKeepHistory(false);
+        Path bin = dir.resolve("streamed.bin");
+        try (StreamingExporter exporter = new StreamingExporter(bin.toString(), dir.resolve("metrics.csv").toString(),
+                streamed.getGridManager().getGridSize(), 15, 2)) {
+            streamed.addListener(exporter);
+            for (int i = 0; i < 15; i++) {
+                recorded.stepSimulation();
+                streamed.stepSimulation();
+            }
+        }
+
+        assertTrue(streamed.getTimeline().isEmpty());
+        assertTrue(streamed.getMetricsHistory().isEmpty());
+        assertEquals(16, Files.readAllLines(dir.resolve("metrics.csv")).size());
+        try (MappedSnapshotReader reader = new MappedSnapshotReader(bin)) {
+            assertEquals(15, reader.getTickCount());
+            for (int i = 0; i < reader.getTickCount(); i++) {
+                GridSnapshot read = reader.read(i);
+                Map<Point, CellState> expected = recorded.getTimeline().getSnapshotAt(read.tick).gridState();
+                assertEquals(expected.size(), read.entities.size());
+                for (RenderableEntity entity : read.entities) {
+                    assertEquals(expected.get(new Point(entity.x, entity.y)).type().name(), entity.type);
+                }
+            }
+        }
+    }
+
+
+    @Test
+    void indexedCsvReaderServesTicksThroughCache(@TempDir Path dir) throws Exception {
+        Simulation sim = SeededWorld.simulation(17);
+        for (int i = 0; i < 12; i++) {
+            sim.stepSimulation();
+        }
+        Path csv = dir.resolve("snapshots.csv");
+        SnapshotCSVExporter.exportGridSnapshots(csv.toString(), sim.getTimeline());
+
+        IndexedCSVSnapshotReader reader = new IndexedCSVSnapshotReader(csv);
+        try (TickCache cache = new TickCache(reader, 4, 2)) {
+            reader.awaitIndex();
+            assertEquals(12, cache.getTickCount());
+            assertEquals(sim.getGridManager().getGridSize(), reader.getGridSize());
+            for (int index : new int[]{11, 0, 5, 6, 7, 8, 9}) {
+                GridSnapshot read = cache.get(index);
+                Map<Point, CellState> expected = sim.getTimeline().getSnapshotAt(index + 1).gridState();
+                assertEquals(index + 1, read.tick);
+                assertEquals(expected.size(), read.entities.size());
+                for (RenderableEntity entity : read.entities) {
+                    assertEquals(expected.get(new Point(entity.x, entity.y)).type().name(), entity.type);
+                }
+                assertTrue(cache.size() <= 4);
+            }
+        }
+    }
+
+    @Test
+    void indexedCsvReaderReadsGzippedSnapshots(@TempDir Path dir) throws Exception {
+        Simulation sim = SeededWorld.simulation(19);
+        for (int i = 0; i < 8; i++) {
+            sim.stepSimulation();
+        }
+        Path csv = dir.resolve("snapshots.csv.gz");
+        SnapshotCSVExporter.exportGridSnapshots(csv.toString(), sim.getTimeline());
+
+        try (IndexedCSVSnapshotReader reader = new IndexedCSVSnapshotReader(csv)) {
+            reader.awaitIndex();
+            assertEquals(8, reader.getTickCount());
+            for (int index = 0; index < reader.getTickCount(); index++) {
+                GridSnapshot read = reader.read(index);
+                Map<Point, CellState> expected = sim.getTimeline().getSnapshotAt(index + 1).gridState();
+                assertEquals(index + 1, read.tick);
+                assertEquals(expected.size(), read.entities.size());
+                for (RenderableEntity entity : read.entities) {
+                    assertEquals(expected.get(new Point(entity.x, entity.y)).type().name(), entity.type);
+                }
+            }
+        }
+    }
+}